@@ -0,0 +1,31 @@
+package com.example.qaassistant.configuration;
+
+import com.example.qaassistant.service.TableChangeTracker;
+import com.example.qaassistant.service.TableTrackingJdbcTemplate;
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * Sustituye el JdbcTemplate autoconfigurado por uno que registra sus escrituras en TableChangeTracker,
+ * de modo que las caches también se invalidan cuando los datos cambian por JDBC y no por JPA.
+ */
+@Configuration
+public class JdbcConfig {
+
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource, JdbcProperties properties, TableChangeTracker tracker) {
+        TableTrackingJdbcTemplate jdbcTemplate = new TableTrackingJdbcTemplate(dataSource, tracker);
+        // Mismas propiedades spring.jdbc.template.* que aplica la autoconfiguración
+        JdbcProperties.Template template = properties.getTemplate();
+        jdbcTemplate.setFetchSize(template.getFetchSize());
+        jdbcTemplate.setMaxRows(template.getMaxRows());
+        if (template.getQueryTimeout() != null) {
+            jdbcTemplate.setQueryTimeout((int) template.getQueryTimeout().getSeconds());
+        }
+        return jdbcTemplate;
+    }
+}
@@ -1,8 +1,83 @@
 package com.example.qaassistant.configuration;
 
-import org.springframework.stereotype.Component;
+import com.example.qaassistant.service.ollama.OllamaLoadBalancer;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
-@Component
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Cliente HTTP compartido por todo el tráfico hacia Ollama (generación y embeddings).
+ *
+ * Un único pool de conexiones Reactor Netty, con keep-alive, acotado y con expulsión de conexiones
+ * inactivas: las peticiones reutilizan conexiones abiertas en lugar de pagar el handshake TCP, y las
+ * que superan el máximo esperan en una cola acotada en vez de abrir sockets sin límite.
+ *
+ * 'ollama.base-url' es la dirección lógica que usan los servicios; el OllamaLoadBalancer la reparte entre
+ * las instancias de 'ollama.endpoints' (si está vacía, la propia base-url es el único endpoint).
+ */
+@Configuration
 public class OllamaConfig {
     public static final String OLLAMA_BASE_URL = "http://localhost:11434";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider ollamaConnectionProvider(
+            @Value("${ollama.http.max-connections:50}") int maxConnections,
+            @Value("${ollama.http.pending-acquire-max:500}") int pendingAcquireMax,
+            @Value("${ollama.http.pending-acquire-timeout:60s}") Duration pendingAcquireTimeout,
+            @Value("${ollama.http.max-idle-time:60s}") Duration maxIdleTime,
+            @Value("${ollama.http.max-life-time:10m}") Duration maxLifeTime) {
+        return ConnectionProvider.builder("ollama")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(Duration.ofSeconds(30))
+                // Gauges reactor.netty.connection.provider.* en /actuator/metrics
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public OllamaLoadBalancer ollamaLoadBalancer(
+            @Value("${ollama.base-url:" + OLLAMA_BASE_URL + "}") String baseUrl,
+            @Value("${ollama.endpoints:}") List<String> endpoints,
+            @Value("${ollama.balancer.strategy:least-outstanding}") String strategy,
+            @Value("${ollama.balancer.failure-threshold:5}") int failureThreshold,
+            @Value("${ollama.balancer.ejection-time:30s}") Duration ejectionTime,
+            @Value("${ollama.balancer.max-ejection-time:5m}") Duration maxEjectionTime,
+            @Value("${ollama.balancer.ewma-decay:10s}") Duration ewmaDecay) {
+        return new OllamaLoadBalancer(baseUrl, endpoints, new OllamaLoadBalancer.Settings(
+                OllamaLoadBalancer.Strategy.from(strategy), failureThreshold, ejectionTime, maxEjectionTime, ewmaDecay));
+    }
+
+    @Bean
+    public WebClient ollamaWebClient(ConnectionProvider ollamaConnectionProvider,
+                                     OllamaLoadBalancer ollamaLoadBalancer,
+                                     @Value("${ollama.base-url:" + OLLAMA_BASE_URL + "}") String baseUrl,
+                                     @Value("${ollama.http.connect-timeout:5s}") Duration connectTimeout) {
+        // Sin responseTimeout global: la generación y el streaming llevan su propio timeout por petición
+        HttpClient httpClient = HttpClient.create(ollamaConnectionProvider)
+                .keepAlive(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true);
+        return WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(ollamaLoadBalancer)
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                // Los lotes de /api/embed superan con facilidad el límite por defecto de 256 KB
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+                .build();
+    }
 }
@@ -0,0 +1,22 @@
+package com.example.qaassistant.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Scheduler acotado para el trabajo bloqueante del pipeline reactivo (JDBC, búsqueda vectorial,
+ * escrituras en caches). Su tamaño coincide con el pool de conexiones, de modo que las consultas
+ * esperan en la cola del scheduler y no ocupando hilos a la espera de una conexión.
+ */
+@Configuration
+public class ReactiveConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler(@Value("${app.reactive.jdbc-threads:10}") int threads,
+                                   @Value("${app.reactive.jdbc-queue:1000}") int queuedTasks) {
+        return Schedulers.newBoundedElastic(threads, queuedTasks, "jdbc");
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.qaassistant.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Activa las tareas programadas (pre-calentamiento de cache) y los métodos @Async
+ * (registro de consultas aprendidas fuera del hilo de la petición).
+ *
+ * Los ejecutores los crea Spring Boot; con spring.threads.virtual.enabled=true ambos usan hilos virtuales.
+ */
+@Configuration
+@EnableScheduling
+@EnableAsync
+public class SchedulingConfig {
+}
@@ -0,0 +1,139 @@
+package com.example.qaassistant.controller;
+
+import com.example.qaassistant.service.ollama.OllamaBalancerSimulation;
+import com.example.qaassistant.service.ollama.VirtualThreadBenchmark;
+import com.example.qaassistant.service.rag.EmbeddingThroughputBenchmark;
+import com.example.qaassistant.service.rag.SimpleVectorStore;
+import com.example.qaassistant.service.rag.similarity.SimilarityKernels;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmarks, simulaciones y evaluaciones de recall: generan carga (hilos, servidores stub, miles de
+ * búsquedas), así que solo existen con 'app.benchmarks.enabled=true' y todos sus parámetros están
+ * acotados. Las rutas son las mismas que tenían en OllamaQAController y VectorStoreController.
+ */
+@RestController
+@RequestMapping("/api")
+@CrossOrigin(origins = {"http://localhost:4200"})
+@ConditionalOnProperty(name = "app.benchmarks.enabled", havingValue = "true")
+public class BenchmarkController {
+
+    private static final int MAX_LIST_VALUES = 8;
+
+    private final VirtualThreadBenchmark virtualThreadBenchmark;
+    private final OllamaBalancerSimulation balancerSimulation;
+    private final EmbeddingThroughputBenchmark embeddingBenchmark;
+    private final SimpleVectorStore vectorStore;
+
+    public BenchmarkController(VirtualThreadBenchmark virtualThreadBenchmark,
+                               OllamaBalancerSimulation balancerSimulation,
+                               EmbeddingThroughputBenchmark embeddingBenchmark,
+                               SimpleVectorStore vectorStore) {
+        this.virtualThreadBenchmark = virtualThreadBenchmark;
+        this.balancerSimulation = balancerSimulation;
+        this.embeddingBenchmark = embeddingBenchmark;
+        this.vectorStore = vectorStore;
+    }
+
+    /**
+     * Pools de hilos de plataforma frente a hilos virtuales contra un LLM simulado.
+     */
+    @GetMapping("/qa-assistant/virtual-threads/benchmark")
+    public Map<String, Object> benchmarkVirtualThreads(@RequestParam(defaultValue = "1000") int calls,
+                                                       @RequestParam(defaultValue = "200") int concurrency,
+                                                       @RequestParam(defaultValue = "500") long llmDelayMs,
+                                                       @RequestParam(defaultValue = "20,200") List<Integer> poolSizes)
+            throws IOException {
+        bounded("calls", calls, 1, 5_000);
+        bounded("concurrency", concurrency, 1, 500);
+        bounded("llmDelayMs", llmDelayMs, 0, 5_000);
+        boundedList("poolSizes", poolSizes, 1, 500);
+        return virtualThreadBenchmark.run(calls, concurrency, llmDelayMs, poolSizes);
+    }
+
+    /**
+     * Simulación del balanceador contra stubs locales: uno caído en la fase 1 y recuperado en la fase 2.
+     */
+    @GetMapping("/qa-assistant/ollama/endpoints/simulation")
+    public Map<String, Object> simulateBalancer(@RequestParam(defaultValue = "300") int requests,
+                                                @RequestParam(defaultValue = "16") int concurrency,
+                                                @RequestParam(defaultValue = "20,20,80") List<Long> delaysMs,
+                                                @RequestParam(defaultValue = "0") int failingEndpoint,
+                                                @RequestParam(defaultValue = "least-outstanding") String strategy)
+            throws IOException {
+        bounded("requests", requests, 1, 5_000);
+        bounded("concurrency", concurrency, 1, 200);
+        boundedList("delaysMs", delaysMs, 0, 5_000);
+        bounded("failingEndpoint", failingEndpoint, -1, delaysMs.size() - 1);
+        return balancerSimulation.run(requests, concurrency, delaysMs, failingEndpoint, strategy);
+    }
+
+    @GetMapping("/vector-store/recall")
+    public Map<String, Object> getRecallReport(@RequestParam(defaultValue = "5") int k,
+                                               @RequestParam(defaultValue = "100") int samples,
+                                               @RequestParam(required = false) List<Integer> ef) {
+        bounded("k", k, 1, 100);
+        bounded("samples", samples, 1, 1_000);
+        if (ef != null) {
+            boundedList("ef", ef, 1, 1_000);
+        }
+        return vectorStore.evaluateRecall(k, samples, ef);
+    }
+
+    @GetMapping("/vector-store/quantization")
+    public Map<String, Object> getQuantizationReport(@RequestParam(defaultValue = "5") int k,
+                                                     @RequestParam(defaultValue = "100") int samples) {
+        bounded("k", k, 1, 100);
+        bounded("samples", samples, 1, 1_000);
+        return vectorStore.evaluateQuantization(k, samples);
+    }
+
+    @GetMapping("/vector-store/kernels/benchmark")
+    public List<Map<String, Object>> benchmarkKernels(@RequestParam(defaultValue = "384,768") List<Integer> dims,
+                                                      @RequestParam(defaultValue = "100000") int iterations) {
+        boundedList("dims", dims, 1, 4_096);
+        bounded("iterations", iterations, 1, 1_000_000);
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int dimension : dims) {
+            results.add(SimilarityKernels.benchmark(dimension, iterations));
+        }
+        return results;
+    }
+
+    @GetMapping("/vector-store/embeddings/benchmark")
+    public Map<String, Object> benchmarkEmbeddings(@RequestParam(defaultValue = "200") int texts,
+                                                   @RequestParam(defaultValue = "1,8,32") List<Integer> batchSizes,
+                                                   @RequestParam(defaultValue = "5") long overheadMs,
+                                                   @RequestParam(defaultValue = "200") long perTextMicros,
+                                                   @RequestParam(defaultValue = "384") int dimension) throws IOException {
+        bounded("texts", texts, 1, 5_000);
+        boundedList("batchSizes", batchSizes, 1, 512);
+        bounded("overheadMs", overheadMs, 0, 1_000);
+        bounded("perTextMicros", perTextMicros, 0, 100_000);
+        bounded("dimension", dimension, 1, 4_096);
+        return embeddingBenchmark.run(texts, batchSizes, overheadMs, perTextMicros, dimension);
+    }
+
+    // Métodos auxiliares
+
+    private static void bounded(String name, long value, long min, long max) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(name + " debe estar entre " + min + " y " + max + " (recibido " + value + ")");
+        }
+    }
+
+    private static void boundedList(String name, List<? extends Number> values, long min, long max) {
+        if (values.isEmpty() || values.size() > MAX_LIST_VALUES) {
+            throw new IllegalArgumentException(name + " admite entre 1 y " + MAX_LIST_VALUES + " valores");
+        }
+        for (Number value : values) {
+            bounded(name, value.longValue(), min, max);
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package com.example.qaassistant.controller;
 
-import com.example.qaassistant.service.ollama.InMemoryQueryCacheService;
+import com.example.qaassistant.service.IQueryCacheService;
+import com.example.qaassistant.service.SqlPlanCache;
+import com.example.qaassistant.service.TableChangeTracker;
+import com.example.qaassistant.service.metrics.QaMetrics;
+import com.example.qaassistant.service.ollama.CacheWarmupService;
+import com.example.qaassistant.service.ollama.CachedUnifiedQAService;
+import com.example.qaassistant.service.ollama.SemanticQueryCache;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
@@ -10,10 +16,25 @@ import java.util.Map;
 @CrossOrigin(origins = {"http://localhost:4200"})
 public class CacheController {
 
-    private final InMemoryQueryCacheService cacheService;
+    private final IQueryCacheService cacheService;
+    private final SemanticQueryCache semanticCache;
+    private final QaMetrics metrics;
+    private final CachedUnifiedQAService cachedQAService;
+    private final CacheWarmupService warmupService;
+    private final TableChangeTracker tableChanges;
+    private final SqlPlanCache planCache;
 
-    public CacheController(InMemoryQueryCacheService cacheService) {
+    public CacheController(IQueryCacheService cacheService, SemanticQueryCache semanticCache,
+                           QaMetrics metrics, CachedUnifiedQAService cachedQAService,
+                           CacheWarmupService warmupService, TableChangeTracker tableChanges,
+                           SqlPlanCache planCache) {
         this.cacheService = cacheService;
+        this.semanticCache = semanticCache;
+        this.metrics = metrics;
+        this.cachedQAService = cachedQAService;
+        this.warmupService = warmupService;
+        this.tableChanges = tableChanges;
+        this.planCache = planCache;
     }
 
     @GetMapping("/stats")
@@ -21,6 +42,55 @@ public class CacheController {
         return cacheService.getCacheStats();
     }
 
+    @GetMapping("/metrics")
+    public Map<String, Object> getMetrics() {
+        return Map.of(
+                "cache", cacheService.getCacheStats(),
+                "coalescing", cachedQAService.getCoalescingStats(),
+                "sqlPlans", planCache.getStats(),
+                "latency", metrics.getLatencySnapshot()
+        );
+    }
+
+    @GetMapping("/coalescing/stats")
+    public Map<String, Object> getCoalescingStats() {
+        return cachedQAService.getCoalescingStats();
+    }
+
+    @GetMapping("/warmup")
+    public Map<String, Object> getWarmupReport() {
+        return warmupService.getLastReport();
+    }
+
+    @PostMapping("/warmup")
+    public Map<String, Object> warmUp() {
+        return warmupService.warmUp();
+    }
+
+    @GetMapping("/sql-plans/stats")
+    public Map<String, Object> getSqlPlanStats() {
+        return planCache.getStats();
+    }
+
+    @PostMapping("/sql-plans/clear")
+    public Map<String, String> clearSqlPlans() {
+        planCache.clear();
+        return Map.of(
+                "message", "Cache de planes SQL limpiada",
+                "timestamp", java.time.LocalDateTime.now().toString()
+        );
+    }
+
+    @GetMapping("/tables")
+    public Map<String, Long> getTableVersions() {
+        return tableChanges.currentVersions();
+    }
+
+    @GetMapping("/semantic/stats")
+    public Map<String, Object> getSemanticCacheStats() {
+        return semanticCache.getStats();
+    }
+
     @GetMapping("/contents")
     public Map<String, Object> getCacheContents() {
         Map<String, Object> stats = cacheService.getCacheStats();
@@ -34,6 +104,9 @@ public class CacheController {
     @PostMapping("/clear")
     public Map<String, String> clearCache() {
         cacheService.clearCache();
+        semanticCache.clear();
+        metrics.reset();
+        cachedQAService.resetCoalescingStats();
         return Map.of(
                 "message", "Cache limpiada exitosamente",
                 "timestamp", java.time.LocalDateTime.now().toString()
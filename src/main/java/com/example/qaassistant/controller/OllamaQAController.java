@@ -6,11 +6,21 @@ import com.example.qaassistant.model.aplicacion.EstadoAplicacion;
 import com.example.qaassistant.model.dto.RankingDTO;
 import com.example.qaassistant.repository.AplicacionRepository;
 import com.example.qaassistant.service.UnifiedQueryResult;
+import com.example.qaassistant.service.metrics.VirtualThreadPinningMonitor;
 import com.example.qaassistant.service.ollama.EnhancedQAService;
+import com.example.qaassistant.service.ollama.OllamaHealthChecker;
+import com.example.qaassistant.service.ollama.OllamaKeepWarmService;
+import com.example.qaassistant.service.ollama.OllamaLoadBalancer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.HashMap;
 import java.util.List;
@@ -25,11 +35,23 @@ public class OllamaQAController {
     private static final Logger log = LoggerFactory.getLogger(OllamaQAController.class);
     private final AplicacionRepository aplicacionRepository;
     private final EnhancedQAService enhancedQAService;
+    private final VirtualThreadPinningMonitor pinningMonitor;
+    private final OllamaKeepWarmService keepWarmService;
+    private final OllamaLoadBalancer loadBalancer;
+    private final OllamaHealthChecker healthChecker;
 
     public OllamaQAController(AplicacionRepository aplicacionRepository,
-            EnhancedQAService enhancedQAService) {
+            EnhancedQAService enhancedQAService,
+            VirtualThreadPinningMonitor pinningMonitor,
+            OllamaKeepWarmService keepWarmService,
+            OllamaLoadBalancer loadBalancer,
+            OllamaHealthChecker healthChecker) {
         this.aplicacionRepository = aplicacionRepository;
         this.enhancedQAService = enhancedQAService;
+        this.pinningMonitor = pinningMonitor;
+        this.keepWarmService = keepWarmService;
+        this.loadBalancer = loadBalancer;
+        this.healthChecker = healthChecker;
     }
 
     @PostMapping("/ask-enhanced") // ask-enhanced
@@ -41,6 +63,36 @@ public class OllamaQAController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Misma consulta que /ask-enhanced sin ocupar un hilo de Tomcat mientras espera al LLM o a la BBDD.
+     */
+    @PostMapping("/ask-enhanced/reactive")
+    public Mono<ResponseEntity<UnifiedQueryResult>> askEnhancedQuestionReactive(@RequestBody ChatRequest request) {
+        log.info("Procesando consulta mejorada (reactiva): {}", request.getQuestion());
+        return enhancedQAService.processEnhancedQuestionAsync(request.getQuestion()).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Misma consulta que /ask-enhanced, como Server-Sent Events: "status" al empezar, "token" por cada
+     * fragmento que genera el LLM según llega y "result" con el UnifiedQueryResult final.
+     */
+    @GetMapping(value = "/ask-enhanced/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> askEnhancedQuestionStream(@RequestParam("question") String question) {
+        log.info("Procesando consulta mejorada en streaming: {}", question);
+
+        Sinks.Many<ServerSentEvent<Object>> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        Mono<ServerSentEvent<Object>> result = Mono
+                .fromCallable(() -> enhancedQAService.processEnhancedQuestion(question,
+                        token -> tokens.tryEmitNext(ServerSentEvent.<Object>builder(token).event("token").build())))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(unified -> ServerSentEvent.<Object>builder(unified).event("result").build())
+                .doFinally(signal -> tokens.tryEmitComplete());
+
+        return Flux.concat(
+                Mono.just(ServerSentEvent.<Object>builder(Map.of("question", question)).event("status").build()),
+                Flux.merge(tokens.asFlux(), result));
+    }
+
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> healthCheck() {
         Map<String, String> status = new HashMap<>();
@@ -50,6 +102,46 @@ public class OllamaQAController {
         return ResponseEntity.ok(status);
     }
 
+    /**
+     * Endpoints de Ollama del balanceador: estado del circuito, peticiones en vuelo y latencia EWMA.
+     */
+    @GetMapping("/ollama/endpoints")
+    public Map<String, Object> getOllamaEndpoints() {
+        return loadBalancer.getStats();
+    }
+
+    @PostMapping("/ollama/endpoints/health-check")
+    public Map<String, Object> checkOllamaEndpoints() {
+        return healthChecker.checkNow();
+    }
+
+    /**
+     * Estado de carga de cada modelo según el último ping de keep-warm (arranques en frío y su latencia).
+     */
+    @GetMapping("/models/keep-warm")
+    public Map<String, Object> getKeepWarmStatus() {
+        return keepWarmService.getStatus();
+    }
+
+    @PostMapping("/models/keep-warm")
+    public Map<String, Object> keepWarmNow() {
+        return keepWarmService.pingAll();
+    }
+
+    /**
+     * Modo de hilos del servidor y eventos de pinning de hilos virtuales agrupados por sitio.
+     */
+    @GetMapping("/virtual-threads")
+    public Map<String, Object> getVirtualThreadStats() {
+        return pinningMonitor.getStats();
+    }
+
+    @PostMapping("/virtual-threads/reset")
+    public Map<String, Object> resetVirtualThreadStats() {
+        pinningMonitor.reset();
+        return pinningMonitor.getStats();
+    }
+
     @GetMapping("/ranking")
     public ResponseEntity<List<RankingDTO>> getRanking() {
         List<Object[]> results = aplicacionRepository.findRankingCobertura();
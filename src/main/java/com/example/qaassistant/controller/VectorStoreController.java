@@ -0,0 +1,33 @@
+package com.example.qaassistant.controller;
+
+import com.example.qaassistant.service.rag.SimpleVectorStore;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/vector-store")
+@CrossOrigin(origins = {"http://localhost:4200"})
+public class VectorStoreController {
+
+    private final SimpleVectorStore vectorStore;
+
+    public VectorStoreController(SimpleVectorStore vectorStore) {
+        this.vectorStore = vectorStore;
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        return vectorStore.getStats();
+    }
+
+    @PostMapping("/compact")
+    public Map<String, Object> compact() {
+        long discarded = vectorStore.compact();
+        return Map.of(
+                "message", "Segmentos compactados",
+                "discardedRecords", discarded,
+                "documents", vectorStore.size()
+        );
+    }
+}
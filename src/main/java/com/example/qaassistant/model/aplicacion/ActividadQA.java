@@ -1,10 +1,12 @@
 package com.example.qaassistant.model.aplicacion;
 
+import com.example.qaassistant.service.TableChangeEntityListener;
 import jakarta.persistence.*;
 import java.time.LocalDate;
 
 @Entity
 @Table(name = "actividad_qa")
+@EntityListeners(TableChangeEntityListener.class)
 public class ActividadQA {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
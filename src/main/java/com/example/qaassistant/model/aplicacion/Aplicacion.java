@@ -1,5 +1,6 @@
 package com.example.qaassistant.model.aplicacion;
 
+import com.example.qaassistant.service.TableChangeEntityListener;
 import jakarta.persistence.*;
 import lombok.Data;
 
@@ -8,6 +9,7 @@ import java.util.*;
 
 @Entity
 @Table(name = "aplicacion")
+@EntityListeners(TableChangeEntityListener.class)
 @Data
 public class Aplicacion {
     @Id
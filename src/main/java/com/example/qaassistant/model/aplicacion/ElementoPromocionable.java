@@ -1,5 +1,6 @@
 package com.example.qaassistant.model.aplicacion;
 
+import com.example.qaassistant.service.TableChangeEntityListener;
 import jakarta.persistence.*;
 import lombok.Data;
 
@@ -7,6 +8,7 @@ import java.util.*;
 
 @Entity
 @Table(name = "elemento_promocionable")
+@EntityListeners(TableChangeEntityListener.class)
 @Data
 public class ElementoPromocionable {
     @Id
@@ -1,6 +1,7 @@
 package com.example.qaassistant.model.ollama;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class OllamaRequest {
@@ -8,6 +9,9 @@ public class OllamaRequest {
     private String prompt;
     private boolean stream = false;
     private Options options;
+    // Duración de Ollama ("30m", "-1" = indefinido, "0" = descargar al terminar)
+    @JsonProperty("keep_alive")
+    private String keepAlive;
 
     // Constructores
     public OllamaRequest() {
@@ -44,6 +48,14 @@ public class OllamaRequest {
         this.stream = stream;
     }
 
+    public String getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(String keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
     public Options getOptions() {
         return options;
     }
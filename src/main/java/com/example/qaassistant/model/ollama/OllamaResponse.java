@@ -1,12 +1,18 @@
 package com.example.qaassistant.model.ollama;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class OllamaResponse {
     private String model;
     private String response;
     private boolean done;
+    // Nanosegundos que tardó Ollama en cargar el modelo (≈0 si ya estaba en memoria)
+    @JsonProperty("load_duration")
+    private Long loadDuration;
+    @JsonProperty("total_duration")
+    private Long totalDuration;
 
     // Constructor por defecto
     public OllamaResponse() {}
@@ -20,4 +26,10 @@ public class OllamaResponse {
 
     public boolean isDone() { return done; }
     public void setDone(boolean done) { this.done = done; }
+
+    public Long getLoadDuration() { return loadDuration; }
+    public void setLoadDuration(Long loadDuration) { this.loadDuration = loadDuration; }
+
+    public Long getTotalDuration() { return totalDuration; }
+    public void setTotalDuration(Long totalDuration) { this.totalDuration = totalDuration; }
 }
@@ -4,7 +4,7 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "successful_queries")
+@Table(name = "successful_queries", indexes = @Index(name = "idx_successful_queries_key", columnList = "questionKey"))
 public class SuccessfulQuery {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -13,6 +13,10 @@ public class SuccessfulQuery {
     @Column(nullable = false, length = 1000)
     private String question;
 
+    // Clave canónica de la pregunta (QuestionNormalizer), para encontrar variantes de la misma pregunta
+    @Column(length = 32)
+    private String questionKey;
+
     @Column(columnDefinition = "TEXT")
     private String generatedSQL;
 
@@ -50,6 +54,9 @@ public class SuccessfulQuery {
     public String getQuestion() { return question; }
     public void setQuestion(String question) { this.question = question; }
 
+    public String getQuestionKey() { return questionKey; }
+    public void setQuestionKey(String questionKey) { this.questionKey = questionKey; }
+
     public String getGeneratedSQL() { return generatedSQL; }
     public void setGeneratedSQL(String generatedSQL) { this.generatedSQL = generatedSQL; }
 
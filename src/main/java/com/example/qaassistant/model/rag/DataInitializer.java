@@ -1,6 +1,7 @@
 package com.example.qaassistant.model.rag;
 
 import com.example.qaassistant.service.rag.EmbeddingService;
+import com.example.qaassistant.service.rag.IndexingReport;
 import com.example.qaassistant.service.rag.SimpleVectorStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +18,7 @@ import java.util.Map;
 public class DataInitializer implements CommandLineRunner {
 
     private static final Logger log = LoggerFactory.getLogger(DataInitializer.class);
+    private static final String SOURCE = "data-initializer";
     private final SimpleVectorStore simpleVectorStore;
 
     @Autowired
@@ -37,13 +39,11 @@ public class DataInitializer implements CommandLineRunner {
                     doc.getEmbedding() != null ? doc.getEmbedding().size() : 0);
         }
 
-        // Indexar documentos usando el servicio de indexación
-        simpleVectorStore.indexDocuments(documents);
+        // Sincronización incremental: solo se embeben documentos nuevos o con contenido cambiado
+        IndexingReport report = simpleVectorStore.synchronize(SOURCE, documents);
 
-        // O si usas directamente el vector store:
-        simpleVectorStore.addDocs(documents);
-
-        log.info("✅ DataInitializer: Base de conocimiento inicializada con {} documentos", documents.size());
+        log.info("✅ DataInitializer: Base de conocimiento inicializada con {} documentos ({})",
+                documents.size(), report);
     }
 
     private List<KnowledgeDocument> crearDocumentosCompletos() {
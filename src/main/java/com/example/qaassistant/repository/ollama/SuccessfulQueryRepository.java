@@ -15,6 +15,8 @@ public interface SuccessfulQueryRepository extends JpaRepository<SuccessfulQuery
 
     Optional<SuccessfulQuery> findByQuestionContainingIgnoreCase(String question);
 
+    Optional<SuccessfulQuery> findFirstByQuestionKey(String questionKey);
+
     // Métodos con límite fijo
     List<SuccessfulQuery> findTop10ByOrderByUsageCountDesc();
     List<SuccessfulQuery> findTop10ByOrderByTimestampDesc();
@@ -8,9 +8,14 @@ public interface IQueryCacheService {
 
     Optional<UnifiedQueryResult> getCachedResult(String question);
     void cacheResult(String question, UnifiedQueryResult result);
+    // Versiones de tablas (TableChangeTracker.currentVersions) tomadas antes de calcular el resultado
+    void cacheResult(String question, UnifiedQueryResult result, Map<String, Long> dataVersions);
     void incrementQueryFrequency(String question);
     List<String> getFrequentQueries(int limit); // Este método ya existe
     // Añadimos un método para obtener estadísticas de frecuencia
     Map<String, Integer> getQueryFrequencyStats(int limit);
+    // Estadísticas y limpieza, para que los consumidores no dependan de la implementación
+    Map<String, Object> getCacheStats();
+    void clearCache();
 
 }
@@ -1,20 +1,26 @@
 package com.example.qaassistant.service;
 
 import com.example.qaassistant.model.ollama.QueryResult;
+import com.example.qaassistant.service.metrics.QaMetrics;
 import com.example.qaassistant.service.ollama.DatabaseSchemaProvider;
 import com.example.qaassistant.service.ollama.OllamaService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ColumnMapRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 public class QAService {
@@ -29,59 +35,57 @@ public class QAService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private QaMetrics metrics;
+
+    @Autowired
+    private SqlPlanCache planCache;
+
+    @Autowired
+    private Scheduler jdbcScheduler;
+
     public QueryResult processNaturalLanguageQuery(String userQuestion) {
+        return processNaturalLanguageQuery(userQuestion, null);
+    }
+
+    /**
+     * 'onToken' recibe en streaming los fragmentos del SQL que va generando el LLM (puede ser nulo).
+     */
+    public QueryResult processNaturalLanguageQuery(String userQuestion, Consumer<String> onToken) {
         try {
-            // 1. Obtener contexto del esquema
+            // 1. SQL ya validado para esta pregunta y este esquema: se omite el LLM y se ejecuta contra los datos actuales
+            String schemaHash = schemaProvider.getStructuralSchemaHash();
+            Optional<String> plan = planCache.get(userQuestion, schemaHash);
+            if (plan.isPresent()) {
+                log.info("📐 PLAN SQL EN CACHE - se omite la generación con el LLM");
+                try {
+                    return executeQuery(userQuestion, plan.get());
+                } catch (DataAccessException e) {
+                    log.warn("⚠️ El plan SQL cacheado falló, se regenera: {}", e.getMessage());
+                    planCache.invalidate(userQuestion);
+                    // El fallo puede deberse a un cambio de DDL
+                    schemaHash = schemaProvider.refreshStructuralSchemaHash();
+                }
+            }
+
+            // 2. Obtener contexto del esquema (solo hace falta para el LLM)
             String schemaContext = schemaProvider.getSchemaContext();
             log.info("DEBUG - Schema context: " + schemaContext);
-            // 2. Generar SQL usando Ollama
-            String generatedSQL = ollamaService.generateSQLQuery(schemaContext, userQuestion);
+
+            // 3. Generar SQL usando Ollama
+            String generatedSQL = ollamaService.generateSQLQuery(schemaContext, userQuestion, onToken);
             log.info("DEBUG - Raw generated SQL: " + generatedSQL);
-            // 3. Validar y limpiar SQL
+            // 4. Validar y limpiar SQL
             String cleanSQL = cleanSQLResponse(generatedSQL);
 
             if ("NO_SQL".equals(cleanSQL) || cleanSQL.contains("Error:")) {
                 return new QueryResult(userQuestion, null, null,
                         "No pude generar una consulta para tu pregunta.", cleanSQL, false);
             }
-            log.info("=== EJECUTANDO QUERY: " + cleanSQL + " ===");
-            // 4. Ejecutar consulta con RowMapper personalizado
-            List<Map<String, Object>> results = jdbcTemplate.query(cleanSQL, new ColumnMapRowMapper() {
-                @Override
-                protected Object getColumnValue(ResultSet rs, int index) throws SQLException {
-                    Object value = super.getColumnValue(rs, index);
-                    // Convertir cualquier enum a String
-                    if (value instanceof Enum) {
-                        return value.toString();
-                    }
-                    return value;
-                }
-            });
-
-            // En tu método processNaturalLanguageQuery, justo antes de llamar a formatResultsForDisplay:
-            log.info("=== DEBUG RESULTS BEFORE FORMATTING ===");
-            log.info("Number of results: " + results.size());
-            if (!results.isEmpty()) {
-                log.info("First result keys: " + results.get(0).keySet());
-                log.info("First result values: " + results.get(0));
-
-                // Verificar tipos de datos
-                Map<String, Object> firstRow = results.get(0);
-                for (Map.Entry<String, Object> entry : firstRow.entrySet()) {
-                    log.info("Column '" + entry.getKey() + "' -> Type: " +
-                            (entry.getValue() != null ? entry.getValue().getClass().getSimpleName() : "NULL") +
-                            ", Value: " + entry.getValue());
-                }
-            }
-            log.info("======================================");
-
-            // 5. Formatear respuesta
-            String formattedResults = formatResultsForDisplay(results);
-            log.info("=== formattedResults::: " + formattedResults);
-            String explanation = buildExplanation(userQuestion, cleanSQL, results.size());
-
-            return new QueryResult(userQuestion, cleanSQL, results,
-                    formattedResults, explanation, true);
+            QueryResult result = executeQuery(userQuestion, cleanSQL);
+            // Solo se guarda el SQL que se ha ejecutado sin errores
+            planCache.put(userQuestion, schemaHash, cleanSQL);
+            return result;
 
         } catch (Exception e) {
             log.error("❌ Fatal Error in processNaturalLanguageQuery: " + e);
@@ -91,6 +95,100 @@ public class QAService {
         }
     }
 
+    /**
+     * Variante no bloqueante: el LLM se consulta con WebClient sin bloquear y el JDBC (esquema y
+     * consulta) se ejecuta en el scheduler acotado 'jdbcScheduler'.
+     */
+    public Mono<QueryResult> processNaturalLanguageQueryAsync(String userQuestion) {
+        return Mono.fromCallable(schemaProvider::getStructuralSchemaHash)
+                .subscribeOn(jdbcScheduler)
+                .flatMap(schemaHash -> {
+                    Optional<String> plan = planCache.get(userQuestion, schemaHash);
+                    if (plan.isEmpty()) {
+                        return generateAndExecuteAsync(userQuestion, schemaHash);
+                    }
+                    log.info("📐 PLAN SQL EN CACHE - se omite la generación con el LLM");
+                    return executeQueryAsync(userQuestion, plan.get())
+                            .onErrorResume(DataAccessException.class, e -> {
+                                log.warn("⚠️ El plan SQL cacheado falló, se regenera: {}", e.getMessage());
+                                planCache.invalidate(userQuestion);
+                                // El fallo puede deberse a un cambio de DDL
+                                return Mono.fromCallable(schemaProvider::refreshStructuralSchemaHash)
+                                        .subscribeOn(jdbcScheduler)
+                                        .flatMap(freshHash -> generateAndExecuteAsync(userQuestion, freshHash));
+                            });
+                })
+                .onErrorResume(e -> {
+                    log.error("❌ Fatal Error in processNaturalLanguageQueryAsync: " + e);
+                    return Mono.just(new QueryResult(userQuestion, null, null,
+                            "Error procesando la consulta: " + e.getMessage(),
+                            "Intenta reformular tu pregunta.", false));
+                });
+    }
+
+    // El contexto del esquema (con datos de ejemplo) solo se construye cuando hay que llamar al LLM
+    private Mono<QueryResult> generateAndExecuteAsync(String userQuestion, String schemaHash) {
+        return Mono.fromCallable(schemaProvider::getSchemaContext)
+                .subscribeOn(jdbcScheduler)
+                .flatMap(schemaContext -> ollamaService.generateSQLQueryAsync(schemaContext, userQuestion))
+                .flatMap(generatedSQL -> {
+                    String cleanSQL = cleanSQLResponse(generatedSQL);
+                    if ("NO_SQL".equals(cleanSQL) || cleanSQL.contains("Error:")) {
+                        return Mono.just(new QueryResult(userQuestion, null, null,
+                                "No pude generar una consulta para tu pregunta.", cleanSQL, false));
+                    }
+                    return executeQueryAsync(userQuestion, cleanSQL)
+                            .doOnNext(result -> planCache.put(userQuestion, schemaHash, cleanSQL));
+                });
+    }
+
+    private Mono<QueryResult> executeQueryAsync(String userQuestion, String cleanSQL) {
+        return Mono.fromCallable(() -> executeQuery(userQuestion, cleanSQL)).subscribeOn(jdbcScheduler);
+    }
+
+    private QueryResult executeQuery(String userQuestion, String cleanSQL) {
+        log.info("=== EJECUTANDO QUERY: " + cleanSQL + " ===");
+        // 5. Ejecutar consulta con RowMapper personalizado
+        long sqlStart = System.nanoTime();
+        List<Map<String, Object>> results = jdbcTemplate.query(cleanSQL, new ColumnMapRowMapper() {
+            @Override
+            protected Object getColumnValue(ResultSet rs, int index) throws SQLException {
+                Object value = super.getColumnValue(rs, index);
+                // Convertir cualquier enum a String
+                if (value instanceof Enum) {
+                    return value.toString();
+                }
+                return value;
+            }
+        });
+        metrics.recordSince(QaMetrics.SQL, sqlStart);
+
+        // En tu método processNaturalLanguageQuery, justo antes de llamar a formatResultsForDisplay:
+        log.info("=== DEBUG RESULTS BEFORE FORMATTING ===");
+        log.info("Number of results: " + results.size());
+        if (!results.isEmpty()) {
+            log.info("First result keys: " + results.get(0).keySet());
+            log.info("First result values: " + results.get(0));
+
+            // Verificar tipos de datos
+            Map<String, Object> firstRow = results.get(0);
+            for (Map.Entry<String, Object> entry : firstRow.entrySet()) {
+                log.info("Column '" + entry.getKey() + "' -> Type: " +
+                        (entry.getValue() != null ? entry.getValue().getClass().getSimpleName() : "NULL") +
+                        ", Value: " + entry.getValue());
+            }
+        }
+        log.info("======================================");
+
+        // 6. Formatear respuesta
+        String formattedResults = formatResultsForDisplay(results);
+        log.info("=== formattedResults::: " + formattedResults);
+        String explanation = buildExplanation(userQuestion, cleanSQL, results.size());
+
+        return new QueryResult(userQuestion, cleanSQL, results,
+                formattedResults, explanation, true);
+    }
+
     /**
      * Método para formatear los resultados en HTML - IMPLEMENTACIÓN FALTANTE
      */
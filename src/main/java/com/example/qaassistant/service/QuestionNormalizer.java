@@ -0,0 +1,119 @@
+package com.example.qaassistant.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Forma canónica de las preguntas y clave de 128 bits derivada de ella.
+ *
+ * Normalizar: Unicode NFKC, minúsculas, sin tildes ni diéresis (la ñ se conserva, "año" no es "ano"),
+ * signos de puntuación como separadores (salvo el separador decimal: "1,5" y "1.5" son el token "1.5")
+ * y espacios colapsados. Así "¿Cuántas aplicaciones hay?" y "cuantas  aplicaciones hay" comparten clave.
+ * Con 'ignore-word-order' se descartan además las palabras vacías y se ordenan las restantes, de modo que
+ * el orden de las palabras deja de importar. Las palabras que cambian el sentido (con/sin/no, y/o) no son
+ * vacías, y una pregunta con números no se reordena: "más de 10 y menos de 5" no es "más de 5 y menos de 10".
+ *
+ * La clave son los primeros 128 bits del SHA-256 de la forma canónica: estable entre ejecuciones y
+ * réplicas, y sin las colisiones de String.hashCode().
+ */
+@Component
+public class QuestionNormalizer {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    // Separadores: todo lo que no es letra ni número, y '.' o ',' salvo entre dos dígitos
+    private static final Pattern NON_WORD = Pattern.compile("(?:[^\\p{L}\\p{N}.,]|(?<!\\p{N})[.,]|[.,](?!\\p{N}))+");
+    private static final Pattern DECIMAL_COMMA = Pattern.compile("(?<=\\p{N}),(?=\\p{N})");
+    private static final Pattern DIGIT = Pattern.compile("\\p{N}");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Set<String> STOPWORDS = Set.of(
+            "el", "la", "los", "las", "un", "una", "unos", "unas", "lo", "al", "del", "de", "en",
+            "a", "que", "por", "para", "se", "su", "sus", "es", "son", "me", "mi", "hay",
+            "the", "of", "to", "in", "is", "are");
+
+    @Value("${app.normalization.ignore-word-order:false}")
+    private boolean ignoreWordOrder;
+
+    public String normalize(String question) {
+        return normalize(question, ignoreWordOrder);
+    }
+
+    public static String normalize(String question, boolean ignoreWordOrder) {
+        if (question == null) {
+            return "";
+        }
+        String text = Normalizer.normalize(question, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        text = foldAccents(text);
+        text = NON_WORD.matcher(text).replaceAll(" ").trim();
+        text = DECIMAL_COMMA.matcher(text).replaceAll(".");
+        if (!ignoreWordOrder || text.isEmpty()) {
+            return text;
+        }
+        List<String> words = new ArrayList<>(Arrays.asList(text.split(" ")));
+        List<String> meaningful = new ArrayList<>(words.stream().filter(word -> !STOPWORDS.contains(word)).toList());
+        // Una pregunta hecha solo de palabras vacías se queda con todas
+        List<String> kept = meaningful.isEmpty() ? words : meaningful;
+        // Con números el orden dice a qué se refiere cada uno: solo se ordenan las preguntas sin dígitos
+        if (!DIGIT.matcher(text).find()) {
+            kept.sort(null);
+        }
+        return String.join(" ", kept);
+    }
+
+    /**
+     * Clave canónica de 128 bits (32 caracteres hex) de la pregunta normalizada.
+     */
+    public String key(String question) {
+        return hash128(normalize(question));
+    }
+
+    /**
+     * Normalización mínima para textos que se envían tal cual al modelo (NFKC y espacios colapsados):
+     * no altera mayúsculas ni tildes, que sí pueden cambiar el embedding.
+     */
+    public static String normalizeText(String text) {
+        if (text == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFKC)).replaceAll(" ").trim();
+    }
+
+    public static String hash128(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible en la JVM", e);
+        }
+    }
+
+    // Métodos auxiliares
+
+    private static String foldAccents(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == 'ñ') {
+                folded.append(c);
+            } else if (c < 128) {
+                folded.append(c);
+            } else {
+                folded.append(COMBINING_MARKS.matcher(Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD))
+                        .replaceAll(""));
+            }
+        }
+        return folded.toString();
+    }
+}
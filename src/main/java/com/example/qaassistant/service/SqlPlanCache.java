@@ -0,0 +1,178 @@
+package com.example.qaassistant.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache de planes SQL: pregunta → SQL ya validado (se ejecutó sin errores).
+ *
+ * El coste de una pregunta SQL está en la llamada al LLM, no en H2; con un acierto se omite el LLM y
+ * se vuelve a ejecutar el SQL contra los datos actuales, así que no hay filas que puedan quedar
+ * obsoletas y las entradas pueden vivir mucho más que las de la cache de resultados.
+ *
+ * Política propia: LRU acotada por número de entradas y TTL largo; un plan deja de valer si cambia el
+ * esquema (hash estructural de tablas, columnas y tipos de DatabaseSchemaProvider) o si falla al
+ * ejecutarse. El hash no incluye los datos de ejemplo del contexto del LLM, que cambian con cada escritura.
+ */
+@Service
+public class SqlPlanCache implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlPlanCache.class);
+
+    private final QuestionNormalizer normalizer;
+
+    @Value("${app.sql-plan-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.sql-plan-cache.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${app.sql-plan-cache.ttl:7d}")
+    private Duration ttl;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Plan> plans = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder schemaMismatches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public SqlPlanCache(QuestionNormalizer normalizer) {
+        this.normalizer = normalizer;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("qa.sql.plan.hits", hits, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.sql.plan.misses", misses, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.sql.plan.evictions", evictions, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.sql.plan.failures", failures, LongAdder::sum).register(registry);
+        Gauge.builder("qa.sql.plan.size", this, cache -> cache.size()).register(registry);
+    }
+
+    /**
+     * SQL validado para la pregunta, si existe y se generó con el mismo esquema.
+     */
+    public Optional<String> get(String question, String schemaHash) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String key = normalizer.key(question);
+        lock.lock();
+        try {
+            Plan plan = plans.get(key);
+            if (plan != null && System.currentTimeMillis() - plan.createdAt() > ttl.toMillis()) {
+                plans.remove(key);
+                expirations.increment();
+                plan = null;
+            } else if (plan != null && !plan.schemaHash().equals(schemaHash)) {
+                plans.remove(key);
+                schemaMismatches.increment();
+                plan = null;
+            }
+            if (plan == null) {
+                misses.increment();
+                return Optional.empty();
+            }
+            hits.increment();
+            return Optional.of(plan.sql());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(String question, String schemaHash, String sql) {
+        if (!enabled) {
+            return;
+        }
+        Plan plan = new Plan(sql, schemaHash, System.currentTimeMillis());
+        lock.lock();
+        try {
+            plans.put(normalizer.key(question), plan);
+            Iterator<Plan> eldest = plans.values().iterator();
+            while (plans.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+        stores.increment();
+        log.info("📐 Plan SQL guardado para \"{}\"", question);
+    }
+
+    /**
+     * El plan falló al ejecutarse (p. ej. cambió una columna): se descarta.
+     */
+    public void invalidate(String question) {
+        lock.lock();
+        try {
+            plans.remove(normalizer.key(question));
+        } finally {
+            lock.unlock();
+        }
+        failures.increment();
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            plans.clear();
+        } finally {
+            lock.unlock();
+        }
+        log.info("🗑️  Cache de planes SQL limpiada");
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        double hitRate = (hitCount + missCount) > 0 ? (double) hitCount / (hitCount + missCount) * 100 : 0;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", Math.round(hitRate * 100.0) / 100.0);
+        stats.put("stores", stores.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("schemaMismatches", schemaMismatches.sum());
+        stats.put("failures", failures.sum());
+        stats.put("size", size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlHours", ttl.toHours());
+        return stats;
+    }
+
+    private int size() {
+        lock.lock();
+        try {
+            return plans.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Plan(String sql, String schemaHash, long createdAt) {
+    }
+}
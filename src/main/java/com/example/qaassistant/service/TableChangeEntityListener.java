@@ -0,0 +1,31 @@
+package com.example.qaassistant.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import jakarta.persistence.Table;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener JPA de las entidades de negocio: toda escritura sube la versión de su tabla
+ * en TableChangeTracker. Hibernate lo obtiene como bean de Spring, con sus dependencias.
+ */
+@Component
+public class TableChangeEntityListener {
+
+    private final TableChangeTracker tracker;
+
+    public TableChangeEntityListener(TableChangeTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onWrite(Object entity) {
+        Table table = entity.getClass().getAnnotation(Table.class);
+        tracker.recordWrite(table != null && !table.name().isEmpty()
+                ? table.name()
+                : entity.getClass().getSimpleName());
+    }
+}
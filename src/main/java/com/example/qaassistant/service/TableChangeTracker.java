@@ -0,0 +1,287 @@
+package com.example.qaassistant.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Versión de escritura por tabla, para invalidar solo las respuestas cacheadas cuyos datos cambiaron.
+ *
+ * Las entidades de negocio notifican sus escrituras (TableChangeEntityListener), las de JDBC pasan por
+ * TableTrackingJdbcTemplate, y cada tabla sube de versión al confirmarse la transacción. Una respuesta se
+ * cachea junto con las versiones, tomadas antes de ejecutar el SQL, de las tablas que aparecen en su
+ * FROM/JOIN; deja de ser válida en cuanto cualquiera de ellas cambia. Si el SQL no se puede analizar con
+ * seguridad, la respuesta depende de todas las tablas conocidas. Las respuestas sin SQL (RAG) no
+ * dependen de ninguna tabla.
+ */
+@Component
+public class TableChangeTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(TableChangeTracker.class);
+    private static final Pattern TABLE_CLAUSE = Pattern.compile("\\b(?:from|join)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IDENTIFIER =
+            Pattern.compile("\\G\\s*(\"[^\"]+\"|`[^`]+`|[a-z_][a-z0-9_$]*)", Pattern.CASE_INSENSITIVE);
+    private static final String WRITE_TARGET_REGEX =
+            "\\s*(?:insert\\s+into|merge\\s+into|update|delete\\s+from|truncate\\s+table|alter\\s+table|drop\\s+table(?:\\s+if\\s+exists)?|create\\s+table(?:\\s+if\\s+not\\s+exists)?)\\s+";
+    private static final Pattern WRITE_TARGET = Pattern.compile("^" + WRITE_TARGET_REGEX, Pattern.CASE_INSENSITIVE);
+    // Sentencias de escritura dentro de un script: al principio de una línea o tras un ';'
+    private static final Pattern SCRIPT_WRITE_TARGET =
+            Pattern.compile("(?:^|;)" + WRITE_TARGET_REGEX, Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+    private static final Pattern WRITE_STATEMENT =
+            Pattern.compile("^\\s*(?:insert|merge|update|delete|truncate|alter|drop|create)\\b", Pattern.CASE_INSENSITIVE);
+    // Palabras que pueden seguir a una tabla y no son su alias
+    private static final Set<String> CLAUSE_KEYWORDS = Set.of("where", "join", "inner", "left", "right", "full",
+            "cross", "natural", "on", "using", "group", "order", "having", "limit", "offset", "fetch", "union",
+            "except", "intersect", "minus", "window", "qualify", "for", "as");
+
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Set<String> knownTables = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Tablas referenciadas en FROM/JOIN (también las separadas por comas), en minúsculas y sin esquema.
+     */
+    public static Set<String> referencedTables(String sql) {
+        TableReferences references = parse(sql);
+        return references.tables();
+    }
+
+    /**
+     * DML o DDL, para distinguir las escrituras de las consultas en JdbcTemplate.execute(sql).
+     */
+    public static boolean isWriteStatement(String sql) {
+        return sql != null && WRITE_STATEMENT.matcher(sql).find();
+    }
+
+    /**
+     * Copia de las versiones actuales; tomarla antes de ejecutar la consulta que se va a cachear.
+     */
+    public Map<String, Long> currentVersions() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        versions.forEach((table, version) -> snapshot.put(table, version.get()));
+        return snapshot;
+    }
+
+    /**
+     * Versiones, dentro de 'snapshot', de las tablas que usa 'sql'.
+     */
+    public Map<String, Long> dependencies(String sql, Map<String, Long> snapshot) {
+        if (sql == null || sql.isBlank()) {
+            return Map.of();
+        }
+        TableReferences references = parse(sql);
+        Set<String> tables = new LinkedHashSet<>(references.tables());
+        if (!references.complete() || tables.isEmpty()) {
+            // Análisis incompleto: se depende de todas las tablas conocidas para no servir datos obsoletos
+            tables.addAll(knownTables());
+        }
+        Map<String, Long> dependencies = new LinkedHashMap<>();
+        for (String table : tables) {
+            dependencies.put(table, snapshot.getOrDefault(table, 0L));
+        }
+        return Collections.unmodifiableMap(dependencies);
+    }
+
+    public boolean isCurrent(Map<String, Long> dependencies) {
+        if (dependencies == null || dependencies.isEmpty()) {
+            return true;
+        }
+        for (Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+            if (version(dependency.getKey()) != dependency.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long version(String table) {
+        AtomicLong version = versions.get(table);
+        return version != null ? version.get() : 0L;
+    }
+
+    /**
+     * Registra una escritura; dentro de una transacción la versión sube al confirmarse.
+     */
+    public void recordWrite(String table) {
+        String normalized = table.toLowerCase(Locale.ROOT);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bump(normalized);
+                }
+            });
+        } else {
+            bump(normalized);
+        }
+    }
+
+    /**
+     * Registra una sentencia de escritura ejecutada por JDBC. Si no se reconoce su tabla (o no se conoce
+     * el SQL), cuenta como escritura de todas las tablas conocidas.
+     */
+    public void recordStatement(String sql) {
+        Matcher matcher = sql != null ? WRITE_TARGET.matcher(sql) : null;
+        String table = matcher != null && matcher.find() ? readIdentifier(sql, matcher.end()) : null;
+        if (table != null) {
+            recordWrite(table);
+        } else {
+            knownTables().forEach(this::recordWrite);
+        }
+    }
+
+    /**
+     * Registra las escrituras de un script SQL ejecutado fuera de JDBC instrumentado (p. ej. data.sql):
+     * cada tabla escrita sube una vez de versión, aunque el script tenga varias sentencias sobre ella.
+     *
+     * @return tablas registradas
+     */
+    public Set<String> recordScript(String script) {
+        Set<String> tables = new LinkedHashSet<>();
+        Matcher matcher = SCRIPT_WRITE_TARGET.matcher(script);
+        while (matcher.find()) {
+            String table = readIdentifier(script, matcher.end());
+            if (table != null) {
+                tables.add(table.toLowerCase(Locale.ROOT));
+            }
+        }
+        tables.forEach(this::recordWrite);
+        return tables;
+    }
+
+    /**
+     * Tablas del esquema (DatabaseSchemaProvider las registra al arrancar y tras cambios de DDL).
+     */
+    public void registerTables(Collection<String> tables) {
+        for (String table : tables) {
+            knownTables.add(table.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public Set<String> knownTables() {
+        Set<String> tables = new LinkedHashSet<>(knownTables);
+        tables.addAll(versions.keySet());
+        return tables;
+    }
+
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    // Métodos auxiliares
+
+    /**
+     * Recorre cada FROM/JOIN y lee la lista de tablas que le sigue (con alias opcional y comas).
+     * Una subconsulta entre paréntesis no es una tabla: su propio FROM se encuentra en otra iteración.
+     * Cualquier otra cosa que no sea un identificador deja el análisis como incompleto.
+     */
+    private static TableReferences parse(String sql) {
+        if (sql == null || sql.isBlank()) {
+            return new TableReferences(Set.of(), true);
+        }
+        Set<String> tables = new LinkedHashSet<>();
+        boolean complete = true;
+        Matcher clause = TABLE_CLAUSE.matcher(sql);
+        while (clause.find()) {
+            int position = skipWhitespace(sql, clause.end());
+            while (position < sql.length()) {
+                if (sql.charAt(position) == '(') {
+                    break;
+                }
+                Matcher identifier = IDENTIFIER.matcher(sql);
+                if (!identifier.find(position)) {
+                    complete = false;
+                    break;
+                }
+                String name = unquote(identifier.group(1));
+                position = identifier.end();
+                // Nombre cualificado esquema.tabla: se conserva solo la tabla
+                while (position < sql.length() && sql.charAt(position) == '.' && identifier.find(position + 1)) {
+                    name = unquote(identifier.group(1));
+                    position = identifier.end();
+                }
+                tables.add(name);
+                position = skipAlias(sql, position);
+                position = skipWhitespace(sql, position);
+                if (position < sql.length() && sql.charAt(position) == ',') {
+                    position = skipWhitespace(sql, position + 1);
+                    continue;
+                }
+                break;
+            }
+        }
+        return new TableReferences(Collections.unmodifiableSet(tables), complete);
+    }
+
+    private static String readIdentifier(String sql, int position) {
+        Matcher identifier = IDENTIFIER.matcher(sql);
+        if (!identifier.find(position)) {
+            return null;
+        }
+        String name = unquote(identifier.group(1));
+        int end = identifier.end();
+        while (end < sql.length() && sql.charAt(end) == '.' && identifier.find(end + 1)) {
+            name = unquote(identifier.group(1));
+            end = identifier.end();
+        }
+        return name;
+    }
+
+    // Alias opcional tras la tabla: "t", "AS t" o "AS \"t\""
+    private static int skipAlias(String sql, int position) {
+        Matcher identifier = IDENTIFIER.matcher(sql);
+        if (!identifier.find(position)) {
+            return position;
+        }
+        String word = identifier.group(1).toLowerCase(Locale.ROOT);
+        if (word.equals("as")) {
+            return identifier.find(identifier.end()) ? identifier.end() : position;
+        }
+        return CLAUSE_KEYWORDS.contains(word) ? position : identifier.end();
+    }
+
+    private static int skipWhitespace(String sql, int position) {
+        while (position < sql.length() && Character.isWhitespace(sql.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static String unquote(String identifier) {
+        char first = identifier.charAt(0);
+        String name = (first == '"' || first == '`') ? identifier.substring(1, identifier.length() - 1) : identifier;
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private record TableReferences(Set<String> tables, boolean complete) {
+    }
+
+    private void bump(String table) {
+        long version = versions.computeIfAbsent(table, key -> new AtomicLong()).incrementAndGet();
+        log.debug("📝 Tabla {} modificada (versión {})", table, version);
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(table);
+            } catch (Exception e) {
+                log.warn("⚠️ Error notificando cambio en la tabla {}: {}", table, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.qaassistant.service;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.jdbc.support.KeyHolder;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+
+/**
+ * JdbcTemplate que notifica a TableChangeTracker las escrituras hechas por JDBC, que no pasan por
+ * los listeners JPA. Todas las variantes de update/batchUpdate acaban en los métodos sobrescritos;
+ * execute(sql) solo cuenta si la sentencia es DML o DDL.
+ */
+public class TableTrackingJdbcTemplate extends JdbcTemplate {
+
+    private final TableChangeTracker tracker;
+
+    public TableTrackingJdbcTemplate(DataSource dataSource, TableChangeTracker tracker) {
+        super(dataSource);
+        this.tracker = tracker;
+    }
+
+    @Override
+    public void execute(String sql) throws DataAccessException {
+        super.execute(sql);
+        if (TableChangeTracker.isWriteStatement(sql)) {
+            tracker.recordStatement(sql);
+        }
+    }
+
+    @Override
+    public int update(String sql) throws DataAccessException {
+        int rows = super.update(sql);
+        tracker.recordStatement(sql);
+        return rows;
+    }
+
+    @Override
+    protected int update(PreparedStatementCreator psc, PreparedStatementSetter pss) throws DataAccessException {
+        int rows = super.update(psc, pss);
+        tracker.recordStatement(sqlOf(psc));
+        return rows;
+    }
+
+    @Override
+    public int update(PreparedStatementCreator psc, KeyHolder generatedKeyHolder) throws DataAccessException {
+        int rows = super.update(psc, generatedKeyHolder);
+        tracker.recordStatement(sqlOf(psc));
+        return rows;
+    }
+
+    @Override
+    public int[] batchUpdate(String... sql) throws DataAccessException {
+        int[] rows = super.batchUpdate(sql);
+        for (String statement : sql) {
+            tracker.recordStatement(statement);
+        }
+        return rows;
+    }
+
+    @Override
+    public int[] batchUpdate(String sql, BatchPreparedStatementSetter pss) throws DataAccessException {
+        int[] rows = super.batchUpdate(sql, pss);
+        tracker.recordStatement(sql);
+        return rows;
+    }
+
+    @Override
+    public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                   ParameterizedPreparedStatementSetter<T> pss) throws DataAccessException {
+        int[][] rows = super.batchUpdate(sql, batchArgs, batchSize, pss);
+        tracker.recordStatement(sql);
+        return rows;
+    }
+
+    // Métodos auxiliares
+
+    // null si el creador no expone su SQL: el tracker lo trata como escritura de todas las tablas
+    private static String sqlOf(PreparedStatementCreator psc) {
+        return psc instanceof SqlProvider provider ? provider.getSql() : null;
+    }
+}
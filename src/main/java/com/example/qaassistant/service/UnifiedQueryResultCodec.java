@@ -0,0 +1,269 @@
+package com.example.qaassistant.service;
+
+import com.example.qaassistant.model.rag.KnowledgeDocument;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serialización binaria compacta de UnifiedQueryResult para caches distribuidas.
+ *
+ * Formato: versión + campos en orden fijo, cadenas UTF-8 con marca de nulo y longitud, y
+ * valores de rawResults/metadata con una etiqueta de tipo de un byte, de modo que los tipos
+ * JDBC habituales vuelven con su clase original. Los embeddings de las fuentes no se guardan.
+ */
+public final class UnifiedQueryResultCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte DECIMAL = 7;
+    private static final byte TIMESTAMP = 8;
+    private static final byte DATE = 9;
+    private static final byte LOCAL_DATE = 10;
+    private static final byte LOCAL_DATE_TIME = 11;
+
+    private UnifiedQueryResultCodec() {
+    }
+
+    public static byte[] encode(UnifiedQueryResult result) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            writeString(out, result.getOriginalQuestion());
+            writeString(out, result.getIntent());
+            writeString(out, result.getAnswer());
+            writeString(out, result.getGeneratedSQL());
+            writeString(out, result.getErrorMessage());
+            out.writeBoolean(result.isSuccess());
+            writeStrings(out, result.getSuggestions());
+            writeRows(out, result.getRawResults());
+            writeSources(out, result.getSources());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static UnifiedQueryResult decode(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Versión de UnifiedQueryResult no soportada: " + version);
+            }
+            UnifiedQueryResult result = new UnifiedQueryResult();
+            result.setOriginalQuestion(readString(in));
+            result.setIntent(readString(in));
+            result.setAnswer(readString(in));
+            result.setGeneratedSQL(readString(in));
+            result.setErrorMessage(readString(in));
+            result.setSuccess(in.readBoolean());
+            result.setSuggestions(readStrings(in));
+            result.setRawResults(readRows(in));
+            result.setSources(readSources(in));
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Escritura
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            // Sin writeUTF: está limitado a 64 KB y las respuestas pueden superarlo
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values != null ? values.size() : -1);
+        if (values != null) {
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static void writeRows(DataOutputStream out, List<Map<String, Object>> rows) throws IOException {
+        out.writeInt(rows != null ? rows.size() : -1);
+        if (rows != null) {
+            for (Map<String, Object> row : rows) {
+                writeMap(out, row);
+            }
+        }
+    }
+
+    private static void writeSources(DataOutputStream out, List<KnowledgeDocument> sources) throws IOException {
+        out.writeInt(sources != null ? sources.size() : -1);
+        if (sources != null) {
+            for (KnowledgeDocument doc : sources) {
+                writeString(out, doc.getId());
+                writeString(out, doc.getTitle());
+                writeString(out, doc.getContent());
+                writeMap(out, doc.getMetadata());
+            }
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, Object> map) throws IOException {
+        out.writeInt(map != null ? map.size() : -1);
+        if (map != null) {
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                writeString(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Integer i) {
+            out.writeByte(INT);
+            out.writeInt(i);
+        } else if (value instanceof Long l) {
+            out.writeByte(LONG);
+            out.writeLong(l);
+        } else if (value instanceof Double d) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(d);
+        } else if (value instanceof Float f) {
+            out.writeByte(FLOAT);
+            out.writeFloat(f);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(b);
+        } else if (value instanceof BigDecimal decimal) {
+            out.writeByte(DECIMAL);
+            writeString(out, decimal.toPlainString());
+        } else if (value instanceof Timestamp timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(timestamp.getTime());
+            out.writeInt(timestamp.getNanos());
+        } else if (value instanceof java.sql.Date date) {
+            out.writeByte(DATE);
+            out.writeLong(date.toLocalDate().toEpochDay());
+        } else if (value instanceof LocalDate date) {
+            out.writeByte(LOCAL_DATE);
+            out.writeLong(date.toEpochDay());
+        } else if (value instanceof LocalDateTime dateTime) {
+            out.writeByte(LOCAL_DATE_TIME);
+            writeString(out, dateTime.toString());
+        } else {
+            // Enums y tipos no contemplados viajan como texto, igual que los muestra QAService
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    // Lectura
+
+    private static String readString(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private static List<Map<String, Object>> readRows(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(readMap(in));
+        }
+        return rows;
+    }
+
+    private static List<KnowledgeDocument> readSources(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<KnowledgeDocument> sources = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            KnowledgeDocument doc = new KnowledgeDocument(readString(in), null, readString(in));
+            doc.setContent(readString(in));
+            Map<String, Object> metadata = readMap(in);
+            doc.setMetadata(metadata != null ? metadata : new LinkedHashMap<>());
+            sources.add(doc);
+        }
+        return sources;
+    }
+
+    private static Map<String, Object> readMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, Object> map = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readValue(in));
+        }
+        return map;
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case NULL -> null;
+            case STRING -> readString(in);
+            case INT -> in.readInt();
+            case LONG -> in.readLong();
+            case DOUBLE -> in.readDouble();
+            case FLOAT -> in.readFloat();
+            case BOOLEAN -> in.readBoolean();
+            case DECIMAL -> new BigDecimal(readString(in));
+            case TIMESTAMP -> {
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                yield timestamp;
+            }
+            case DATE -> java.sql.Date.valueOf(LocalDate.ofEpochDay(in.readLong()));
+            case LOCAL_DATE -> LocalDate.ofEpochDay(in.readLong());
+            case LOCAL_DATE_TIME -> LocalDateTime.parse(readString(in));
+            default -> throw new IOException("Tipo de valor desconocido: " + type);
+        };
+    }
+}
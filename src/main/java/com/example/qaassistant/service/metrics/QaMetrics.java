@@ -0,0 +1,76 @@
+package com.example.qaassistant.service.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencias de las etapas del pipeline de preguntas (consulta de cache, LLM, SQL).
+ *
+ * Cada medición se anota en un LatencyHistogram propio, que alimenta /api/cache/metrics,
+ * y en un Timer de Micrometer con percentiles, visible en /actuator/metrics.
+ */
+@Component
+public class QaMetrics {
+
+    public static final String CACHE_LOOKUP = "qa.cache.lookup";
+    public static final String LLM = "qa.llm";
+    public static final String SQL = "qa.sql";
+    // Tiempo hasta el primer byte de la respuesta del LLM: sin streaming coincide con la respuesta completa
+    public static final String LLM_TTFB_BLOCKING = "qa.llm.ttfb.blocking";
+    public static final String LLM_TTFB_STREAMING = "qa.llm.ttfb.streaming";
+    // Carga del modelo en Ollama detectada por el keep-warm (load_duration de la respuesta)
+    public static final String LLM_COLD_START = "qa.llm.cold-start";
+
+    private final MeterRegistry registry;
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    public QaMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        // Registrar las etapas conocidas para que aparezcan aunque aún no tengan muestras
+        stage(CACHE_LOOKUP);
+        stage(LLM);
+        stage(SQL);
+        stage(LLM_TTFB_BLOCKING);
+        stage(LLM_TTFB_STREAMING);
+        stage(LLM_COLD_START);
+    }
+
+    public void record(String name, long nanos) {
+        Stage stage = stage(name);
+        stage.histogram.record(nanos);
+        stage.timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Mide el tiempo transcurrido desde 'startNanos' (obtenido con System.nanoTime()).
+     */
+    public void recordSince(String name, long startNanos) {
+        record(name, System.nanoTime() - startNanos);
+    }
+
+    public Map<String, Object> getLatencySnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        stages.forEach((name, stage) -> snapshot.put(name, stage.histogram.snapshot()));
+        return snapshot;
+    }
+
+    public void reset() {
+        stages.values().forEach(stage -> stage.histogram.reset());
+    }
+
+    private Stage stage(String name) {
+        return stages.computeIfAbsent(name, key -> new Stage(new LatencyHistogram(),
+                Timer.builder(key)
+                        .publishPercentiles(0.5, 0.9, 0.99)
+                        .register(registry)));
+    }
+
+    private record Stage(LatencyHistogram histogram, Timer timer) {
+    }
+}
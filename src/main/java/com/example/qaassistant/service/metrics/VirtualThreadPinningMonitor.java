@@ -0,0 +1,213 @@
+package com.example.qaassistant.service.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Diagnóstico de pinning de hilos virtuales mediante el evento JFR jdk.VirtualThreadPinned.
+ *
+ * En Java 21 un hilo virtual que se bloquea dentro de un bloque synchronized (o en código nativo) no
+ * suelta su hilo portador: con pocos portadores unas pocas esperas largas bastan para parar el resto
+ * de peticiones. El monitor escucha los eventos que superan el umbral, los agrupa por el primer frame
+ * de la aplicación y los clasifica como "jdbc" (H2, Hikari, Hibernate, java.sql), "app" u "other",
+ * para localizar qué sección hay que pasar a ReentrantLock o sacar del hilo virtual.
+ */
+@Component
+public class VirtualThreadPinningMonitor implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String APP_PACKAGE = "com.example.qaassistant.";
+    private static final List<String> JDBC_PACKAGES =
+            List.of("org.h2.", "com.zaxxer.hikari.", "org.hibernate.", "java.sql.", "javax.sql.");
+    private static final int MAX_SITES = 200;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${app.virtual-threads.pinning-monitor.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.virtual-threads.pinning-monitor.threshold:20ms}")
+    private Duration threshold;
+
+    private RecordingStream stream;
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder jdbcEvents = new LongAdder();
+    private final LongAdder pinnedNanos = new LongAdder();
+    private final LongAccumulator maxPinnedNanos = new LongAccumulator(Math::max, 0);
+    private final Map<String, Site> sites = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        // Sin hilos virtuales no hay eventos que observar
+        if (!enabled || !virtualThreads) {
+            log.info("⏸️ Monitor de pinning de hilos virtuales inactivo");
+            return;
+        }
+        try {
+            stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+            stream.onEvent(PINNED_EVENT, this::onPinned);
+            stream.startAsync();
+            log.info("📌 Monitor de pinning de hilos virtuales activo (umbral {} ms)", threshold.toMillis());
+        } catch (RuntimeException e) {
+            log.warn("⚠️ No se pudo arrancar el monitor de pinning (JFR no disponible): {}", e.getMessage());
+            stream = null;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("qa.vthreads.pinned", events, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.vthreads.pinned.jdbc", jdbcEvents, LongAdder::sum).register(registry);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("virtualThreads", virtualThreads);
+        stats.put("monitoring", stream != null);
+        stats.put("thresholdMs", threshold.toMillis());
+        stats.put("events", events.sum());
+        stats.put("jdbcEvents", jdbcEvents.sum());
+        stats.put("totalPinnedMs", pinnedNanos.sum() / 1_000_000);
+        stats.put("maxPinnedMs", maxPinnedNanos.get() / 1_000_000);
+        stats.put("sites", sites.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Site> site) -> site.getValue().count.sum())
+                        .reversed())
+                .limit(20)
+                .map(site -> {
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("site", site.getKey());
+                    entry.put("category", site.getValue().category);
+                    entry.put("count", site.getValue().count.sum());
+                    entry.put("pinnedMs", site.getValue().nanos.sum() / 1_000_000);
+                    entry.put("stack", site.getValue().stack);
+                    return entry;
+                })
+                .toList());
+        return stats;
+    }
+
+    public void reset() {
+        events.reset();
+        jdbcEvents.reset();
+        pinnedNanos.reset();
+        maxPinnedNanos.reset();
+        sites.clear();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    // Métodos auxiliares
+
+    private void onPinned(RecordedEvent event) {
+        long nanos = event.getDuration().toNanos();
+        events.increment();
+        pinnedNanos.add(nanos);
+        maxPinnedNanos.accumulate(nanos);
+
+        List<RecordedFrame> frames = frames(event);
+        String category = category(frames);
+        if ("jdbc".equals(category)) {
+            jdbcEvents.increment();
+        }
+        String site = site(frames);
+        if (!sites.containsKey(site) && sites.size() >= MAX_SITES) {
+            site = "(otros)";
+        }
+        boolean[] first = {false};
+        Site stats = sites.computeIfAbsent(site, key -> {
+            first[0] = true;
+            return new Site(category, topFrames(frames, 8));
+        });
+        stats.count.increment();
+        stats.nanos.add(nanos);
+
+        // El primer evento de cada sitio se registra con su pila; los siguientes solo se cuentan
+        if (first[0]) {
+            log.warn("📌 Hilo virtual fijado a su portador {} ms en {} ({}):\n  {}",
+                    nanos / 1_000_000, site, category, String.join("\n  ", stats.stack));
+        }
+    }
+
+    private static List<RecordedFrame> frames(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        return stackTrace != null ? stackTrace.getFrames() : List.of();
+    }
+
+    private static String category(List<RecordedFrame> frames) {
+        boolean app = false;
+        for (RecordedFrame frame : frames) {
+            String type = typeName(frame);
+            if (JDBC_PACKAGES.stream().anyMatch(type::startsWith)) {
+                return "jdbc";
+            }
+            app |= type.startsWith(APP_PACKAGE);
+        }
+        return app ? "app" : "other";
+    }
+
+    // Primer frame de la aplicación: es donde se puede corregir; si no hay ninguno, el frame superior
+    private static String site(List<RecordedFrame> frames) {
+        for (RecordedFrame frame : frames) {
+            if (typeName(frame).startsWith(APP_PACKAGE)) {
+                return describe(frame);
+            }
+        }
+        return frames.isEmpty() ? "(sin pila)" : describe(frames.get(0));
+    }
+
+    private static List<String> topFrames(List<RecordedFrame> frames, int limit) {
+        return frames.stream().limit(limit).map(VirtualThreadPinningMonitor::describe).toList();
+    }
+
+    private static String describe(RecordedFrame frame) {
+        if (frame.getMethod() == null) {
+            return "(desconocido)";
+        }
+        return typeName(frame) + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    private static String typeName(RecordedFrame frame) {
+        return frame.getMethod() != null ? frame.getMethod().getType().getName() : "";
+    }
+
+    private static final class Site {
+        private final String category;
+        private final List<String> stack;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private Site(String category, List<String> stack) {
+            this.category = category;
+            this.stack = stack;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.qaassistant.service.ollama;
+
+import com.example.qaassistant.model.ollama.SuccessfulQuery;
+import com.example.qaassistant.service.IQueryCacheService;
+import com.example.qaassistant.service.UnifiedQueryResult;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pre-calentamiento de caches a partir de las preguntas más usadas (SuccessfulQuery.usageCount).
+ *
+ * Al arrancar y después de forma periódica reproduce en segundo plano las N preguntas más populares
+ * con una concurrencia acotada, de modo que la cache de consultas, la semántica y la de embeddings
+ * estén llenas antes de que llegue el tráfico. Las preguntas que ya están en cache solo cuestan una
+ * consulta; las que expiraron vuelven a calcularse.
+ */
+@Service
+public class CacheWarmupService {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmupService.class);
+
+    private final LearningService learningService;
+    private final CachedUnifiedQAService cachedQAService;
+    private final IQueryCacheService cacheService;
+
+    @Value("${app.cache.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cache.warmup.top-n:20}")
+    private int topN;
+
+    @Value("${app.cache.warmup.concurrency:2}")
+    private int concurrency;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    // Señales pendientes para el pre-calentamiento de arranque: aplicación lista y versiones de tabla subidas
+    private final AtomicInteger pendingStartupSignals = new AtomicInteger(2);
+    private volatile Map<String, Object> lastReport = Map.of("status", "pendiente");
+
+    public CacheWarmupService(LearningService learningService, CachedUnifiedQAService cachedQAService,
+                              IQueryCacheService cacheService) {
+        this.learningService = learningService;
+        this.cachedQAService = cachedQAService;
+        this.cacheService = cacheService;
+    }
+
+    /**
+     * La carga de data.sql sube la versión de sus tablas e invalida lo cacheado sobre ellas: un
+     * pre-calentamiento anterior se perdería. DatabaseSchemaProvider publica el evento tras registrarla.
+     */
+    @EventListener(SchemaInitializedEvent.class)
+    public void onSchemaInitialized() {
+        startupSignal();
+    }
+
+    // Las respuestas RAG necesitan la base de conocimiento, que DataInitializer carga antes de estar lista
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        startupSignal();
+    }
+
+    /**
+     * Pre-calentamiento de arranque, cuando han llegado las dos señales (en cualquier orden).
+     */
+    void warmUpOnStartup() {
+        if (!enabled) {
+            log.info("⏸️ Pre-calentamiento de cache deshabilitado");
+            return;
+        }
+        // En un hilo propio: warmUp espera a las tareas del pool y no debe ocupar uno de sus hilos
+        Thread thread = new Thread(this::warmUp, "cache-warmup-startup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Scheduled(initialDelayString = "${app.cache.warmup.interval-ms:3600000}",
+            fixedDelayString = "${app.cache.warmup.interval-ms:3600000}")
+    public void scheduledWarmUp() {
+        if (enabled) {
+            warmUp();
+        }
+    }
+
+    /**
+     * Reproduce las preguntas más populares. Si ya hay un pre-calentamiento en curso no hace nada.
+     */
+    public Map<String, Object> warmUp() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("⏭️ Pre-calentamiento ya en curso, se omite");
+            return lastReport;
+        }
+        long start = System.nanoTime();
+        try {
+            List<String> questions = selectQuestions();
+            AtomicInteger warmed = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            log.info("🔥 Pre-calentando cache con {} preguntas (concurrencia {})", questions.size(), concurrency);
+
+            List<CompletableFuture<Void>> tasks = new ArrayList<>(questions.size());
+            for (String question : questions) {
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        UnifiedQueryResult result = cachedQAService.warm(question);
+                        (result.isSuccess() ? warmed : failed).incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        log.warn("⚠️ Error pre-calentando \"{}\": {}", question, e.getMessage());
+                    }
+                }, executor()));
+            }
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).join();
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("status", "completado");
+            report.put("finishedAt", LocalDateTime.now().toString());
+            report.put("durationMs", (System.nanoTime() - start) / 1_000_000);
+            report.put("questions", questions.size());
+            report.put("warmed", warmed.get());
+            report.put("failed", failed.get());
+            report.put("cacheHitRate", cacheService.getCacheStats().get("hitRate"));
+            lastReport = report;
+            log.info("✅ Pre-calentamiento completado: {}", report);
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public Map<String, Object> getLastReport() {
+        return lastReport;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // Métodos auxiliares
+
+    private void startupSignal() {
+        if (pendingStartupSignals.decrementAndGet() == 0) {
+            warmUpOnStartup();
+        }
+    }
+
+    // Primero las aprendidas (successful_queries); después completar con las frecuentes de la cache
+    private List<String> selectQuestions() {
+        Set<String> questions = new LinkedHashSet<>();
+        for (SuccessfulQuery query : learningService.getPopularQueries(topN)) {
+            questions.add(query.getQuestion());
+        }
+        if (questions.size() < topN) {
+            questions.addAll(cacheService.getFrequentQueries(topN - questions.size()));
+        }
+        return new ArrayList<>(questions).subList(0, Math.min(questions.size(), topN));
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            // El pool fijo acota la concurrencia también con hilos virtuales
+            ThreadFactory threadFactory;
+            if (virtualThreads) {
+                threadFactory = Thread.ofVirtual().name("cache-warmup-", 1).factory();
+            } else {
+                AtomicInteger threadCount = new AtomicInteger();
+                threadFactory = runnable -> {
+                    Thread thread = new Thread(runnable, "cache-warmup-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                };
+            }
+            executor = Executors.newFixedThreadPool(Math.max(concurrency, 1), threadFactory);
+        }
+        return executor;
+    }
+}
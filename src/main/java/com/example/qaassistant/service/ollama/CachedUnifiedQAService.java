@@ -3,13 +3,23 @@ package com.example.qaassistant.service.ollama;
 import com.example.qaassistant.controller.transfer.RagResponse;
 import com.example.qaassistant.model.ollama.QueryResult;
 import com.example.qaassistant.service.*;
+import com.example.qaassistant.service.metrics.QaMetrics;
 import com.example.qaassistant.service.rag.RagService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 @Service
 @Primary
@@ -20,37 +30,166 @@ public class CachedUnifiedQAService {
     //private final LLMQuestionClassifier intentClassifier;
     private final IntentClassifier intentClassifier;
     private final QAService qaService;
-    private final InMemoryQueryCacheService cacheService;
+    private final IQueryCacheService cacheService;
+    private final SemanticQueryCache semanticCache;
+    private final QaMetrics metrics;
+    private final QuestionNormalizer normalizer;
+    private final LearningService learningService;
+    private final TableChangeTracker tableChanges;
+    private final Scheduler jdbcScheduler;
+
+    // Single-flight: una sola ejecución del pipeline por pregunta en curso; el resto espera su resultado
+    private final Map<String, CompletableFuture<UnifiedQueryResult>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder pipelineExecutions = new LongAdder();
+    private final LongAdder coalescedRequests = new LongAdder();
 
     public CachedUnifiedQAService(QAService qaService, RagService ragService, IntentClassifier intentClassifier,
-                                  InMemoryQueryCacheService cacheService) {
+                                  IQueryCacheService cacheService, SemanticQueryCache semanticCache,
+                                  QaMetrics metrics, QuestionNormalizer normalizer,
+                                  LearningService learningService, TableChangeTracker tableChanges,
+                                  Scheduler jdbcScheduler) {
         this.ragService = ragService;
         this.qaService = qaService;
         this.intentClassifier = intentClassifier;
         this.cacheService = cacheService;
+        this.semanticCache = semanticCache;
+        this.metrics = metrics;
+        this.normalizer = normalizer;
+        this.learningService = learningService;
+        this.tableChanges = tableChanges;
+        this.jdbcScheduler = jdbcScheduler;
     }
 
     public UnifiedQueryResult processQuestion(String question) {
+        return processQuestion(question, null);
+    }
+
+    /**
+     * 'onToken' recibe los fragmentos que genera el LLM según llegan; no se llama si la respuesta
+     * sale de cache o si otra petición idéntica ya está en curso.
+     */
+    public UnifiedQueryResult processQuestion(String question, Consumer<String> onToken) {
+        long start = System.nanoTime();
+        UnifiedQueryResult result = answer(question, onToken);
+        recordUsage(question, result, start);
+        return result;
+    }
+
+    /**
+     * Variante no bloqueante de processQuestion: LLM y embeddings con WebClient, y el trabajo
+     * bloqueante (JDBC, búsqueda RAG en memoria, escrituras en caches) en el scheduler acotado
+     * 'jdbcScheduler'. Ningún hilo del scheduler espera una respuesta de Ollama.
+     */
+    public Mono<UnifiedQueryResult> processQuestionAsync(String question) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            // recordUsage escribe por JPA: en el scheduler acotado también cuando la respuesta sale de cache
+            return answerAsync(question).flatMap(result -> Mono
+                    .fromRunnable(() -> recordUsage(question, result, start))
+                    .subscribeOn(jdbcScheduler)
+                    .thenReturn(result));
+        });
+    }
+
+    /**
+     * Precarga de cache: misma ruta que processQuestion pero sin contar como uso en el aprendizaje.
+     */
+    public UnifiedQueryResult warm(String question) {
+        return answer(question, null);
+    }
+
+    private UnifiedQueryResult answer(String question, Consumer<String> onToken) {
         // Verificar cache primero
+        long lookupStart = System.nanoTime();
         Optional<UnifiedQueryResult> cached = cacheService.getCachedResult(question);
+        metrics.recordSince(QaMetrics.CACHE_LOOKUP, lookupStart);
         if (cached.isPresent()) {
             log.info("Retornado respesta cacheada");
             return cached.get();
         }
 
+        // Si la misma pregunta ya se está procesando, esperar a ese resultado en lugar de repetir LLM + SQL
+        String flightKey = flightKey(question);
+        CompletableFuture<UnifiedQueryResult> flight = new CompletableFuture<>();
+        CompletableFuture<UnifiedQueryResult> existing = inFlight.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            coalescedRequests.increment();
+            log.info("🔁 Pregunta ya en curso, esperando su resultado - \"{}\"", question);
+            return awaitFlight(existing);
+        }
+
+        try {
+            UnifiedQueryResult result = resolveQuestion(question, onToken);
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    public Map<String, Object> getCoalescingStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pipelineExecutions", pipelineExecutions.sum());
+        stats.put("coalescedRequests", coalescedRequests.sum());
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+
+    public void resetCoalescingStats() {
+        pipelineExecutions.reset();
+        coalescedRequests.reset();
+    }
+
+    private UnifiedQueryResult resolveQuestion(String question, Consumer<String> onToken) {
+        // Después, una pregunta ya respondida con otras palabras
+        Optional<SemanticQueryCache.SemanticHit> semanticHit = semanticCache.lookup(question);
+        if (semanticHit.isPresent()) {
+            UnifiedQueryResult result = semanticHit.get().result();
+            cacheService.cacheResult(question, result, semanticHit.get().dataVersions());
+            cacheService.incrementQueryFrequency(question);
+            semanticCache.maybeAudit(question, semanticHit.get(), () -> processInnerQuestion(question));
+            return result;
+        }
+
         // Procesar normalmente
-        UnifiedQueryResult result = processInnerQuestion(question);
+        pipelineExecutions.increment();
+        // Versiones de las tablas antes de consultar: si cambian durante la consulta, no se cachea
+        Map<String, Long> dataVersions = tableChanges.currentVersions();
+        UnifiedQueryResult result = processInnerQuestion(question, onToken);
 
         // Cachear si fue exitoso
         if (result.isSuccess()) {
-            cacheService.cacheResult(question, result);
+            cacheService.cacheResult(question, result, dataVersions);
             cacheService.incrementQueryFrequency(question);
+            semanticCache.store(question, result, dataVersions);
         }
 
         return result;
     }
 
+    private UnifiedQueryResult awaitFlight(CompletableFuture<UnifiedQueryResult> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private String flightKey(String question) {
+        return normalizer.key(question);
+    }
+
     public UnifiedQueryResult processInnerQuestion(String question) {
+        return processInnerQuestion(question, null);
+    }
+
+    private UnifiedQueryResult processInnerQuestion(String question, Consumer<String> onToken) {
         try {
             // 1. Clasificar la intención
             QuestionIntent intent = intentClassifier.classify(question);
@@ -63,7 +202,7 @@ public class CachedUnifiedQAService {
             // 2. Procesar según la intención
             if (intent == QuestionIntent.SQL) {
                 log.info("vamos por el camino de SQL...");
-                QueryResult sqlResult = qaService.processNaturalLanguageQuery(question);
+                QueryResult sqlResult = qaService.processNaturalLanguageQuery(question, onToken);
                 return UnifiedQueryResult.fromSQLResult(sqlResult, intent);
             } else {
                 log.info("vamos por el camino de RAG BBDD de conocimiento...");
@@ -77,4 +216,92 @@ public class CachedUnifiedQAService {
         }
     }
 
+    // Pipeline reactivo
+
+    private Mono<UnifiedQueryResult> answerAsync(String question) {
+        // Con Redis la consulta a la cache es un round-trip bloqueante: nunca en un hilo de Netty
+        return Mono.fromCallable(() -> {
+                    long lookupStart = System.nanoTime();
+                    Optional<UnifiedQueryResult> cached = cacheService.getCachedResult(question);
+                    metrics.recordSince(QaMetrics.CACHE_LOOKUP, lookupStart);
+                    return cached;
+                })
+                .subscribeOn(jdbcScheduler)
+                .flatMap(cached -> cached.map(Mono::just).orElseGet(() -> coalesceAsync(question)));
+    }
+
+    private Mono<UnifiedQueryResult> coalesceAsync(String question) {
+        String flightKey = flightKey(question);
+        CompletableFuture<UnifiedQueryResult> flight = new CompletableFuture<>();
+        CompletableFuture<UnifiedQueryResult> existing = inFlight.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            coalescedRequests.increment();
+            // Una copia: cancelar esta suscripción no debe cancelar la petición original
+            return Mono.fromFuture(existing.copy());
+        }
+
+        // La resolución no depende de ningún suscriptor: si el cliente que la inició se desconecta,
+        // las peticiones que esperan el mismo resultado lo reciben igualmente
+        resolveQuestionAsync(question)
+                .doFinally(signal -> inFlight.remove(flightKey, flight))
+                .subscribe(flight::complete, flight::completeExceptionally, () -> {
+                    if (!flight.isDone()) {
+                        flight.completeExceptionally(new IllegalStateException("La pregunta no produjo resultado"));
+                    }
+                });
+        return Mono.fromFuture(flight.copy());
+    }
+
+    private Mono<UnifiedQueryResult> resolveQuestionAsync(String question) {
+        Map<String, Long> dataVersions = tableChanges.currentVersions();
+        return semanticCache.lookupAsync(question)
+                // Las escrituras en caches pueden bloquear (Redis, embeddings): fuera de los hilos de Netty
+                .publishOn(jdbcScheduler)
+                .flatMap(semanticHit -> {
+                    if (semanticHit.isPresent()) {
+                        UnifiedQueryResult result = semanticHit.get().result();
+                        cacheService.cacheResult(question, result, semanticHit.get().dataVersions());
+                        cacheService.incrementQueryFrequency(question);
+                        semanticCache.maybeAudit(question, semanticHit.get(), () -> processInnerQuestion(question));
+                        return Mono.just(result);
+                    }
+                    pipelineExecutions.increment();
+                    return processInnerQuestionAsync(question)
+                            .publishOn(jdbcScheduler)
+                            .doOnNext(result -> {
+                                if (result.isSuccess()) {
+                                    cacheService.cacheResult(question, result, dataVersions);
+                                    cacheService.incrementQueryFrequency(question);
+                                    semanticCache.store(question, result, dataVersions);
+                                }
+                            });
+                });
+    }
+
+    private Mono<UnifiedQueryResult> processInnerQuestionAsync(String question) {
+        return Mono.defer(() -> {
+            QuestionIntent intent = intentClassifier.classify(question);
+            if (intent == QuestionIntent.SQL) {
+                return qaService.processNaturalLanguageQueryAsync(question)
+                        .map(sqlResult -> UnifiedQueryResult.fromSQLResult(sqlResult, intent));
+            }
+            // El embedding de la pregunta va por WebClient; solo la búsqueda en memoria usa el scheduler
+            return ragService.processQuestionAsync(question, jdbcScheduler)
+                    .map(ragResult -> UnifiedQueryResult.fromRAGResult(ragResult, intent));
+        }).onErrorResume(e -> {
+            log.error("Error procesando la consulta", e);
+            return Mono.just(UnifiedQueryResult.error(question, "Error procesando la pregunta: " + e.getMessage()));
+        });
+    }
+
+    // Registrar el uso para el aprendizaje y para el pre-calentamiento de la cache
+    private void recordUsage(String question, UnifiedQueryResult result, long startNanos) {
+        if (result.isSuccess()) {
+            int resultCount = result.getRawResults() != null ? result.getRawResults().size() : 0;
+            double elapsedMs = (System.nanoTime() - startNanos) / 1_000_000.0;
+            learningService.recordSuccessfulQuery(question, result.getGeneratedSQL(), result.getIntent(),
+                    resultCount, elapsedMs);
+        }
+    }
+
 }
@@ -1,21 +1,56 @@
 package com.example.qaassistant.service.ollama;
 
+import com.example.qaassistant.service.QuestionNormalizer;
+import com.example.qaassistant.service.TableChangeTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.boot.jdbc.EmbeddedDatabaseConnection;
+import org.springframework.boot.sql.init.DatabaseInitializationMode;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternUtils;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Component
-public class DatabaseSchemaProvider {
+public class DatabaseSchemaProvider implements SmartInitializingSingleton {
 
     private static final Logger log = LoggerFactory.getLogger(DatabaseSchemaProvider.class);
+    private static final String OPTIONAL_PREFIX = "optional:";
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TableChangeTracker tableChanges;
+
+    @Autowired
+    private ObjectProvider<SqlInitializationProperties> sqlInitProperties;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // Hash de tablas, columnas y tipos; solo cambia con DDL, no con los datos
+    private volatile String structuralSchemaHash;
+
     /**
      * Obtiene el esquema detallado de la base de datos de forma dinámica
      */
@@ -152,6 +187,110 @@ public class DatabaseSchemaProvider {
         
         """;
 
+    /**
+     * Hash estructural del esquema (tablas, columnas y tipos, sin datos de ejemplo). Se calcula al
+     * arrancar y se reutiliza hasta que refreshStructuralSchemaHash() detecta un cambio de DDL.
+     */
+    public String getStructuralSchemaHash() {
+        String hash = structuralSchemaHash;
+        return hash != null ? hash : refreshStructuralSchemaHash();
+    }
+
+    /**
+     * Al arrancar, con todos los singletons creados (data.sql ya cargado) y antes de que la aplicación esté
+     * lista: calcula el hash estructural, registra la carga de data.sql y publica SchemaInitializedEvent,
+     * que CacheWarmupService espera antes de pre-calentar.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        Set<String> reloadedTables = Set.of();
+        try {
+            refreshStructuralSchemaHash();
+            reloadedTables = recordStartupDataLoad();
+        } finally {
+            eventPublisher.publishEvent(new SchemaInitializedEvent(structuralSchemaHash, reloadedTables));
+        }
+    }
+
+    // También registra las tablas en TableChangeTracker, que depende de todas si no puede analizar un SQL
+    public String refreshStructuralSchemaHash() {
+        List<String> columns = jdbcTemplate.queryForList(
+                "SELECT TABLE_NAME || '.' || COLUMN_NAME || ':' || DATA_TYPE " +
+                        "FROM INFORMATION_SCHEMA.COLUMNS " +
+                        "WHERE TABLE_SCHEMA = 'PUBLIC' " +
+                        "ORDER BY TABLE_NAME, ORDINAL_POSITION",
+                String.class
+        );
+        String hash = QuestionNormalizer.hash128(String.join("\n", columns));
+        Set<String> tables = new LinkedHashSet<>();
+        for (String column : columns) {
+            tables.add(column.substring(0, column.indexOf('.')));
+        }
+        tableChanges.registerTables(tables);
+        String previous = structuralSchemaHash;
+        structuralSchemaHash = hash;
+        if (previous != null && !previous.equals(hash)) {
+            log.info("🧱 Cambio de esquema detectado: los planes SQL anteriores dejan de valer");
+        }
+        return hash;
+    }
+
+    // data.sql lo ejecuta el inicializador de Spring, fuera de JPA y del JdbcTemplate: sus tablas cuentan
+    // como escritas (invalida, p. ej., lo que quede en Redis de ellas de otro arranque); el resto no cambia
+    private Set<String> recordStartupDataLoad() {
+        SqlInitializationProperties properties = sqlInitProperties.getIfAvailable();
+        if (properties == null || !dataScriptsRan(properties)) {
+            return Set.of();
+        }
+        Charset encoding = properties.getEncoding() != null ? properties.getEncoding() : StandardCharsets.UTF_8;
+        Set<String> tables = new LinkedHashSet<>();
+        for (Resource script : dataScripts(properties)) {
+            try {
+                tables.addAll(tableChanges.recordScript(script.getContentAsString(encoding)));
+            } catch (IOException e) {
+                // Sin poder leerlo no se sabe qué tablas cargó: cuenta como escritura de todas
+                log.warn("⚠️ No se pudo leer {}: {}", script.getDescription(), e.getMessage());
+                Set<String> allTables = tableChanges.knownTables();
+                allTables.forEach(tableChanges::recordWrite);
+                tables.addAll(allTables);
+            }
+        }
+        if (!tables.isEmpty()) {
+            log.info("📥 Datos iniciales cargados en {} tablas: {}", tables.size(), tables);
+        }
+        return tables;
+    }
+
+    private boolean dataScriptsRan(SqlInitializationProperties properties) {
+        DatabaseInitializationMode mode = properties.getMode();
+        if (mode == DatabaseInitializationMode.EMBEDDED) {
+            return EmbeddedDatabaseConnection.isEmbedded(jdbcTemplate.getDataSource());
+        }
+        return mode == DatabaseInitializationMode.ALWAYS;
+    }
+
+    // Mismas ubicaciones que el inicializador: spring.sql.init.data-locations o data-<platform>.sql y data.sql
+    private List<Resource> dataScripts(SqlInitializationProperties properties) {
+        List<String> locations = properties.getDataLocations() != null ? properties.getDataLocations()
+                : List.of("classpath*:data-" + properties.getPlatform() + ".sql", "classpath*:data.sql");
+        ResourcePatternResolver resolver = ResourcePatternUtils.getResourcePatternResolver(resourceLoader);
+        List<Resource> scripts = new ArrayList<>();
+        for (String location : locations) {
+            String path = location.startsWith(OPTIONAL_PREFIX)
+                    ? location.substring(OPTIONAL_PREFIX.length()) : location;
+            try {
+                for (Resource resource : resolver.getResources(path)) {
+                    if (resource.exists()) {
+                        scripts.add(resource);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("⚠️ No se pudo resolver el script de datos {}: {}", location, e.getMessage());
+            }
+        }
+        return scripts;
+    }
+
     public String getSchemaContext() {
         return getDetailedSchema();// + databaseSchema;
         // posibilidad de añadir el getDetailedSchema() al databaseSchema static
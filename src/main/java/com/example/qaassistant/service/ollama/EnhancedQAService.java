@@ -6,11 +6,14 @@ import com.example.qaassistant.service.UnifiedQueryResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,6 +34,13 @@ public class EnhancedQAService {
     }
 
     public UnifiedQueryResult processEnhancedQuestion(String question) {
+        return processEnhancedQuestion(question, null);
+    }
+
+    /**
+     * Variante con streaming: 'onToken' recibe los fragmentos generados por el LLM según llegan.
+     */
+    public UnifiedQueryResult processEnhancedQuestion(String question, Consumer<String> onToken) {
         long startTime = System.currentTimeMillis();
 
         try {
@@ -43,9 +53,9 @@ public class EnhancedQAService {
             if (complexity == ComplexityLevel.HIGH) {
                 result = handleComplexQuery(question);
             } else if (complexity == ComplexityLevel.MEDIUM) {
-                result = handleMediumComplexityQuery(question);
+                result = handleMediumComplexityQuery(question, onToken);
             } else {
-                result = cachedUnifiedQAService.processQuestion(question);
+                result = cachedUnifiedQAService.processQuestion(question, onToken);
             }
 
             long executionTime = System.currentTimeMillis() - startTime;
@@ -59,6 +69,63 @@ public class EnhancedQAService {
         }
     }
 
+    /**
+     * Variante no bloqueante de processEnhancedQuestion; las subconsultas de una pregunta compleja
+     * se resuelven en paralelo conservando su orden.
+     */
+    public Mono<UnifiedQueryResult> processEnhancedQuestionAsync(String question) {
+        long startTime = System.currentTimeMillis();
+        return Mono.defer(() -> {
+                    ComplexityLevel complexity = complexityAnalyzer.analyzeComplexity(question);
+                    log.info("Complejidad de '{}': {}", question, complexity);
+                    return complexity == ComplexityLevel.HIGH
+                            ? handleComplexQueryAsync(question)
+                            : cachedUnifiedQAService.processQuestionAsync(question);
+                })
+                .doOnNext(result -> log.info("Consulta '{}' procesada en {} ms", question,
+                        System.currentTimeMillis() - startTime))
+                .onErrorResume(e -> {
+                    log.error("Error procesando consulta: {}", question, e);
+                    return Mono.just(createErrorResult(question, asException(e)));
+                });
+    }
+
+    private Mono<UnifiedQueryResult> handleComplexQueryAsync(String question) {
+        return splitComplexQueryAsync(question)
+                .flatMapMany(Flux::fromIterable)
+                .flatMapSequential(subQuery -> cachedUnifiedQAService.processQuestionAsync(subQuery)
+                        .onErrorResume(e -> {
+                            log.warn("Error en subconsulta: {}", subQuery, e);
+                            return Mono.just(createErrorResult(subQuery, asException(e)));
+                        }))
+                .collectList()
+                .map(subResults -> mergeResults(question, subResults));
+    }
+
+    private Mono<List<String>> splitComplexQueryAsync(String complexQuestion) {
+        String prompt = """
+                Divide la siguiente pregunta compleja en 2-3 preguntas más simples y específicas.
+                Devuelve SOLO las preguntas separadas por saltos de línea, sin números ni explicaciones.
+                
+                Pregunta compleja: "%s"
+                
+                Preguntas simples:
+                """.formatted(complexQuestion);
+        return ollamaService.generateResponseAsync(prompt)
+                .map(response -> Arrays.stream(response.split("\n"))
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("//"))
+                        .collect(Collectors.toList()))
+                .onErrorResume(e -> {
+                    log.warn("Error dividiendo consulta compleja, usando división básica", e);
+                    return Mono.just(Arrays.asList(complexQuestion.replace(" y ", " | ").split(" \\| ")));
+                });
+    }
+
+    private Exception asException(Throwable e) {
+        return e instanceof Exception exception ? exception : new RuntimeException(e);
+    }
+
     private UnifiedQueryResult handleComplexQuery(String question) {
         // Dividir consulta compleja en subconsultas
         List<String> subQueries = splitComplexQuery(question);
@@ -81,8 +148,8 @@ public class EnhancedQAService {
         return mergeResults(question, subResults);
     }
 
-    private UnifiedQueryResult handleMediumComplexityQuery(String question) {
-        return cachedUnifiedQAService.processQuestion(question);
+    private UnifiedQueryResult handleMediumComplexityQuery(String question, Consumer<String> onToken) {
+        return cachedUnifiedQAService.processQuestion(question, onToken);
     }
 
     private List<String> splitComplexQuery(String complexQuestion) {
@@ -1,46 +1,168 @@
 package com.example.qaassistant.service.ollama;
 
 import com.example.qaassistant.service.IQueryCacheService;
+import com.example.qaassistant.service.QuestionNormalizer;
+import com.example.qaassistant.service.TableChangeTracker;
 import com.example.qaassistant.service.UnifiedQueryResult;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
+/**
+ * Cache de resultados en memoria, acotada por peso y con expiración activa.
+ *
+ * - Lectura sin lock: las entradas viven en un ConcurrentHashMap y cada acierto solo anota su último
+ *   acceso. El lock protege únicamente las escrituras (peso, índices y cola de expiración).
+ * - Peso de una entrada: 1 + filas de rawResults (o fuentes RAG); al superar 'app.cache.max-weight'
+ *   se expulsa por LRU muestreado: de unas pocas entradas al azar, la de acceso más antiguo.
+ * - Expiración: todas las entradas tienen el mismo TTL, así que la cola de inserción ya está ordenada
+ *   por vencimiento; un barrido periódico la consume desde la cabeza sin recorrer la cache entera.
+ * - Invalidación por tabla: un índice tabla → claves (como los sets de RedisQueryCacheService) evita
+ *   recorrer la cache entera al cambiar una tabla.
+ * - Estadísticas: contadores y peso se mantienen incrementalmente, getCacheStats es O(1).
+ *   Los mismos contadores se publican en Micrometer (qa.cache.*).
+ * - Frecuencias: se siguen como mucho 'app.cache.frequency.max-tracked' preguntas (al pasarse se
+ *   conservan las más frecuentes) y los contadores se dividen a la mitad cada 'decay-interval', de
+ *   modo que el top-N refleja el uso reciente y los mapas no crecen sin límite.
+ */
 @Service
 @Primary
-public class InMemoryQueryCacheService implements IQueryCacheService {
+@ConditionalOnProperty(name = "app.cache.type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryQueryCacheService implements IQueryCacheService, MeterBinder {
 
     private static final Logger log = LoggerFactory.getLogger(InMemoryQueryCacheService.class);
-    private final Map<String, CachedResult> cache = new ConcurrentHashMap<>();
-    private final Map<String, Integer> queryFrequency = new ConcurrentHashMap<>();
-    private static final long CACHE_TTL_MS = 24 * 60 * 60 * 1000; // 24 horas
+
+    private final QuestionNormalizer normalizer;
+    private final TableChangeTracker tableChanges;
+
+    @Value("${app.cache.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${app.cache.max-weight:200000}")
+    private long maxWeight;
+
+    @Value("${app.cache.sweep-interval:60s}")
+    private Duration sweepInterval;
+
+    @Value("${app.cache.frequency.max-tracked:1000}")
+    private int maxTrackedQuestions;
+
+    @Value("${app.cache.frequency.decay-interval:1h}")
+    private Duration frequencyDecayInterval;
+
+    // Entradas candidatas que se comparan en cada expulsión (LRU muestreado)
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentHashMap<String, CachedResult> cache = new ConcurrentHashMap<>(256);
+    // Entradas vivas en un array para muestrear al azar en O(1); se mantiene con el lock tomado
+    private final ArrayList<CachedResult> slots = new ArrayList<>();
+    private final ArrayDeque<CachedResult> expiryQueue = new ArrayDeque<>();
+    // Tabla → claves cuyas entradas dependen de ella; se mantiene con el lock tomado
+    private final Map<String, Set<String>> keysByTable = new HashMap<>();
+    private volatile long totalWeight = 0;
+    // Clave → texto de la primera pregunta vista y número de usos (con decaimiento)
+    private final ConcurrentHashMap<String, QueryCount> queryFrequency = new ConcurrentHashMap<>();
+    private final ReentrantLock frequencyTrimLock = new ReentrantLock();
+    private ScheduledExecutorService sweeper;
 
     // Métricas para monitoreo
-    private long cacheHits = 0;
-    private long cacheMisses = 0;
-    private long cacheStores = 0;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheStores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public InMemoryQueryCacheService(QuestionNormalizer normalizer, TableChangeTracker tableChanges) {
+        this.normalizer = normalizer;
+        this.tableChanges = tableChanges;
+        tableChanges.addListener(this::invalidateTable);
+    }
+
+    @PostConstruct
+    public void startSweeper() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "query-cache-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMs = Math.max(sweepInterval.toMillis(), 1000);
+        sweeper.scheduleWithFixedDelay(this::sweepExpired, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        long decayMs = Math.max(frequencyDecayInterval.toMillis(), 1000);
+        sweeper.scheduleWithFixedDelay(this::decayFrequencies, decayMs, decayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("qa.cache.hits", cacheHits, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.cache.misses", cacheMisses, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.cache.stores", cacheStores, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.cache.evictions", evictions, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.cache.expirations", expirations, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.cache.invalidations", invalidations, LongAdder::sum).register(registry);
+        Gauge.builder("qa.cache.size", this, cache -> cache.currentSize()).register(registry);
+        Gauge.builder("qa.cache.weight", this, cache -> cache.currentWeight()).register(registry);
+    }
 
     @Override
     public Optional<UnifiedQueryResult> getCachedResult(String question) {
         String key = generateCacheKey(question);
+        long now = System.currentTimeMillis();
+        boolean expired = false;
+        // Camino caliente sin lock: solo se bloquea para retirar una entrada caducada u obsoleta
         CachedResult cached = cache.get(key);
+        if (cached != null && isExpired(cached, now)) {
+            if (removeIfCurrent(cached)) {
+                expirations.increment();
+            }
+            cached = null;
+            expired = true;
+        } else if (cached != null && !tableChanges.isCurrent(cached.getDependencies())) {
+            // Cambiaron los datos de alguna tabla de su SQL desde que se calculó
+            if (removeIfCurrent(cached)) {
+                invalidations.increment();
+            }
+            cached = null;
+        } else if (cached != null) {
+            cached.touch(now);
+        }
 
-        if (cached != null && !isExpired(cached)) {
-            cacheHits++;
+        if (cached != null) {
+            cacheHits.increment();
             log.info("🎯 CACHE HIT - Consulta encontrada en cache: \"" +
                     truncateText(question, 50) + "\"");
-            log.info("📊 Estadísticas Cache - Hits: " + cacheHits +
-                    ", Misses: " + cacheMisses + ", Almacenados: " + cacheStores);
             return Optional.of(cached.getResult());
         } else {
-            cacheMisses++;
-            if (cached != null) {
-                cache.remove(key);
+            cacheMisses.increment();
+            if (expired) {
                 log.info("🧹 Entrada de cache expirada eliminada");
             }
             log.info("❌ CACHE MISS - Consulta NO encontrada: \"" +
@@ -51,51 +173,97 @@ public class InMemoryQueryCacheService implements IQueryCacheService {
 
     @Override
     public void cacheResult(String question, UnifiedQueryResult result) {
+        cacheResult(question, result, tableChanges.currentVersions());
+    }
+
+    @Override
+    public void cacheResult(String question, UnifiedQueryResult result, Map<String, Long> dataVersions) {
+        Map<String, Long> dependencies = tableChanges.dependencies(result.getGeneratedSQL(), dataVersions);
+        if (!tableChanges.isCurrent(dependencies)) {
+            // Los datos cambiaron mientras se calculaba: el resultado ya nace obsoleto
+            log.info("⏭️ Resultado no cacheado, sus tablas cambiaron durante la consulta");
+            return;
+        }
         String key = generateCacheKey(question);
-        cache.put(key, new CachedResult(result, System.currentTimeMillis()));
-        cacheStores++;
+        CachedResult entry = new CachedResult(key, result, System.currentTimeMillis(), weigh(result), dependencies);
+        int size;
+        lock.lock();
+        try {
+            CachedResult previous = cache.get(key);
+            if (previous != null) {
+                removeEntry(key, previous);
+            }
+            cache.put(key, entry);
+            addSlot(entry);
+            totalWeight += entry.getWeight();
+            linkTables(entry);
+            expiryQueue.addLast(entry);
+            evictOverweight();
+            size = cache.size();
+        } finally {
+            lock.unlock();
+        }
+        cacheStores.increment();
 
         log.info("💾 NUEVA ENTRADA EN CACHE");
         log.info("   Pregunta: \"" + truncateText(question, 60) + "\"");
         log.info("   Intent: " + result.getIntent());
         log.info("   Resultados: " +
                 (result.getRawResults() != null ? result.getRawResults().size() : 0) + " registros");
-        log.info("   Tamaño total cache: " + cache.size() + " entradas");
+        log.info("   Tamaño total cache: " + size + " entradas");
     }
 
     @Override
     public void incrementQueryFrequency(String question) {
         String key = generateCacheKey(question);
-        queryFrequency.merge(key, 1, Integer::sum);
+        queryFrequency.merge(key, new QueryCount(question, 1), QueryCount::increment);
+        // Holgura del 25% para no recortar en cada pregunta nueva
+        if (queryFrequency.size() > maxTrackedQuestions + maxTrackedQuestions / 4 + 1) {
+            trimFrequencies();
+        }
     }
 
     @Override
     public List<String> getFrequentQueries(int limit) {
-        if (queryFrequency.entrySet() == null || queryFrequency.entrySet().isEmpty()) {
+        if (queryFrequency.isEmpty()) {
             return new ArrayList<>();
         }
-        return queryFrequency.entrySet().stream()
-                .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
+        return queryFrequency.values().stream()
+                .sorted(Comparator.comparingDouble(QueryCount::count).reversed())
                 .limit(limit)
-                .map(Map.Entry::getKey)
+                .map(QueryCount::question)
                 .collect(Collectors.toList());
     }
 
-    // MÉTODO NUEVO: Para obtener estadísticas detalladas de cache
+    // Estadísticas en O(1): contadores incrementales, sin recorrer las entradas
+    @Override
     public Map<String, Object> getCacheStats() {
-        double hitRate = (cacheHits + cacheMisses) > 0 ?
-                (double) cacheHits / (cacheHits + cacheMisses) * 100 : 0;
+        long hits = cacheHits.sum();
+        long misses = cacheMisses.sum();
+        double hitRate = (hits + misses) > 0 ?
+                (double) hits / (hits + misses) * 100 : 0;
 
-        return Map.of(
-                "hits", cacheHits,
-                "misses", cacheMisses,
-                "stores", cacheStores,
-                "hitRate", Math.round(hitRate * 100.0) / 100.0,
-                "currentSize", cache.size(),
-                "frequentQueries", getFrequentQueries(5),
-                "cacheSizeBytes", calculateCacheSize(),
-                "oldestEntry", findOldestEntryAge()
-        );
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("stores", cacheStores.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("hitRate", Math.round(hitRate * 100.0) / 100.0);
+        lock.lock();
+        try {
+            stats.put("currentSize", cache.size());
+            stats.put("weight", totalWeight);
+            stats.put("oldestEntry", findOldestEntryAge());
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxWeight", maxWeight);
+        stats.put("ttlSeconds", ttl.toSeconds());
+        stats.put("trackedQuestions", queryFrequency.size());
+        stats.put("maxTrackedQuestions", maxTrackedQuestions);
+        return stats;
     }
 
     @Override
@@ -104,26 +272,200 @@ public class InMemoryQueryCacheService implements IQueryCacheService {
         long cutoffTime = System.currentTimeMillis() - (days * 24 * 60 * 60 * 1000L);
 
         // Filtrar por timestamp y contar frecuencia
-        cache.entrySet().stream()
-                .filter(entry -> {
-                    CachedResult cachedResult = entry.getValue();
-                    return cachedResult != null && cachedResult.getTimestamp() > cutoffTime;
-                })
-                .forEach(entry -> {
-                    String query = entry.getKey();
-                    frequencyStats.put(query, frequencyStats.getOrDefault(query, 0) + 1);
-                });
+        cache.forEach((query, cachedResult) -> {
+            if (cachedResult.getTimestamp() > cutoffTime) {
+                frequencyStats.merge(query, 1, Integer::sum);
+            }
+        });
 
         return frequencyStats;
     }
 
+    /**
+     * Elimina las entradas vencidas consumiendo la cola de expiración desde la cabeza.
+     */
+    void sweepExpired() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        lock.lock();
+        try {
+            while (!expiryQueue.isEmpty() && isExpired(expiryQueue.peekFirst(), now)) {
+                CachedResult entry = expiryQueue.pollFirst();
+                if (cache.get(entry.getKey()) == entry) {
+                    removeEntry(entry.getKey(), entry);
+                    removed++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (removed > 0) {
+            expirations.add(removed);
+            log.info("🧹 Barrido de cache: {} entradas expiradas eliminadas", removed);
+        }
+    }
+
+    /**
+     * Elimina las entradas que dependen de una tabla recién modificada.
+     */
+    void invalidateTable(String table) {
+        int removed = 0;
+        lock.lock();
+        try {
+            Set<String> keys = keysByTable.remove(table);
+            if (keys != null) {
+                for (String key : keys) {
+                    CachedResult entry = cache.get(key);
+                    if (entry != null) {
+                        removeEntry(key, entry);
+                        removed++;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (removed > 0) {
+            invalidations.add(removed);
+            log.info("🔄 Tabla {} modificada: {} entradas de cache invalidadas", table, removed);
+        }
+    }
+
+    /**
+     * Divide a la mitad los contadores de frecuencia y olvida las preguntas que llegan a cero.
+     */
+    void decayFrequencies() {
+        for (String key : queryFrequency.keySet()) {
+            queryFrequency.computeIfPresent(key, (ignored, count) -> count.decay());
+        }
+    }
+
+    private int currentSize() {
+        return cache.size();
+    }
+
+    private long currentWeight() {
+        return totalWeight;
+    }
+
     // Métodos auxiliares
-    private boolean isExpired(CachedResult cached) {
-        return System.currentTimeMillis() - cached.getTimestamp() > CACHE_TTL_MS;
+    private boolean isExpired(CachedResult cached, long now) {
+        return now - cached.getTimestamp() > ttl.toMillis();
+    }
+
+    // Se llama con el lock tomado: LRU muestreado, expulsa la de acceso más antiguo entre unas pocas al azar
+    private void evictOverweight() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (totalWeight > maxWeight && slots.size() > 1) {
+            CachedResult victim = null;
+            for (int i = 0; i < Math.min(EVICTION_SAMPLES, slots.size()); i++) {
+                CachedResult candidate = slots.get(random.nextInt(slots.size()));
+                if (victim == null || candidate.getLastAccess() < victim.getLastAccess()) {
+                    victim = candidate;
+                }
+            }
+            removeEntry(victim.getKey(), victim);
+            evictions.increment();
+        }
+        // Las referencias expulsadas que queden en la cola se descartan al barrer;
+        // si la cola crece mucho más que la cache se compacta aquí
+        if (expiryQueue.size() > cache.size() * 2 + 1024) {
+            expiryQueue.removeIf(entry -> cache.get(entry.getKey()) != entry);
+        }
+    }
+
+    // Se llama con el lock tomado
+    private void removeEntry(String key, CachedResult entry) {
+        cache.remove(key, entry);
+        removeSlot(entry);
+        totalWeight -= entry.getWeight();
+        unlinkTables(entry);
+    }
+
+    // Retira la entrada leída sin lock salvo que otro hilo ya la haya reemplazado o retirado
+    private boolean removeIfCurrent(CachedResult entry) {
+        lock.lock();
+        try {
+            if (cache.get(entry.getKey()) != entry) {
+                return false;
+            }
+            removeEntry(entry.getKey(), entry);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Se llama con el lock tomado
+    private void addSlot(CachedResult entry) {
+        entry.slot = slots.size();
+        slots.add(entry);
+    }
+
+    // Se llama con el lock tomado: la última entrada ocupa el hueco, O(1)
+    private void removeSlot(CachedResult entry) {
+        int slot = entry.slot;
+        if (slot < 0) {
+            return;
+        }
+        CachedResult last = slots.remove(slots.size() - 1);
+        if (last != entry) {
+            slots.set(slot, last);
+            last.slot = slot;
+        }
+        entry.slot = -1;
+    }
+
+    // Conserva solo las 'max-tracked' preguntas más frecuentes; un único hilo recorta a la vez
+    private void trimFrequencies() {
+        if (!frequencyTrimLock.tryLock()) {
+            return;
+        }
+        try {
+            int excess = queryFrequency.size() - maxTrackedQuestions;
+            if (excess <= 0) {
+                return;
+            }
+            queryFrequency.entrySet().stream()
+                    .sorted(Comparator.comparingDouble(entry -> entry.getValue().count()))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(queryFrequency::remove);
+        } finally {
+            frequencyTrimLock.unlock();
+        }
+    }
+
+    // Se llama con el lock tomado
+    private void linkTables(CachedResult entry) {
+        for (String table : entry.getDependencies().keySet()) {
+            keysByTable.computeIfAbsent(table, ignored -> new HashSet<>()).add(entry.getKey());
+        }
+    }
+
+    // Se llama con el lock tomado
+    private void unlinkTables(CachedResult entry) {
+        for (String table : entry.getDependencies().keySet()) {
+            Set<String> keys = keysByTable.get(table);
+            if (keys != null) {
+                keys.remove(entry.getKey());
+                if (keys.isEmpty()) {
+                    keysByTable.remove(table);
+                }
+            }
+        }
+    }
+
+    private static long weigh(UnifiedQueryResult result) {
+        if (result.getRawResults() != null) {
+            return 1L + result.getRawResults().size();
+        }
+        return 1L + (result.getSources() != null ? result.getSources().size() : 0);
     }
 
     private String generateCacheKey(String question) {
-        return Integer.toHexString(question.hashCode());
+        return normalizer.key(question);
     }
 
     private String truncateText(String text, int maxLength) {
@@ -131,45 +473,75 @@ public class InMemoryQueryCacheService implements IQueryCacheService {
         return text.length() > maxLength ? text.substring(0, maxLength) + "..." : text;
     }
 
-    private long calculateCacheSize() {
-        if (cache.values() == null || cache.values().isEmpty()) {
-            return 0;
-        }
-        // Estimación simple del tamaño en memoria
-        return cache.values().stream()
-                .mapToLong(cached ->
-                        cached.getResult().toString().length() * 2L) // Estimación aproximada
-                .sum();
-    }
-
+    // Se llama con el lock tomado; la cabeza de la cola (sin referencias obsoletas) es la entrada más antigua
     private long findOldestEntryAge() {
-        if (cache.values() == null || cache.values().isEmpty()) {
+        while (!expiryQueue.isEmpty() && cache.get(expiryQueue.peekFirst().getKey()) != expiryQueue.peekFirst()) {
+            expiryQueue.pollFirst();
+        }
+        CachedResult oldest = expiryQueue.peekFirst();
+        if (oldest == null) {
             return 0;
         }
-        return cache.values().stream()
-                .mapToLong(timestamp -> (System.currentTimeMillis() - timestamp.getTimestamp()) / 1000)
-                .max()
-                .orElse(0L);
+        return (System.currentTimeMillis() - oldest.getTimestamp()) / 1000;
     }
 
     // Método para limpiar cache (útil para testing)
+    @Override
     public void clearCache() {
-        cache.clear();
+        lock.lock();
+        try {
+            cache.clear();
+            slots.clear();
+            expiryQueue.clear();
+            keysByTable.clear();
+            totalWeight = 0;
+        } finally {
+            lock.unlock();
+        }
         queryFrequency.clear();
-        cacheHits = 0;
-        cacheMisses = 0;
-        cacheStores = 0;
+        cacheHits.reset();
+        cacheMisses.reset();
+        cacheStores.reset();
+        evictions.reset();
+        expirations.reset();
+        invalidations.reset();
         log.info("🗑️  Cache limpiada completamente");
     }
 
     // Clase interna para almacenar resultados cacheados
     private static class CachedResult {
+        private final String key;
         private final UnifiedQueryResult result;
         private final long timestamp;
+        private final long weight;
+        private final Map<String, Long> dependencies;
+        private volatile long lastAccess;
+        // Posición en 'slots' (-1 fuera de la cache); se modifica con el lock tomado
+        private int slot = -1;
 
-        public CachedResult(UnifiedQueryResult result, long timeIn) {
+        public CachedResult(String key, UnifiedQueryResult result, long timeIn, long weight,
+                            Map<String, Long> dependencies) {
+            this.key = key;
             this.result = result;
             this.timestamp = timeIn;
+            this.weight = weight;
+            this.dependencies = dependencies;
+            this.lastAccess = timeIn;
+        }
+
+        void touch(long now) {
+            // Evita escribir la línea de cache compartida si ya se anotó en este milisegundo
+            if (lastAccess != now) {
+                lastAccess = now;
+            }
+        }
+
+        long getLastAccess() {
+            return lastAccess;
+        }
+
+        public String getKey() {
+            return key;
         }
 
         public UnifiedQueryResult getResult() {
@@ -179,6 +551,27 @@ public class InMemoryQueryCacheService implements IQueryCacheService {
         public long getTimestamp() {
             return timestamp;
         }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public Map<String, Long> getDependencies() {
+            return dependencies;
+        }
     }
 
+    // Usos de una pregunta; 'question' es el primer texto visto para su clave
+    private record QueryCount(String question, double count) {
+
+        QueryCount increment(QueryCount other) {
+            return new QueryCount(question, count + other.count);
+        }
+
+        // null retira la pregunta del mapa de frecuencias
+        QueryCount decay() {
+            double halved = count / 2;
+            return halved < 0.5 ? null : new QueryCount(question, halved);
+        }
+    }
 }
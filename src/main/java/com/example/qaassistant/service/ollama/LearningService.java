@@ -2,7 +2,9 @@ package com.example.qaassistant.service.ollama;
 
 // LearningService.java
 import com.example.qaassistant.model.ollama.SuccessfulQuery;
+import com.example.qaassistant.model.rag.KnowledgeDocument;
 import com.example.qaassistant.repository.ollama.SuccessfulQueryRepository;
+import com.example.qaassistant.service.QuestionNormalizer;
 import com.example.qaassistant.service.rag.SimpleVectorStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,15 +28,18 @@ public class LearningService {
 
     private final SuccessfulQueryRepository queryRepository;
     private final SimpleVectorStore vectorStoreService;
+    private final QuestionNormalizer normalizer;
 
     private int totalLearnedQueries = 0;
     private int knowledgeBaseAdditions = 0;
 
 
     public LearningService(SuccessfulQueryRepository queryRepository,
-                           SimpleVectorStore vectorStoreService) {
+                           SimpleVectorStore vectorStoreService,
+                           QuestionNormalizer normalizer) {
         this.queryRepository = queryRepository;
         this.vectorStoreService = vectorStoreService;
+        this.normalizer = normalizer;
     }
 
     @Async
@@ -42,9 +47,9 @@ public class LearningService {
                                       String intent, Integer resultCount,
                                       Double executionTime) {
         try {
-            // Buscar consulta similar existente
-            Optional<SuccessfulQuery> existing = queryRepository
-                    .findByQuestionContainingIgnoreCase(question);
+            // Buscar la misma pregunta por su clave canónica (ignora mayúsculas, tildes y puntuación)
+            String questionKey = normalizer.key(question);
+            Optional<SuccessfulQuery> existing = queryRepository.findFirstByQuestionKey(questionKey);
 
             if (existing.isPresent()) {
                 // Incrementar contador de uso
@@ -58,10 +63,13 @@ public class LearningService {
                 log.info("   Pregunta: \"{}\"", truncateText(question, 60));
                 log.info("   Uso anterior: {}, Uso actual: {}", oldCount, oldCount + 1);
                 log.info("   Intent: {}, Resultados: {}", intent, resultCount);
+                // Ya forma parte de la base de conocimiento: no volver a indexarla
+                return;
             } else {
                 // Guardar nueva consulta exitosa
                 SuccessfulQuery newQuery = new SuccessfulQuery();
                 newQuery.setQuestion(question);
+                newQuery.setQuestionKey(questionKey);
                 newQuery.setGeneratedSQL(generatedSQL);
                 newQuery.setIntent(intent);
                 newQuery.setResultCount(resultCount);
@@ -78,8 +86,11 @@ public class LearningService {
                 log.info("Nueva consulta exitosa guardada: {}", question);
             }
 
-            // Agregar al conocimiento del sistema RAG
-            addToKnowledgeBase(question, generatedSQL, intent);
+            // Agregar al conocimiento del sistema RAG (solo los ejemplos con SQL sirven para few-shot)
+            if (generatedSQL == null || generatedSQL.isBlank()) {
+                return;
+            }
+            addToKnowledgeBase(question, questionKey, generatedSQL, intent);
 
         } catch (Exception e) {
             log.error("Error registrando consulta exitosa", e);
@@ -114,7 +125,7 @@ public class LearningService {
         return text.length() > maxLength ? text.substring(0, maxLength) + "..." : text;
     }
 
-    private void addToKnowledgeBase(String question, String sql, String intent) {
+    private void addToKnowledgeBase(String question, String questionKey, String sql, String intent) {
         try {
             String knowledgeContent = """
                 Ejemplo de consulta exitosa:
@@ -124,9 +135,15 @@ public class LearningService {
                 
                 Este es un ejemplo validado de cómo traducir preguntas naturales a SQL.
                 """.formatted(question, sql, intent);
+            // Id estable por pregunta: repetir la consulta actualiza el documento en lugar de duplicarlo
+            KnowledgeDocument doc = new KnowledgeDocument(
+                    "aprendida-" + questionKey.substring(0, 16),
+                    knowledgeContent, "Consulta aprendida: " + truncateText(question, 60));
+            doc.addMetadata("tipo", "consulta_aprendida");
+            doc.addMetadata("intent", intent);
+            vectorStoreService.addDocument(doc);
             knowledgeBaseAdditions++;
-            // Aquí deberías integrar con tu VectorStoreService
-            log.info("Conocimiento preparado para RAG: {}", knowledgeContent.substring(0, Math.min(100, knowledgeContent.length())));
+            log.info("Conocimiento añadido a RAG: {}", knowledgeContent.substring(0, Math.min(100, knowledgeContent.length())));
 
         } catch (Exception e) {
             log.warn("Error agregando conocimiento al sistema RAG", e);
@@ -0,0 +1,211 @@
+package com.example.qaassistant.service.ollama;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ejercita OllamaLoadBalancer contra varios servidores HTTP locales que simulan Ollama.
+ *
+ * Cada stub responde /api/generate con su propio retardo y /api/tags para el health check. Fase 1: el
+ * stub 'failingEndpoint' devuelve 503 y debe quedar expulsado tras unos pocos fallos. Fase 2: el stub
+ * se recupera, pasa el tiempo de expulsión y el health check (o la petición de prueba) lo readmite.
+ * El informe muestra cómo se reparte el tráfico entre stubs en cada fase y los errores que ve el cliente.
+ */
+@Component
+@ConditionalOnProperty(name = "app.benchmarks.enabled", havingValue = "true")
+public class OllamaBalancerSimulation {
+
+    private static final Logger log = LoggerFactory.getLogger(OllamaBalancerSimulation.class);
+    private static final String LOGICAL_BASE_URL = "http://ollama-balanced.local";
+    private static final byte[] GENERATE_RESPONSE =
+            "{\"model\":\"stub\",\"response\":\"SELECT 1\",\"done\":true}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TAGS_RESPONSE = "{\"models\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * @param requests        peticiones por fase
+     * @param concurrency     peticiones en vuelo a la vez
+     * @param delaysMs        retardo de cada stub (uno por endpoint)
+     * @param failingEndpoint índice del stub caído durante la fase 1 (-1 = ninguno)
+     * @param strategy        least-outstanding | ewma
+     */
+    public Map<String, Object> run(int requests, int concurrency, List<Long> delaysMs, int failingEndpoint,
+                                   String strategy) throws IOException {
+        Duration ejectionTime = Duration.ofMillis(500);
+        List<Stub> stubs = new ArrayList<>();
+        ExecutorService stubExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (long delay : delaysMs) {
+                stubs.add(new Stub(delay, stubExecutor));
+            }
+            OllamaLoadBalancer balancer = new OllamaLoadBalancer(LOGICAL_BASE_URL,
+                    stubs.stream().map(Stub::url).toList(),
+                    new OllamaLoadBalancer.Settings(OllamaLoadBalancer.Strategy.from(strategy), 3, ejectionTime,
+                            Duration.ofSeconds(5), Duration.ofSeconds(2)));
+            WebClient client = WebClient.builder()
+                    .baseUrl(LOGICAL_BASE_URL)
+                    .filter(balancer)
+                    .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .build();
+
+            boolean withFailure = failingEndpoint >= 0 && failingEndpoint < stubs.size();
+            if (withFailure) {
+                stubs.get(failingEndpoint).down = true;
+            }
+            Map<String, Object> phase1 = runPhase("fase 1" + (withFailure ? " (stub " + failingEndpoint + " caído)" : ""),
+                    client, balancer, stubs, requests, concurrency);
+
+            if (withFailure) {
+                stubs.get(failingEndpoint).down = false;
+            }
+            // Tras el tiempo de expulsión, un health check readmite al stub recuperado
+            sleep(ejectionTime.toMillis() + 50);
+            balancer.checkHealth(url -> probe(client, url));
+            Map<String, Object> phase2 = runPhase("fase 2 (todos disponibles)", client, balancer, stubs,
+                    requests, concurrency);
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("strategy", strategy);
+            report.put("requestsPerPhase", requests);
+            report.put("concurrency", concurrency);
+            report.put("delaysMs", delaysMs);
+            report.put("failingEndpoint", failingEndpoint);
+            report.put("phases", List.of(phase1, phase2));
+            report.put("balancer", balancer.getStats());
+            return report;
+        } finally {
+            stubs.forEach(Stub::stop);
+            stubExecutor.shutdownNow();
+        }
+    }
+
+    private Map<String, Object> runPhase(String name, WebClient client, OllamaLoadBalancer balancer,
+                                         List<Stub> stubs, int requests, int concurrency) {
+        stubs.forEach(stub -> stub.served.reset());
+        AtomicInteger errors = new AtomicInteger();
+        long start = System.nanoTime();
+        Flux.range(0, requests)
+                .flatMap(i -> client.post()
+                        .uri("/api/generate")
+                        .bodyValue(Map.of("model", "stub", "prompt", "simulación " + i, "stream", false))
+                        .retrieve()
+                        .bodyToMono(String.class)
+                        .timeout(Duration.ofSeconds(30))
+                        .onErrorResume(e -> {
+                            errors.incrementAndGet();
+                            return Mono.empty();
+                        }), Math.max(concurrency, 1))
+                .blockLast();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Map<String, Object> served = new LinkedHashMap<>();
+        for (Stub stub : stubs) {
+            served.put(stub.url(), stub.served.sum());
+        }
+        Map<String, Object> phase = new LinkedHashMap<>();
+        phase.put("phase", name);
+        phase.put("elapsedMs", elapsedMs);
+        phase.put("clientErrors", errors.get());
+        phase.put("servedByEndpoint", served);
+        phase.put("availableAfter", balancer.getStats().get("endpoints"));
+        log.info("Simulación balanceador {}: {} ms, {} errores, reparto {}", name, elapsedMs, errors.get(), served);
+        return phase;
+    }
+
+    // Métodos auxiliares
+
+    // Mismo health check que isOllamaRunning(url), con el cliente de la simulación
+    private static boolean probe(WebClient client, String url) {
+        try {
+            client.get()
+                    .uri(url + "/api/tags")
+                    .attribute(OllamaLoadBalancer.PINNED_ENDPOINT, url)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .timeout(Duration.ofSeconds(5))
+                    .block();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Stub {
+        private final HttpServer server;
+        private final long delayMs;
+        private final LongAdder served = new LongAdder();
+        private volatile boolean down;
+
+        private Stub(long delayMs, ExecutorService executor) throws IOException {
+            this.delayMs = delayMs;
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 100);
+            server.setExecutor(executor);
+            server.createContext("/api/generate", this::generate);
+            server.createContext("/api/tags", exchange -> respond(exchange, down ? 503 : 200, TAGS_RESPONSE));
+            server.start();
+        }
+
+        String url() {
+            return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private void generate(HttpExchange exchange) throws IOException {
+            exchange.getRequestBody().readAllBytes();
+            served.increment();
+            if (down) {
+                respond(exchange, 503, "{\"error\":\"stub caído\"}".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            sleep(delayMs);
+            respond(exchange, 200, GENERATE_RESPONSE);
+        }
+
+        private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.qaassistant.service.ollama;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Health check periódico de cada endpoint de Ollama con isOllamaRunning(url): los caídos se expulsan
+ * del balanceo y los que vuelven a responder se readmiten sin esperar a una petición real.
+ */
+@Component
+public class OllamaHealthChecker {
+
+    private final OllamaLoadBalancer loadBalancer;
+    private final OllamaService ollamaService;
+
+    @Value("${ollama.balancer.health-check.enabled:true}")
+    private boolean enabled;
+
+    public OllamaHealthChecker(OllamaLoadBalancer loadBalancer, OllamaService ollamaService) {
+        this.loadBalancer = loadBalancer;
+        this.ollamaService = ollamaService;
+    }
+
+    @Scheduled(initialDelayString = "${ollama.balancer.health-check.interval-ms:10000}",
+            fixedDelayString = "${ollama.balancer.health-check.interval-ms:10000}")
+    public void scheduledCheck() {
+        if (enabled) {
+            loadBalancer.checkHealth(ollamaService::isOllamaRunning);
+        }
+    }
+
+    public Map<String, Object> checkNow() {
+        loadBalancer.checkHealth(ollamaService::isOllamaRunning);
+        return loadBalancer.getStats();
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.qaassistant.service.ollama;
+
+import com.example.qaassistant.model.ollama.OllamaResponse;
+import com.example.qaassistant.service.metrics.QaMetrics;
+import com.example.qaassistant.service.rag.EmbeddingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mantiene cargados en Ollama los modelos configurados.
+ *
+ * Ollama descarga un modelo tras 'keep_alive' sin peticiones y la siguiente pregunta paga la carga
+ * completa (segundos en modelos de 7B). Cada 'interval-ms' se envía a cada modelo una petición mínima:
+ * /api/generate con prompt vacío (solo carga el modelo, no genera tokens) o /api/embed con un texto
+ * corto para los modelos de embeddings, renovando su keep_alive. El load_duration de la respuesta dice
+ * si el modelo estaba descargado: por encima de 'cold-threshold' cuenta como arranque en frío.
+ * Con varios endpoints se hace ping a cada modelo en cada instancia, sin pasar por el balanceador.
+ */
+@Service
+public class OllamaKeepWarmService {
+
+    private static final Logger log = LoggerFactory.getLogger(OllamaKeepWarmService.class);
+
+    private final WebClient webClient;
+    private final OllamaLoadBalancer loadBalancer;
+    private final OllamaService ollamaService;
+    private final EmbeddingService embeddingService;
+    private final QaMetrics metrics;
+
+    @Value("${ollama.keep-warm.enabled:true}")
+    private boolean enabled;
+
+    // Vacío = el modelo de generación de OllamaService
+    @Value("${ollama.keep-warm.models:}")
+    private List<String> models;
+
+    // Vacío = el modelo de EmbeddingService
+    @Value("${ollama.keep-warm.embedding-models:}")
+    private List<String> embeddingModels;
+
+    @Value("${ollama.keep-warm.cold-threshold:500ms}")
+    private Duration coldThreshold;
+
+    @Value("${ollama.keep-warm.timeout:120s}")
+    private Duration timeout;
+
+    @Value("${ollama.keep-alive:30m}")
+    private String keepAlive;
+
+    private final Map<String, ModelStatus> status = new ConcurrentHashMap<>();
+
+    public OllamaKeepWarmService(WebClient ollamaWebClient, OllamaLoadBalancer loadBalancer,
+                                 OllamaService ollamaService, EmbeddingService embeddingService,
+                                 QaMetrics metrics) {
+        this.webClient = ollamaWebClient;
+        this.loadBalancer = loadBalancer;
+        this.ollamaService = ollamaService;
+        this.embeddingService = embeddingService;
+        this.metrics = metrics;
+    }
+
+    @Scheduled(initialDelayString = "${ollama.keep-warm.initial-delay-ms:10000}",
+            fixedDelayString = "${ollama.keep-warm.interval-ms:240000}")
+    public void scheduledPing() {
+        if (enabled) {
+            pingAll();
+        }
+    }
+
+    /**
+     * Hace ping a todos los modelos configurados en paralelo y devuelve el estado de cada uno.
+     */
+    public Map<String, Object> pingAll() {
+        List<Mono<Void>> pings = new ArrayList<>();
+        for (String endpoint : loadBalancer.getEndpointUrls()) {
+            for (String model : generationModels()) {
+                pings.add(ping(endpoint, model, false));
+            }
+            for (String model : embeddingTargets()) {
+                pings.add(ping(endpoint, model, true));
+            }
+        }
+        Flux.merge(pings).then().block(timeout.plusSeconds(5));
+        return getStatus();
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("enabled", enabled);
+        report.put("keepAlive", keepAlive);
+        report.put("coldThresholdMs", coldThreshold.toMillis());
+        Map<String, Object> perModel = new LinkedHashMap<>();
+        status.forEach((model, modelStatus) -> perModel.put(model, modelStatus.snapshot()));
+        report.put("models", perModel);
+        return report;
+    }
+
+    // Métodos auxiliares
+
+    private Mono<Void> ping(String endpoint, String model, boolean embedding) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("keep_alive", keepAlive);
+        if (embedding) {
+            body.put("input", "ping");
+        } else {
+            // Prompt vacío: Ollama carga el modelo y responde done=true sin generar
+            body.put("prompt", "");
+            body.put("stream", false);
+        }
+        String key = loadBalancer.getEndpointUrls().size() > 1 ? model + " @ " + endpoint : model;
+        ModelStatus modelStatus = status.computeIfAbsent(key, ignored -> new ModelStatus(embedding));
+        long start = System.nanoTime();
+        return webClient.post()
+                .uri(endpoint + (embedding ? "/api/embed" : "/api/generate"))
+                .attribute(OllamaLoadBalancer.PINNED_ENDPOINT, endpoint)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(OllamaResponse.class)
+                .timeout(timeout)
+                .doOnNext(response -> {
+                    long latencyNanos = System.nanoTime() - start;
+                    long loadNanos = response.getLoadDuration() != null ? response.getLoadDuration() : 0L;
+                    boolean cold = loadNanos >= coldThreshold.toNanos();
+                    modelStatus.recordSuccess(latencyNanos, loadNanos, cold);
+                    if (cold) {
+                        metrics.record(QaMetrics.LLM_COLD_START, loadNanos);
+                        log.warn("🥶 Modelo {} cargado en frío: carga {} ms, ping {} ms",
+                                key, loadNanos / 1_000_000, latencyNanos / 1_000_000);
+                    } else {
+                        log.debug("🔥 Modelo {} caliente (ping {} ms)", key, latencyNanos / 1_000_000);
+                    }
+                })
+                .doOnError(e -> {
+                    modelStatus.recordFailure(e.getMessage());
+                    log.warn("⚠️ Keep-warm de {} fallido: {}", key, e.getMessage());
+                })
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private Set<String> generationModels() {
+        Set<String> targets = new LinkedHashSet<>();
+        models.stream().filter(model -> !model.isBlank()).forEach(model -> targets.add(model.trim()));
+        if (targets.isEmpty()) {
+            targets.add(ollamaService.getCurrentModel());
+        }
+        return targets;
+    }
+
+    private Set<String> embeddingTargets() {
+        Set<String> targets = new LinkedHashSet<>();
+        embeddingModels.stream().filter(model -> !model.isBlank()).forEach(model -> targets.add(model.trim()));
+        if (targets.isEmpty()) {
+            targets.add(embeddingService.getEmbeddingModel());
+        }
+        return targets;
+    }
+
+    private static final class ModelStatus {
+        private final boolean embedding;
+        private long pings;
+        private long failures;
+        private long coldStarts;
+        private long lastLatencyMs = -1;
+        private long lastLoadMs = -1;
+        private long lastColdStartMs = -1;
+        private long maxColdStartMs = -1;
+        private String lastPingAt;
+        private String lastColdStartAt;
+        private String lastError;
+
+        private ModelStatus(boolean embedding) {
+            this.embedding = embedding;
+        }
+
+        synchronized void recordSuccess(long latencyNanos, long loadNanos, boolean cold) {
+            pings++;
+            lastLatencyMs = latencyNanos / 1_000_000;
+            lastLoadMs = loadNanos / 1_000_000;
+            lastPingAt = LocalDateTime.now().toString();
+            lastError = null;
+            if (cold) {
+                coldStarts++;
+                lastColdStartMs = lastLoadMs;
+                maxColdStartMs = Math.max(maxColdStartMs, lastLoadMs);
+                lastColdStartAt = lastPingAt;
+            }
+        }
+
+        synchronized void recordFailure(String error) {
+            pings++;
+            failures++;
+            lastPingAt = LocalDateTime.now().toString();
+            lastError = error;
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("type", embedding ? "embedding" : "generation");
+            snapshot.put("pings", pings);
+            snapshot.put("failures", failures);
+            snapshot.put("coldStarts", coldStarts);
+            snapshot.put("lastPingAt", lastPingAt);
+            snapshot.put("lastLatencyMs", lastLatencyMs);
+            snapshot.put("lastLoadMs", lastLoadMs);
+            snapshot.put("lastColdStartMs", lastColdStartMs);
+            snapshot.put("maxColdStartMs", maxColdStartMs);
+            snapshot.put("lastColdStartAt", lastColdStartAt);
+            snapshot.put("lastError", lastError);
+            return snapshot;
+        }
+    }
+}
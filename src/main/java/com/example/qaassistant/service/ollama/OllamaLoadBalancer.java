@@ -0,0 +1,494 @@
+package com.example.qaassistant.service.ollama;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Balanceo en cliente entre varias instancias de Ollama, como filtro del WebClient compartido.
+ *
+ * Las peticiones dirigidas a la URL lógica (ollama.base-url) se reescriben hacia el endpoint elegido,
+ * conservando su ruta base (http://gw/ollama + /api/generate → http://gw/ollama/api/generate);
+ * el resto (URLs de stubs, peticiones fijadas con PINNED_ENDPOINT) pasan sin tocar. Selección:
+ * - least-outstanding: menos peticiones en vuelo; a igualdad, menor latencia EWMA.
+ * - ewma: menor latencia EWMA ponderada por las peticiones en vuelo, (en vuelo + 1) × EWMA.
+ *
+ * Cada endpoint tiene un circuit breaker: tras 'failure-threshold' fallos seguidos (errores de conexión
+ * o 5xx), o si falla el health check, se expulsa durante 'ejection-time'. Pasado ese tiempo admite una
+ * petición de prueba (o un health check correcto lo readmite); si la prueba falla vuelve a expulsarse
+ * con el doble de tiempo, hasta 'max-ejection-time'. Si todos están expulsados se usa igualmente el
+ * menos cargado, porque fallar de antemano no es mejor que intentarlo.
+ */
+public class OllamaLoadBalancer implements ExchangeFilterFunction, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(OllamaLoadBalancer.class);
+
+    /**
+     * Atributo de petición: si está presente, la petición va a su URL tal cual (health checks, keep-warm).
+     */
+    public static final String PINNED_ENDPOINT = OllamaLoadBalancer.class.getName() + ".PINNED_ENDPOINT";
+
+    public enum Strategy {
+        LEAST_OUTSTANDING, EWMA;
+
+        public static Strategy from(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    public record Settings(Strategy strategy, int failureThreshold, Duration ejectionTime,
+                           Duration maxEjectionTime, Duration ewmaDecay) {
+    }
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final URI logicalBase;
+    private final Settings settings;
+    private final List<Endpoint> endpoints;
+    private final LongAdder panicSelections = new LongAdder();
+    private final LongAdder connectRetries = new LongAdder();
+
+    public OllamaLoadBalancer(String logicalBaseUrl, List<String> endpointUrls, Settings settings) {
+        this.logicalBase = URI.create(stripTrailingSlash(logicalBaseUrl));
+        this.settings = settings;
+        List<Endpoint> list = new ArrayList<>();
+        for (String url : endpointUrls) {
+            if (url != null && !url.isBlank()) {
+                list.add(new Endpoint(stripTrailingSlash(url.trim())));
+            }
+        }
+        if (list.isEmpty()) {
+            list.add(new Endpoint(stripTrailingSlash(logicalBaseUrl)));
+        }
+        this.endpoints = List.copyOf(list);
+        log.info("⚖️ Balanceador Ollama: {} endpoints, estrategia {}", endpoints.size(), settings.strategy());
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (request.attribute(PINNED_ENDPOINT).isPresent() || !isLogical(request.url())) {
+            return next.exchange(request);
+        }
+        return route(request, next, Set.of(), true);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Endpoint endpoint : endpoints) {
+            Gauge.builder("qa.ollama.endpoint.outstanding", endpoint, e -> e.outstanding.get())
+                    .tag("endpoint", endpoint.url).register(registry);
+            Gauge.builder("qa.ollama.endpoint.ewma", endpoint, e -> e.ewmaNanos() / 1_000_000.0)
+                    .tag("endpoint", endpoint.url).baseUnit("milliseconds").register(registry);
+            Gauge.builder("qa.ollama.endpoint.available", endpoint,
+                            e -> e.isAvailable(System.currentTimeMillis()) ? 1 : 0)
+                    .tag("endpoint", endpoint.url).register(registry);
+        }
+    }
+
+    public List<String> getEndpointUrls() {
+        return endpoints.stream().map(endpoint -> endpoint.url).toList();
+    }
+
+    public boolean hasAvailableEndpoint() {
+        long now = System.currentTimeMillis();
+        return endpoints.stream().anyMatch(endpoint -> endpoint.isAvailable(now));
+    }
+
+    /**
+     * Comprueba cada endpoint con 'probe' (p. ej. OllamaService::isOllamaRunning): uno caído se expulsa,
+     * uno que responde y ya cumplió su tiempo de expulsión se readmite.
+     */
+    public void checkHealth(Predicate<String> probe) {
+        for (Endpoint endpoint : endpoints) {
+            boolean up;
+            try {
+                up = probe.test(endpoint.url);
+            } catch (Exception e) {
+                up = false;
+            }
+            endpoint.recordHealth(up);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("strategy", settings.strategy().name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        stats.put("logicalBaseUrl", logicalBase.toString());
+        stats.put("failureThreshold", settings.failureThreshold());
+        stats.put("ejectionTimeMs", settings.ejectionTime().toMillis());
+        stats.put("panicSelections", panicSelections.sum());
+        stats.put("connectRetries", connectRetries.sum());
+        List<Map<String, Object>> perEndpoint = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            perEndpoint.add(endpoint.snapshot(now));
+        }
+        stats.put("endpoints", perEndpoint);
+        return stats;
+    }
+
+    // Métodos auxiliares
+
+    // Elección y alta de la petición en vuelo al suscribirse: un Mono que nunca se suscribe no reserva nada
+    private Mono<ClientResponse> route(ClientRequest request, ExchangeFunction next, Set<Endpoint> excluded,
+                                       boolean retryOnConnect) {
+        return Mono.defer(() -> exchange(request, next, excluded, retryOnConnect));
+    }
+
+    private Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next, Set<Endpoint> excluded,
+                                          boolean retryOnConnect) {
+        Endpoint endpoint = choose(excluded);
+        URI target = endpoint.resolve(request.url(), relativePath(request.url()));
+        ClientRequest routed = ClientRequest.from(request).url(target).build();
+        Call call = endpoint.begin();
+        return next.exchange(routed)
+                .map(response -> {
+                    boolean success = !response.statusCode().is5xxServerError();
+                    // La petición sigue en vuelo hasta que se consume el cuerpo (streaming incluido). Se cierra
+                    // antes de propagar la señal (no con doFinally): quien recibe la respuesta y lanza la
+                    // siguiente petición ya ve este endpoint libre y su latencia actualizada
+                    return response.mutate()
+                            .body(body -> body
+                                    .doOnComplete(() -> call.finish(success))
+                                    .doOnError(error -> call.finish(false))
+                                    .doOnCancel(() -> call.finish(success)))
+                            .build();
+                })
+                .doOnCancel(call::release)
+                .onErrorResume(error -> {
+                    call.finish(false);
+                    // Con la conexión rechazada la petición no llegó a enviarse: se reintenta una vez en otro endpoint
+                    if (retryOnConnect && isConnectFailure(error) && endpoints.size() > 1) {
+                        connectRetries.increment();
+                        log.warn("🔁 {} no acepta conexiones, se reintenta en otro endpoint", endpoint.url);
+                        return route(request, next, Set.of(endpoint), false);
+                    }
+                    return Mono.error(error);
+                });
+    }
+
+    private Endpoint choose(Set<Endpoint> excluded) {
+        long now = System.currentTimeMillis();
+        int size = endpoints.size();
+        // Hasta 'size' intentos: otro hilo puede ocupar antes la única petición de prueba de un endpoint
+        for (int attempt = 0; attempt < size; attempt++) {
+            Endpoint best = null;
+            int offset = ThreadLocalRandom.current().nextInt(size);
+            for (int i = 0; i < size; i++) {
+                Endpoint candidate = endpoints.get((offset + i) % size);
+                if (!excluded.contains(candidate) && candidate.isAvailable(now)
+                        && (best == null || better(candidate, best))) {
+                    best = candidate;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            if (best.admit(now)) {
+                return best;
+            }
+        }
+        // Modo pánico: ninguno disponible, se usa el de menos peticiones en vuelo
+        panicSelections.increment();
+        Endpoint fallback = null;
+        for (Endpoint candidate : endpoints) {
+            if (!excluded.contains(candidate)
+                    && (fallback == null || candidate.outstanding.get() < fallback.outstanding.get())) {
+                fallback = candidate;
+            }
+        }
+        return fallback != null ? fallback : endpoints.get(0);
+    }
+
+    private boolean better(Endpoint candidate, Endpoint current) {
+        if (settings.strategy() == Strategy.EWMA) {
+            return candidate.ewmaCost() < current.ewmaCost();
+        }
+        int byOutstanding = Integer.compare(candidate.outstanding.get(), current.outstanding.get());
+        return byOutstanding < 0 || (byOutstanding == 0 && candidate.ewmaNanos() < current.ewmaNanos());
+    }
+
+    private boolean isLogical(URI url) {
+        return url.getHost() != null
+                && url.getHost().equalsIgnoreCase(logicalBase.getHost())
+                && port(url) == port(logicalBase)
+                && url.getScheme().equalsIgnoreCase(logicalBase.getScheme());
+    }
+
+    // Ruta de la petición sin la ruta base de la URL lógica, todavía codificada
+    private String relativePath(URI url) {
+        String path = url.getRawPath() != null ? url.getRawPath() : "";
+        String basePath = logicalBase.getRawPath() != null ? logicalBase.getRawPath() : "";
+        if (!basePath.isEmpty() && (path.equals(basePath) || path.startsWith(basePath + "/"))) {
+            return path.substring(basePath.length());
+        }
+        return path;
+    }
+
+    private static int port(URI url) {
+        if (url.getPort() >= 0) {
+            return url.getPort();
+        }
+        return "https".equalsIgnoreCase(url.getScheme()) ? 443 : 80;
+    }
+
+    private static boolean isConnectFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    // Petición en vuelo: se cierra una sola vez, al terminar el cuerpo, por error o por cancelación
+    private final class Call {
+        private final Endpoint endpoint;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Call(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        void finish(boolean success) {
+            if (done.compareAndSet(false, true)) {
+                endpoint.complete(success, System.nanoTime() - startNanos);
+            }
+        }
+
+        // Cancelada por el llamador: no dice nada de la salud del endpoint
+        void release() {
+            if (done.compareAndSet(false, true)) {
+                endpoint.abandon();
+            }
+        }
+    }
+
+    private final class Endpoint {
+        private final String url;
+        private final URI uri;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // Protegido por 'lock'
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private boolean trialInFlight;
+        private long ejectedUntil;
+        private long currentEjectionMs = settings.ejectionTime().toMillis();
+        private long ejections;
+        private double ewma;
+        private long ewmaUpdatedAt;
+        private Boolean lastHealthy;
+        private long lastHealthCheckAt;
+
+        private Endpoint(String url) {
+            this.url = url;
+            this.uri = URI.create(url);
+        }
+
+        // Mismos query y fragmento que la petición, con el esquema, host, puerto y ruta base del endpoint
+        URI resolve(URI requestUrl, String relativePath) {
+            String basePath = uri.getRawPath() != null ? uri.getRawPath() : "";
+            return UriComponentsBuilder.fromUri(requestUrl)
+                    .scheme(uri.getScheme())
+                    .host(uri.getHost())
+                    .port(uri.getPort())
+                    .replacePath(basePath + relativePath)
+                    .build(true)
+                    .toUri();
+        }
+
+        boolean isAvailable(long now) {
+            lock.lock();
+            try {
+                return switch (state) {
+                    case CLOSED -> true;
+                    case OPEN -> now >= ejectedUntil;
+                    case HALF_OPEN -> !trialInFlight;
+                };
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Reserva el endpoint; en HALF_OPEN solo pasa la primera petición de prueba
+        boolean admit(long now) {
+            lock.lock();
+            try {
+                if (state == State.OPEN && now >= ejectedUntil) {
+                    state = State.HALF_OPEN;
+                    trialInFlight = false;
+                }
+                if (state == State.HALF_OPEN) {
+                    if (trialInFlight) {
+                        return false;
+                    }
+                    trialInFlight = true;
+                    return true;
+                }
+                return state == State.CLOSED;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Call begin() {
+            outstanding.incrementAndGet();
+            requests.increment();
+            return new Call(this);
+        }
+
+        void complete(boolean success, long latencyNanos) {
+            outstanding.decrementAndGet();
+            if (!success) {
+                failures.increment();
+            }
+            lock.lock();
+            try {
+                if (success) {
+                    updateEwma(latencyNanos);
+                    consecutiveFailures = 0;
+                    if (state != State.CLOSED) {
+                        reinstate("petición de prueba correcta");
+                    }
+                } else {
+                    consecutiveFailures++;
+                    if (state == State.HALF_OPEN) {
+                        currentEjectionMs = Math.min(currentEjectionMs * 2, settings.maxEjectionTime().toMillis());
+                        eject("falló la petición de prueba");
+                    } else if (state == State.CLOSED && consecutiveFailures >= settings.failureThreshold()) {
+                        eject(consecutiveFailures + " fallos seguidos");
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void abandon() {
+            outstanding.decrementAndGet();
+            lock.lock();
+            try {
+                trialInFlight = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void recordHealth(boolean up) {
+            long now = System.currentTimeMillis();
+            lock.lock();
+            try {
+                lastHealthy = up;
+                lastHealthCheckAt = now;
+                if (!up && state == State.CLOSED) {
+                    eject("health check fallido");
+                } else if (up && state != State.CLOSED && now >= ejectedUntil) {
+                    reinstate("health check correcto");
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double ewmaNanos() {
+            lock.lock();
+            try {
+                return ewma;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Un endpoint sin muestras cuesta 0 y recibe tráfico enseguida, así se aprende su latencia
+        double ewmaCost() {
+            return ewmaNanos() * (outstanding.get() + 1);
+        }
+
+        Map<String, Object> snapshot(long now) {
+            lock.lock();
+            try {
+                Map<String, Object> snapshot = new LinkedHashMap<>();
+                snapshot.put("url", url);
+                snapshot.put("state", state.name());
+                snapshot.put("available", isAvailable(now));
+                snapshot.put("outstanding", outstanding.get());
+                snapshot.put("ewmaMs", Math.round(ewma / 10_000.0) / 100.0);
+                snapshot.put("requests", requests.sum());
+                snapshot.put("failures", failures.sum());
+                snapshot.put("consecutiveFailures", consecutiveFailures);
+                snapshot.put("ejections", ejections);
+                snapshot.put("ejectedUntil", state == State.CLOSED ? null : Instant.ofEpochMilli(ejectedUntil).toString());
+                snapshot.put("healthy", lastHealthy);
+                snapshot.put("lastHealthCheckAt",
+                        lastHealthCheckAt > 0 ? Instant.ofEpochMilli(lastHealthCheckAt).toString() : null);
+                return snapshot;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Con 'lock' tomado
+
+        private void updateEwma(long latencyNanos) {
+            long now = System.nanoTime();
+            if (ewmaUpdatedAt == 0) {
+                ewma = latencyNanos;
+            } else {
+                // Decaimiento por tiempo: una muestra pesa más cuanto más tiempo pasó desde la anterior
+                double weight = Math.exp(-(double) (now - ewmaUpdatedAt) / settings.ewmaDecay().toNanos());
+                ewma = ewma * weight + latencyNanos * (1 - weight);
+            }
+            ewmaUpdatedAt = now;
+        }
+
+        private void eject(String reason) {
+            state = State.OPEN;
+            trialInFlight = false;
+            ejectedUntil = System.currentTimeMillis() + currentEjectionMs;
+            ejections++;
+            log.warn("⛔ Endpoint Ollama {} expulsado {} ms ({})", url, currentEjectionMs, reason);
+        }
+
+        private void reinstate(String reason) {
+            state = State.CLOSED;
+            trialInFlight = false;
+            consecutiveFailures = 0;
+            currentEjectionMs = settings.ejectionTime().toMillis();
+            log.info("✅ Endpoint Ollama {} readmitido ({})", url, reason);
+        }
+    }
+}
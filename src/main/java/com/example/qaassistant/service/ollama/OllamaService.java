@@ -2,15 +2,19 @@ package com.example.qaassistant.service.ollama;
 
 import com.example.qaassistant.model.ollama.OllamaRequest;
 import com.example.qaassistant.model.ollama.OllamaResponse;
+import com.example.qaassistant.service.metrics.QaMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpHeaders;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Service
 public class OllamaService {
@@ -18,25 +22,54 @@ public class OllamaService {
     private static final Logger log = LoggerFactory.getLogger(OllamaService.class);
 
     private final WebClient webClient;
+    private final QaMetrics metrics;
     private String currentModel = "llama3.2:1b";
 
-    public OllamaService() {
-        this.webClient = WebClient.builder()
-                .baseUrl("http://localhost:11434")
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
+    // Tiempo que Ollama mantiene el modelo cargado tras cada petición (por defecto 5m en Ollama)
+    @Value("${ollama.keep-alive:30m}")
+    private String keepAlive;
+
+    public OllamaService(QaMetrics metrics, WebClient ollamaWebClient) {
+        this.metrics = metrics;
+        this.webClient = ollamaWebClient;
+    }
+
+    public String getCurrentModel() {
+        return currentModel;
     }
 
     public String generateSQLQuery(String schemaContext, String userQuestion) {
+        return generateSQLQuery(schemaContext, userQuestion, null);
+    }
+
+    /**
+     * Igual que generateSQLQuery, pero si 'onToken' no es nulo la respuesta se pide en streaming
+     * y cada fragmento se entrega a 'onToken' según llega.
+     */
+    public String generateSQLQuery(String schemaContext, String userQuestion, Consumer<String> onToken) {
         String prompt = buildSQLPrompt(schemaContext, userQuestion);
 
         log.info("=== DEBUG PROMPT ===");
         log.info(prompt);
         log.info("=====================");
 
-        OllamaRequest request = new OllamaRequest(currentModel, prompt);
-        request.setStream(false); // Asegurar que no sea stream
+        if (onToken != null) {
+            try {
+                String response = streamGenerate(prompt)
+                        .doOnNext(onToken)
+                        .collect(StringBuilder::new, StringBuilder::append)
+                        .map(StringBuilder::toString)
+                        .block(Duration.ofSeconds(60));
+                return cleanSQLResponse(response);
+            } catch (Exception e) {
+                log.error("Error en streaming con Ollama", e);
+                return "Error communicating with Ollama: " + e.getMessage();
+            }
+        }
+
+        OllamaRequest request = newRequest(prompt, false);
 
+        long start = System.nanoTime();
         try {
             OllamaResponse response = webClient.post()
                     .uri("/api/generate")
@@ -48,6 +81,7 @@ public class OllamaService {
                     .bodyToMono(OllamaResponse.class)  // Deserializar directamente a OllamaResponse
                     .timeout(Duration.ofSeconds(60))
                     .block();
+            metrics.recordSince(QaMetrics.LLM_TTFB_BLOCKING, start);
 
             log.info("=== DEBUG OLLAMA RESPONSE OBJECT ===");
             log.info("Response: " + (response != null ? response.getResponse() : "null"));
@@ -63,9 +97,55 @@ public class OllamaService {
         } catch (Exception e) {
             log.error("=== DEBUG ERROR ===", e);
             return "Error communicating with Ollama: " + e.getMessage();
+        } finally {
+            metrics.recordSince(QaMetrics.LLM, start);
         }
     }
 
+    /**
+     * Variante no bloqueante de generateSQLQuery para el pipeline reactivo.
+     */
+    public Mono<String> generateSQLQueryAsync(String schemaContext, String userQuestion) {
+        long start = System.nanoTime();
+        return generate(buildSQLPrompt(schemaContext, userQuestion))
+                .map(response -> cleanSQLResponse(response.getResponse()))
+                .doOnSuccess(sql -> metrics.recordSince(QaMetrics.LLM_TTFB_BLOCKING, start))
+                .doFinally(signal -> metrics.recordSince(QaMetrics.LLM, start))
+                .onErrorResume(e -> {
+                    log.error("Error communicating with Ollama", e);
+                    return Mono.just("Error communicating with Ollama: " + e.getMessage());
+                });
+    }
+
+    /**
+     * Variante no bloqueante de generateResponse; los errores se propagan para que el llamador decida.
+     */
+    public Mono<String> generateResponseAsync(String prompt) {
+        long start = System.nanoTime();
+        return generate(prompt)
+                .map(OllamaResponse::getResponse)
+                .doFinally(signal -> metrics.recordSince(QaMetrics.LLM, start));
+    }
+
+    private Mono<OllamaResponse> generate(String prompt) {
+        OllamaRequest request = newRequest(prompt, false);
+        return webClient.post()
+                .uri("/api/generate")
+                .bodyValue(request)
+                .retrieve()
+                .onStatus(status -> status.isError(), clientResponse ->
+                        Mono.error(new RuntimeException("Ollama API error: " + clientResponse.statusCode())))
+                .bodyToMono(OllamaResponse.class)
+                .timeout(Duration.ofSeconds(60));
+    }
+
+    private OllamaRequest newRequest(String prompt, boolean stream) {
+        OllamaRequest request = new OllamaRequest(currentModel, prompt);
+        request.setStream(stream);
+        request.setKeepAlive(keepAlive);
+        return request;
+    }
+
     private String cleanSQLResponse(String sqlResponse) {
         if (sqlResponse == null || sqlResponse.trim().isEmpty()) {
             return "NO_SQL";
@@ -144,10 +224,28 @@ public class OllamaService {
         }
     }
 
+    /**
+     * Igual que isOllamaRunning() pero contra una instancia concreta, sin pasar por el balanceador.
+     */
+    public boolean isOllamaRunning(String baseUrl) {
+        try {
+            webClient.get()
+                    .uri(baseUrl + "/api/tags")
+                    .attribute(OllamaLoadBalancer.PINNED_ENDPOINT, baseUrl)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .timeout(Duration.ofSeconds(5))
+                    .block();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     public String generateResponse(String prompt) {
-        OllamaRequest request = new OllamaRequest(currentModel, prompt);
-        request.setStream(false);
+        OllamaRequest request = newRequest(prompt, false);
 
+        long start = System.nanoTime();
         try {
             OllamaResponse response = webClient.post()
                     .uri("/api/generate")
@@ -159,6 +257,7 @@ public class OllamaService {
                     .bodyToMono(OllamaResponse.class)
                     .timeout(Duration.ofSeconds(60))
                     .block();
+            metrics.recordSince(QaMetrics.LLM_TTFB_BLOCKING, start);
 
             if (response == null) {
                 return "Error: No response from Ollama";
@@ -169,7 +268,38 @@ public class OllamaService {
         } catch (Exception e) {
             log.error("Error communicating with Ollama ", e);
             return "Error communicating with Ollama: " + e.getMessage();
+        } finally {
+            metrics.recordSince(QaMetrics.LLM, start);
         }
     }
 
+    /**
+     * Generación en streaming: Ollama responde NDJSON (un OllamaResponse por línea) y cada línea
+     * se emite como fragmento de texto hasta la que trae done=true.
+     */
+    public Flux<String> streamGenerate(String prompt) {
+        OllamaRequest request = newRequest(prompt, true);
+
+        long start = System.nanoTime();
+        AtomicBoolean firstToken = new AtomicBoolean(true);
+        return webClient.post()
+                .uri("/api/generate")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(request)
+                .retrieve()
+                .onStatus(status -> status.isError(), clientResponse ->
+                        Mono.error(new RuntimeException("Ollama API error: " + clientResponse.statusCode())))
+                .bodyToFlux(OllamaResponse.class)
+                .takeUntil(OllamaResponse::isDone)
+                .map(chunk -> chunk.getResponse() != null ? chunk.getResponse() : "")
+                .filter(token -> !token.isEmpty())
+                .doOnNext(token -> {
+                    if (firstToken.compareAndSet(true, false)) {
+                        metrics.recordSince(QaMetrics.LLM_TTFB_STREAMING, start);
+                    }
+                })
+                .timeout(Duration.ofSeconds(60))
+                .doFinally(signal -> metrics.recordSince(QaMetrics.LLM, start));
+    }
+
 }
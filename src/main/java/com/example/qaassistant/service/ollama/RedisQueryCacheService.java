@@ -0,0 +1,403 @@
+package com.example.qaassistant.service.ollama;
+
+import com.example.qaassistant.service.IQueryCacheService;
+import com.example.qaassistant.service.QuestionNormalizer;
+import com.example.qaassistant.service.TableChangeTracker;
+import com.example.qaassistant.service.UnifiedQueryResult;
+import com.example.qaassistant.service.UnifiedQueryResultCodec;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache de consultas compartida entre réplicas: L1 local pequeña (near-cache) delante de Redis (L2).
+ *
+ * - Los resultados se guardan en Redis en binario (UnifiedQueryResultCodec) con el TTL de 'app.cache.ttl'.
+ * - Cada escritura publica la clave en un canal pub/sub; el resto de réplicas la eliminan de su L1
+ *   para no servir una versión anterior. La L1 además caduca antes que Redis ('near-cache-ttl').
+ * - Cada resultado con SQL se apunta en un set por tabla (qa:cache:table:<tabla>); cuando esta instancia
+ *   modifica una tabla, borra de Redis las entradas que dependen de ella y avisa al resto por pub/sub.
+ * - Si Redis no responde, la consulta cuenta como fallo de cache y el flujo sigue sin ella.
+ *
+ * Se activa con app.cache.type=redis.
+ */
+@Service
+@ConditionalOnProperty(name = "app.cache.type", havingValue = "redis")
+public class RedisQueryCacheService implements IQueryCacheService, MeterBinder, MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisQueryCacheService.class);
+    private static final String KEY_PREFIX = "qa:cache:result:";
+    private static final String FREQUENCY_KEY = "qa:cache:frequency";
+    private static final String QUESTIONS_KEY = "qa:cache:questions";
+    private static final String TABLE_PREFIX = "qa:cache:table:";
+    private static final String INVALIDATION_CHANNEL = "qa:cache:invalidate";
+    private static final String ALL_KEYS = "*";
+
+    private final RedisTemplate<String, byte[]> binaryRedisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final QuestionNormalizer normalizer;
+    private final TableChangeTracker tableChanges;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${app.cache.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${app.cache.redis.near-cache-size:1000}")
+    private int nearCacheSize;
+
+    @Value("${app.cache.redis.near-cache-ttl:5m}")
+    private Duration nearCacheTtl;
+
+    private final ReentrantLock nearCacheLock = new ReentrantLock();
+    private final LinkedHashMap<String, NearEntry> nearCache = new LinkedHashMap<>(256, 0.75f, true);
+
+    // Métricas para monitoreo
+    private final LongAdder nearHits = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheStores = new LongAdder();
+    private final LongAdder invalidationsReceived = new LongAdder();
+    private final LongAdder tableInvalidations = new LongAdder();
+    private final LongAdder redisErrors = new LongAdder();
+
+    public RedisQueryCacheService(@Qualifier("binaryRedisTemplate") RedisTemplate<String, byte[]> binaryRedisTemplate,
+                                  StringRedisTemplate stringRedisTemplate,
+                                  RedisMessageListenerContainer listenerContainer,
+                                  QuestionNormalizer normalizer,
+                                  TableChangeTracker tableChanges) {
+        this.binaryRedisTemplate = binaryRedisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.normalizer = normalizer;
+        this.tableChanges = tableChanges;
+        tableChanges.addListener(this::invalidateTable);
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+        log.info("🔗 RedisQueryCacheService: Near-cache de {} entradas, réplica {}", nearCacheSize, instanceId);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("qa.cache.hits", nearHits, LongAdder::sum).tag("tier", "near").register(registry);
+        FunctionCounter.builder("qa.cache.hits", redisHits, LongAdder::sum).tag("tier", "redis").register(registry);
+        FunctionCounter.builder("qa.cache.misses", cacheMisses, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.cache.stores", cacheStores, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.cache.invalidations", invalidationsReceived, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.cache.table.invalidations", tableInvalidations, LongAdder::sum).register(registry);
+        FunctionCounter.builder("qa.cache.redis.errors", redisErrors, LongAdder::sum).register(registry);
+        Gauge.builder("qa.cache.near.size", this, cache -> cache.nearCacheEntries()).register(registry);
+    }
+
+    @Override
+    public Optional<UnifiedQueryResult> getCachedResult(String question) {
+        String key = generateCacheKey(question);
+
+        UnifiedQueryResult near = nearGet(key);
+        if (near != null) {
+            nearHits.increment();
+            log.info("🎯 CACHE HIT (L1) - \"{}\"", truncateText(question, 50));
+            return Optional.of(near);
+        }
+
+        try {
+            byte[] data = binaryRedisTemplate.opsForValue().get(KEY_PREFIX + key);
+            if (data != null) {
+                UnifiedQueryResult result = UnifiedQueryResultCodec.decode(data);
+                nearPut(key, result);
+                redisHits.increment();
+                log.info("🎯 CACHE HIT (Redis) - \"{}\"", truncateText(question, 50));
+                return Optional.of(result);
+            }
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("⚠️ Redis no disponible leyendo la cache: {}", e.getMessage());
+        }
+
+        cacheMisses.increment();
+        log.info("❌ CACHE MISS - \"{}\"", truncateText(question, 50));
+        return Optional.empty();
+    }
+
+    @Override
+    public void cacheResult(String question, UnifiedQueryResult result) {
+        cacheResult(question, result, tableChanges.currentVersions());
+    }
+
+    @Override
+    public void cacheResult(String question, UnifiedQueryResult result, Map<String, Long> dataVersions) {
+        Map<String, Long> dependencies = tableChanges.dependencies(result.getGeneratedSQL(), dataVersions);
+        if (!tableChanges.isCurrent(dependencies)) {
+            log.info("⏭️ Resultado no cacheado, sus tablas cambiaron durante la consulta");
+            return;
+        }
+        String key = generateCacheKey(question);
+        nearPut(key, result);
+        cacheStores.increment();
+        try {
+            byte[] data = UnifiedQueryResultCodec.encode(result);
+            binaryRedisTemplate.opsForValue().set(KEY_PREFIX + key, data, ttl);
+            for (String table : dependencies.keySet()) {
+                stringRedisTemplate.opsForSet().add(TABLE_PREFIX + table, key);
+                stringRedisTemplate.expire(TABLE_PREFIX + table, ttl);
+            }
+            publishInvalidation(key);
+            log.info("💾 NUEVA ENTRADA EN CACHE (Redis, {} bytes) - \"{}\"", data.length, truncateText(question, 60));
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("⚠️ Redis no disponible guardando en cache: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void incrementQueryFrequency(String question) {
+        try {
+            String key = generateCacheKey(question);
+            stringRedisTemplate.opsForZSet().incrementScore(FREQUENCY_KEY, key, 1);
+            stringRedisTemplate.opsForHash().putIfAbsent(QUESTIONS_KEY, key, question);
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("⚠️ Redis no disponible actualizando frecuencias: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public List<String> getFrequentQueries(int limit) {
+        try {
+            Set<String> top = stringRedisTemplate.opsForZSet().reverseRange(FREQUENCY_KEY, 0, limit - 1L);
+            if (top == null || top.isEmpty()) {
+                return new ArrayList<>();
+            }
+            List<String> keys = new ArrayList<>(top);
+            List<Object> texts = stringRedisTemplate.opsForHash().multiGet(QUESTIONS_KEY, new ArrayList<>(keys));
+            List<String> questions = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                Object text = texts != null ? texts.get(i) : null;
+                questions.add(text != null ? text.toString() : keys.get(i));
+            }
+            return questions;
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("⚠️ Redis no disponible leyendo frecuencias: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getQueryFrequencyStats(int limit) {
+        Map<String, Integer> frequencyStats = new LinkedHashMap<>();
+        try {
+            Set<ZSetOperations.TypedTuple<String>> top =
+                    stringRedisTemplate.opsForZSet().reverseRangeWithScores(FREQUENCY_KEY, 0, Math.max(limit, 1) - 1L);
+            if (top != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : top) {
+                    frequencyStats.put(tuple.getValue(), tuple.getScore() != null ? tuple.getScore().intValue() : 0);
+                }
+            }
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("⚠️ Redis no disponible leyendo frecuencias: {}", e.getMessage());
+        }
+        return frequencyStats;
+    }
+
+    @Override
+    public Map<String, Object> getCacheStats() {
+        long hits = nearHits.sum() + redisHits.sum();
+        long misses = cacheMisses.sum();
+        double hitRate = (hits + misses) > 0 ? (double) hits / (hits + misses) * 100 : 0;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "redis");
+        stats.put("instanceId", instanceId);
+        stats.put("hits", hits);
+        stats.put("nearHits", nearHits.sum());
+        stats.put("redisHits", redisHits.sum());
+        stats.put("misses", misses);
+        stats.put("stores", cacheStores.sum());
+        stats.put("hitRate", Math.round(hitRate * 100.0) / 100.0);
+        stats.put("nearCacheSize", nearCacheEntries());
+        stats.put("nearCacheMaxSize", nearCacheSize);
+        stats.put("invalidationsReceived", invalidationsReceived.sum());
+        stats.put("tableInvalidations", tableInvalidations.sum());
+        stats.put("redisErrors", redisErrors.sum());
+        stats.put("ttlSeconds", ttl.toSeconds());
+        return stats;
+    }
+
+    @Override
+    public void clearCache() {
+        nearClear();
+        try {
+            // SCAN en lugar de KEYS para no bloquear Redis con muchas claves
+            binaryRedisTemplate.execute((RedisCallback<Long>) connection -> {
+                long deleted = 0;
+                ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(500).build();
+                try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+                    while (cursor.hasNext()) {
+                        Long removed = connection.keyCommands().del(cursor.next());
+                        deleted += removed != null ? removed : 0;
+                    }
+                }
+                return deleted;
+            });
+            stringRedisTemplate.delete(List.of(FREQUENCY_KEY, QUESTIONS_KEY));
+            publishInvalidation(ALL_KEYS);
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("⚠️ Redis no disponible limpiando la cache: {}", e.getMessage());
+        }
+        nearHits.reset();
+        redisHits.reset();
+        cacheMisses.reset();
+        cacheStores.reset();
+        log.info("🗑️  Cache limpiada completamente (Redis y near-cache)");
+    }
+
+    /**
+     * Invalidaciones publicadas por otras réplicas: "instancia|clave" o "instancia|*".
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf('|');
+        if (separator < 0 || body.substring(0, separator).equals(instanceId)) {
+            return;
+        }
+        String key = body.substring(separator + 1);
+        invalidationsReceived.increment();
+        if (ALL_KEYS.equals(key)) {
+            nearClear();
+        } else {
+            nearRemove(key);
+        }
+    }
+
+    /**
+     * Borra de Redis (y de las near-caches por pub/sub) las entradas que dependen de 'table'.
+     */
+    void invalidateTable(String table) {
+        try {
+            Set<String> keys = stringRedisTemplate.opsForSet().members(TABLE_PREFIX + table);
+            stringRedisTemplate.delete(TABLE_PREFIX + table);
+            if (keys == null || keys.isEmpty()) {
+                return;
+            }
+            binaryRedisTemplate.delete(keys.stream().map(key -> KEY_PREFIX + key).toList());
+            for (String key : keys) {
+                nearRemove(key);
+                publishInvalidation(key);
+            }
+            tableInvalidations.add(keys.size());
+            log.info("🔄 Tabla {} modificada: {} entradas de cache invalidadas", table, keys.size());
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("⚠️ Redis no disponible invalidando la tabla {}: {}", table, e.getMessage());
+        }
+    }
+
+    // Near-cache (L1)
+
+    private UnifiedQueryResult nearGet(String key) {
+        nearCacheLock.lock();
+        try {
+            NearEntry entry = nearCache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() < System.currentTimeMillis()) {
+                nearCache.remove(key);
+                return null;
+            }
+            return entry.result();
+        } finally {
+            nearCacheLock.unlock();
+        }
+    }
+
+    private void nearPut(String key, UnifiedQueryResult result) {
+        nearCacheLock.lock();
+        try {
+            nearCache.put(key, new NearEntry(result, System.currentTimeMillis() + nearCacheTtl.toMillis()));
+            Iterator<String> eldest = nearCache.keySet().iterator();
+            while (nearCache.size() > nearCacheSize && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        } finally {
+            nearCacheLock.unlock();
+        }
+    }
+
+    private void nearRemove(String key) {
+        nearCacheLock.lock();
+        try {
+            nearCache.remove(key);
+        } finally {
+            nearCacheLock.unlock();
+        }
+    }
+
+    private void nearClear() {
+        nearCacheLock.lock();
+        try {
+            nearCache.clear();
+        } finally {
+            nearCacheLock.unlock();
+        }
+    }
+
+    private int nearCacheEntries() {
+        nearCacheLock.lock();
+        try {
+            return nearCache.size();
+        } finally {
+            nearCacheLock.unlock();
+        }
+    }
+
+    // Métodos auxiliares
+
+    private void publishInvalidation(String key) {
+        stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, instanceId + "|" + key);
+    }
+
+    private String generateCacheKey(String question) {
+        return normalizer.key(question);
+    }
+
+    private String truncateText(String text, int maxLength) {
+        if (text == null) return "";
+        return text.length() > maxLength ? text.substring(0, maxLength) + "..." : text;
+    }
+
+    private record NearEntry(UnifiedQueryResult result, long expiresAt) {
+    }
+}
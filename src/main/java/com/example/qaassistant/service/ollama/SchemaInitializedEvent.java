@@ -0,0 +1,10 @@
+package com.example.qaassistant.service.ollama;
+
+import java.util.Set;
+
+/**
+ * Publicado por DatabaseSchemaProvider al arrancar, antes de que la aplicación esté lista, una vez
+ * calculado el hash estructural y registradas como escrituras las tablas que cargó data.sql.
+ */
+public record SchemaInitializedEvent(String structuralSchemaHash, Set<String> reloadedTables) {
+}
@@ -0,0 +1,418 @@
+package com.example.qaassistant.service.ollama;
+
+import com.example.qaassistant.model.rag.KnowledgeDocument;
+import com.example.qaassistant.service.QuestionNormalizer;
+import com.example.qaassistant.service.TableChangeTracker;
+import com.example.qaassistant.service.UnifiedQueryResult;
+import com.example.qaassistant.service.rag.EmbeddingService;
+import com.example.qaassistant.service.rag.VectorMatch;
+import com.example.qaassistant.service.rag.VectorMatrix;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache semántica de preguntas: embebe la pregunta, busca las 'candidates' preguntas ya respondidas
+ * más parecidas y reutiliza el UnifiedQueryResult de la primera que supere el umbral configurado y
+ * siga siendo válida (sin expirar, con datos vigentes y los mismos números).
+ *
+ * Una pregunta con la misma forma normalizada que otra ya guardada la reemplaza en lugar de duplicarla,
+ * y un barrido periódico retira las entradas expiradas aunque nunca vuelvan a salir en una búsqueda.
+ *
+ * Para acotar los falsos aciertos:
+ * - los números de ambas preguntas deben coincidir ("más de 5" no sirve para "más de 10")
+ * - una fracción de los aciertos se audita recalculando la respuesta en segundo plano y
+ *   comparándola con la cacheada; las discrepancias cuentan como falsos aciertos
+ */
+@Service
+public class SemanticQueryCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SemanticQueryCache.class);
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:[.,]\\d+)?");
+    private static final int RECENT_FALSE_HITS = 20;
+
+    private final EmbeddingService embeddingService;
+    private final TableChangeTracker tableChanges;
+    private final QuestionNormalizer normalizer;
+
+    @Value("${app.cache.semantic.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cache.semantic.threshold:0.92}")
+    private float threshold;
+
+    @Value("${app.cache.semantic.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${app.cache.semantic.ttl:24h}")
+    private Duration ttl;
+
+    // Vecinos que se examinan por búsqueda: si el más parecido no vale se prueba el siguiente
+    @Value("${app.cache.semantic.candidates:5}")
+    private int candidates;
+
+    // Fracción de aciertos que se recalculan para auditar falsos aciertos (0 = sin auditoría)
+    @Value("${app.cache.semantic.audit-sample-rate:0.05}")
+    private double auditSampleRate;
+
+    private final VectorMatrix questions = new VectorMatrix();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    // Clave normalizada de la pregunta → id de su entrada; se mantiene con el lock tomado
+    private final Map<String, String> idsByKey = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Auditoría en un único hilo con cola acotada: si se llena, la auditoría se descarta
+    private final ThreadPoolExecutor auditExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(32), runnable -> {
+                Thread thread = new Thread(runnable, "semantic-cache-audit");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong numberMismatches = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong replacements = new AtomicLong();
+    private final AtomicLong embeddingFailures = new AtomicLong();
+    private final AtomicLong audits = new AtomicLong();
+    private final AtomicLong falseHits = new AtomicLong();
+    private final Deque<Map<String, Object>> recentFalseHits = new ArrayDeque<>();
+
+    public SemanticQueryCache(EmbeddingService embeddingService, TableChangeTracker tableChanges,
+                              QuestionNormalizer normalizer) {
+        this.embeddingService = embeddingService;
+        this.tableChanges = tableChanges;
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * Acierto semántico: resultado cacheado, pregunta original que lo produjo, similitud y
+     * versiones de las tablas de las que depende.
+     */
+    public record SemanticHit(UnifiedQueryResult result, String matchedQuestion, float similarity,
+                              Map<String, Long> dataVersions) {
+    }
+
+    public Optional<SemanticHit> lookup(String question) {
+        if (!enabled || question == null || question.isBlank()) {
+            return Optional.empty();
+        }
+        lookups.incrementAndGet();
+
+        return match(question, embed(question));
+    }
+
+    /**
+     * Variante no bloqueante de lookup: el embedding se obtiene con el Mono de EmbeddingService.
+     */
+    public Mono<Optional<SemanticHit>> lookupAsync(String question) {
+        if (!enabled || question == null || question.isBlank()) {
+            return Mono.just(Optional.empty());
+        }
+        lookups.incrementAndGet();
+        return embeddingService.embed(question.trim().toLowerCase())
+                .map(vector -> match(question, vector))
+                // Ollama respondió sin vector: cuenta como fallo sin que el pipeline quede vacío
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    embeddingFailures.incrementAndGet();
+                    return match(question, null);
+                }))
+                .onErrorResume(e -> {
+                    embeddingFailures.incrementAndGet();
+                    log.debug("Cache semántica sin embedding para \"{}\": {}", question, e.getMessage());
+                    return Mono.just(match(question, null));
+                });
+    }
+
+    private Optional<SemanticHit> match(String question, float[] vector) {
+        if (vector == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+
+        // Vecinos en orden de similitud: se sirve el primero que supere el umbral y siga siendo válido
+        List<VectorMatch> matches = questions.search(vector, Math.max(candidates, 1));
+        List<String> questionNumbers = numbers(question);
+        boolean numberMismatch = false;
+        for (VectorMatch match : matches) {
+            if (match.score() < threshold) {
+                break;
+            }
+            Entry entry = validEntry(match.id());
+            if (entry == null) {
+                continue;
+            }
+            if (!questionNumbers.equals(numbers(entry.question()))) {
+                numberMismatch = true;
+                continue;
+            }
+            hits.incrementAndGet();
+            log.info("🧠 CACHE SEMÁNTICA HIT ({}) - \"{}\" ≈ \"{}\"",
+                    String.format("%.3f", match.score()), question, entry.question());
+            return Optional.of(new SemanticHit(entry.result(), entry.question(), match.score(), entry.dependencies()));
+        }
+        if (numberMismatch) {
+            numberMismatches.incrementAndGet();
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    public void store(String question, UnifiedQueryResult result, Map<String, Long> dataVersions) {
+        if (!enabled || question == null || question.isBlank() || !result.isSuccess()) {
+            return;
+        }
+        Map<String, Long> dependencies = tableChanges.dependencies(result.getGeneratedSQL(), dataVersions);
+        if (!tableChanges.isCurrent(dependencies)) {
+            return;
+        }
+        float[] vector = embed(question);
+        if (vector == null) {
+            return;
+        }
+        String key = normalizer.key(question);
+        String id = Long.toString(sequence.incrementAndGet());
+        lock.lock();
+        try {
+            // La misma pregunta normalizada reemplaza a su entrada anterior en lugar de duplicarla
+            String previousId = idsByKey.get(key);
+            if (previousId != null) {
+                removeEntry(previousId);
+                replacements.incrementAndGet();
+            }
+            questions.put(id, vector);
+            entries.put(id, new Entry(key, question, result, System.currentTimeMillis(), dependencies));
+            idsByKey.put(key, id);
+            // Se expulsan las entradas más antiguas por encima del máximo
+            while (entries.size() > maxEntries) {
+                removeEntry(entries.keySet().iterator().next());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retira las entradas expiradas. Todas comparten TTL y 'entries' conserva el orden de inserción,
+     * así que basta con consumir desde la cabeza hasta la primera entrada vigente.
+     */
+    @Scheduled(initialDelayString = "${app.cache.semantic.sweep-interval-ms:60000}",
+            fixedDelayString = "${app.cache.semantic.sweep-interval-ms:60000}")
+    public void sweepExpired() {
+        int removed = 0;
+        lock.lock();
+        try {
+            Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+            while (oldest.hasNext()) {
+                Map.Entry<String, Entry> next = oldest.next();
+                if (!isExpired(next.getValue())) {
+                    break;
+                }
+                oldest.remove();
+                questions.remove(next.getKey());
+                idsByKey.remove(next.getValue().key(), next.getKey());
+                removed++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (removed > 0) {
+            expirations.addAndGet(removed);
+            log.info("🧹 Barrido de cache semántica: {} entradas expiradas eliminadas", removed);
+        }
+    }
+
+    /**
+     * Con probabilidad 'audit-sample-rate' recalcula la respuesta en segundo plano y la compara
+     * con el resultado servido desde la cache semántica.
+     */
+    public void maybeAudit(String question, SemanticHit hit, Supplier<UnifiedQueryResult> freshResult) {
+        if (auditSampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= auditSampleRate) {
+            return;
+        }
+        auditExecutor.execute(() -> {
+            try {
+                UnifiedQueryResult fresh = freshResult.get();
+                audits.incrementAndGet();
+                if (!equivalent(hit.result(), fresh)) {
+                    falseHits.incrementAndGet();
+                    recordFalseHit(question, hit);
+                    log.warn("⚠️ Falso acierto semántico ({}) - \"{}\" respondida como \"{}\"",
+                            String.format("%.3f", hit.similarity()), question, hit.matchedQuestion());
+                }
+            } catch (Exception e) {
+                log.debug("Auditoría de cache semántica fallida: {}", e.getMessage());
+            }
+        });
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            idsByKey.clear();
+            questions.clear();
+        } finally {
+            lock.unlock();
+        }
+        synchronized (recentFalseHits) {
+            recentFalseHits.clear();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long lookupCount = lookups.get();
+        long auditCount = audits.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("threshold", threshold);
+        lock.lock();
+        try {
+            stats.put("entries", entries.size());
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("lookups", lookupCount);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookupCount > 0 ? (double) hitCount / lookupCount : 0.0);
+        stats.put("numberMismatches", numberMismatches.get());
+        stats.put("expirations", expirations.get());
+        stats.put("replacements", replacements.get());
+        stats.put("embeddingFailures", embeddingFailures.get());
+        stats.put("auditSampleRate", auditSampleRate);
+        stats.put("audits", auditCount);
+        stats.put("falseHits", falseHits.get());
+        stats.put("falseHitRate", auditCount > 0 ? (double) falseHits.get() / auditCount : 0.0);
+        synchronized (recentFalseHits) {
+            stats.put("recentFalseHits", new ArrayList<>(recentFalseHits));
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        auditExecutor.shutdownNow();
+    }
+
+    // Métodos auxiliares
+
+    private float[] embed(String question) {
+        try {
+            float[] vector = embeddingService.embed(question.trim().toLowerCase()).block();
+            if (vector == null) {
+                embeddingFailures.incrementAndGet();
+            }
+            return vector;
+        } catch (Exception e) {
+            // Sin embedding real no se arriesga un acierto semántico
+            embeddingFailures.incrementAndGet();
+            log.debug("Cache semántica sin embedding para \"{}\": {}", question, e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.timestamp() > ttl.toMillis();
+    }
+
+    // Entrada del id si sigue vigente; las expiradas u obsoletas se retiran al encontrarlas
+    private Entry validEntry(String id) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                return null;
+            }
+            if (isExpired(entry)) {
+                removeEntry(id);
+                expirations.incrementAndGet();
+                return null;
+            }
+            if (!tableChanges.isCurrent(entry.dependencies())) {
+                removeEntry(id);
+                return null;
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Se llama con el lock tomado
+    private void removeEntry(String id) {
+        Entry entry = entries.remove(id);
+        questions.remove(id);
+        if (entry != null) {
+            idsByKey.remove(entry.key(), id);
+        }
+    }
+
+    private static List<String> numbers(String question) {
+        List<String> numbers = new ArrayList<>();
+        Matcher matcher = NUMBER.matcher(question);
+        while (matcher.find()) {
+            numbers.add(matcher.group());
+        }
+        return numbers;
+    }
+
+    private static boolean equivalent(UnifiedQueryResult cached, UnifiedQueryResult fresh) {
+        if (!Objects.equals(cached.getIntent(), fresh.getIntent()) || cached.isSuccess() != fresh.isSuccess()) {
+            return false;
+        }
+        if (cached.getRawResults() != null || fresh.getRawResults() != null) {
+            return Objects.equals(cached.getRawResults(), fresh.getRawResults());
+        }
+        return Objects.equals(sourceIds(cached), sourceIds(fresh));
+    }
+
+    private static Set<String> sourceIds(UnifiedQueryResult result) {
+        Set<String> ids = new HashSet<>();
+        if (result.getSources() != null) {
+            for (KnowledgeDocument doc : result.getSources()) {
+                ids.add(doc.getId());
+            }
+        }
+        return ids;
+    }
+
+    private void recordFalseHit(String question, SemanticHit hit) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("question", question);
+        record.put("matchedQuestion", hit.matchedQuestion());
+        record.put("similarity", hit.similarity());
+        synchronized (recentFalseHits) {
+            recentFalseHits.addFirst(record);
+            while (recentFalseHits.size() > RECENT_FALSE_HITS) {
+                recentFalseHits.removeLast();
+            }
+        }
+    }
+
+    // Clase interna para almacenar preguntas respondidas
+    private record Entry(String key, String question, UnifiedQueryResult result, long timestamp,
+                         Map<String, Long> dependencies) {
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.qaassistant.service.ollama;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Compara el throughput de llamadas lentas y bloqueantes al LLM ejecutadas en un pool fijo de hilos
+ * de plataforma (el modelo de Tomcat) frente a un hilo virtual por petición.
+ *
+ * Un servidor HTTP local simula /api/generate de Ollama con un retardo fijo. Cada llamada ocupa su
+ * hilo durante todo el retardo, igual que una petición a /ask-enhanced esperando al modelo: con N hilos
+ * de plataforma el throughput queda limitado a N / retardo, mientras que los hilos virtuales sueltan
+ * el portador durante la espera y dejan que las C llamadas concurrentes avancen a la vez.
+ */
+@Component
+@ConditionalOnProperty(name = "app.benchmarks.enabled", havingValue = "true")
+public class VirtualThreadBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadBenchmark.class);
+    private static final byte[] STUB_RESPONSE =
+            "{\"model\":\"stub\",\"response\":\"SELECT COUNT(*) FROM aplicacion\",\"done\":true}"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * @param calls       llamadas totales por configuración
+     * @param concurrency llamadas lanzadas a la vez (peticiones concurrentes de clientes)
+     * @param llmDelayMs  latencia simulada de cada respuesta del LLM
+     * @param poolSizes   tamaños de pool de plataforma a comparar con los hilos virtuales
+     */
+    public Map<String, Object> run(int calls, int concurrency, long llmDelayMs, List<Integer> poolSizes)
+            throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                Math.max(concurrency, 50));
+        // El stub atiende cada petición en su propio hilo virtual para no ser él el cuello de botella
+        ExecutorService stubExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(stubExecutor);
+        server.createContext("/api/generate", exchange -> respond(exchange, llmDelayMs));
+        server.start();
+
+        URI uri = URI.create("http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/api/generate");
+        List<Map<String, Object>> results = new ArrayList<>();
+        try (HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build()) {
+            for (int poolSize : poolSizes) {
+                int threads = Math.max(poolSize, 1);
+                results.add(measure("platform-" + threads, client, uri, calls, concurrency,
+                        () -> Executors.newFixedThreadPool(threads)));
+            }
+            results.add(measure("virtual", client, uri, calls, concurrency,
+                    Executors::newVirtualThreadPerTaskExecutor));
+        } finally {
+            server.stop(0);
+            stubExecutor.shutdownNow();
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("calls", calls);
+        report.put("concurrency", concurrency);
+        report.put("llmDelayMs", llmDelayMs);
+        report.put("idealCallsPerSecond", concurrency * 1000.0 / Math.max(llmDelayMs, 1));
+        report.put("results", results);
+        return report;
+    }
+
+    private Map<String, Object> measure(String mode, HttpClient client, URI uri, int calls, int concurrency,
+                                        Supplier<ExecutorService> executorFactory) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        threadBean.resetPeakThreadCount();
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMinutes(2))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"model\":\"stub\",\"prompt\":\"benchmark\",\"stream\":false}"))
+                .header("Content-Type", "application/json")
+                .build();
+
+        long[] latencies = new long[calls];
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService executor = executorFactory.get()) {
+            // Se lanzan como mucho 'concurrency' llamadas a la vez, igual que C clientes esperando respuesta
+            for (int from = 0; from < calls; from += concurrency) {
+                int to = Math.min(from + concurrency, calls);
+                List<Future<?>> wave = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    int index = i;
+                    long submitted = System.nanoTime();
+                    wave.add(executor.submit(() -> {
+                        try {
+                            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                            if (response.statusCode() != 200) {
+                                failed.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            failed.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            failed.incrementAndGet();
+                        }
+                        // Incluye la espera en la cola del pool: es la latencia que vería el cliente
+                        latencies[index] = System.nanoTime() - submitted;
+                    }));
+                }
+                awaitAll(wave, failed);
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", mode);
+        result.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        result.put("callsPerSecond", calls * 1_000_000_000.0 / Math.max(elapsedNanos, 1));
+        result.put("p50Ms", percentileMs(sorted, 0.50));
+        result.put("p99Ms", percentileMs(sorted, 0.99));
+        result.put("failed", failed.get());
+        // Solo cuenta hilos de plataforma: los virtuales no aparecen en ThreadMXBean
+        result.put("peakPlatformThreads", threadBean.getPeakThreadCount());
+        log.info("Benchmark hilos: modo={} llamadas/s={} p99={} ms", mode,
+                String.format("%.1f", result.get("callsPerSecond")), result.get("p99Ms"));
+        return result;
+    }
+
+    // Métodos auxiliares
+
+    private static void awaitAll(List<Future<?>> futures, AtomicInteger failed) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return Math.round(sorted[Math.max(index, 0)] / 10_000.0) / 100.0;
+    }
+
+    private static void respond(HttpExchange exchange, long delayMs) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        try {
+            TimeUnit.MILLISECONDS.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, STUB_RESPONSE.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(STUB_RESPONSE);
+        }
+    }
+}
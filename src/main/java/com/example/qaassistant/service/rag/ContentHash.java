@@ -0,0 +1,38 @@
+package com.example.qaassistant.service.rag;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hash de contenido estable entre ejecuciones (SHA-256), a diferencia de String.hashCode().
+ */
+public final class ContentHash {
+
+    private ContentHash() {
+    }
+
+    public static String sha256(String text) {
+        return HexFormat.of().formatHex(digest(text == null ? "" : text));
+    }
+
+    /**
+     * Hash de todo lo que define un documento (título, contenido y metadatos en orden de clave),
+     * para detectar cambios aunque no afecten al contenido embebido.
+     */
+    public static String ofDocument(String title, String content, Map<String, Object> metadata) {
+        Map<String, Object> sorted = metadata == null ? Map.of() : new TreeMap<>(metadata);
+        return sha256((title == null ? "" : title) + '\u0000' + (content == null ? "" : content) + '\u0000' + sorted);
+    }
+
+    private static byte[] digest(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible en la JVM", e);
+        }
+    }
+}
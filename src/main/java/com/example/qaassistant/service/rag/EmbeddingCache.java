@@ -0,0 +1,120 @@
+package com.example.qaassistant.service.rag;
+
+import com.example.qaassistant.service.QuestionNormalizer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache LRU de embeddings acotada por peso (dimensión × 4 bytes por vector).
+ *
+ * La clave son 128 bits del SHA-256 de modelo + texto (con NFKC y espacios colapsados), de modo
+ * que dos textos distintos no comparten entrada y cambiar de modelo nunca devuelve vectores del anterior. Los vectores
+ * se guardan como float[] y se devuelven sin copiar: los llamadores no deben modificarlos.
+ */
+public class EmbeddingCache {
+
+    private final long maxWeightBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, float[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long weightBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public EmbeddingCache(long maxWeightBytes) {
+        this.maxWeightBytes = Math.max(maxWeightBytes, 0);
+    }
+
+    public static String key(String model, String text) {
+        return QuestionNormalizer.hash128(model + '\0' + QuestionNormalizer.normalizeText(text));
+    }
+
+    public float[] get(String key) {
+        float[] vector;
+        lock.lock();
+        try {
+            vector = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (vector != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return vector;
+    }
+
+    public void put(String key, float[] vector) {
+        long weight = weigh(vector);
+        if (weight > maxWeightBytes) {
+            return;
+        }
+        lock.lock();
+        try {
+            float[] previous = entries.put(key, vector);
+            if (previous != null) {
+                weightBytes -= weigh(previous);
+            }
+            weightBytes += weight;
+
+            // Expulsar las entradas menos usadas recientemente hasta volver al límite
+            Iterator<Map.Entry<String, float[]>> eldest = entries.entrySet().iterator();
+            while (weightBytes > maxWeightBytes && eldest.hasNext()) {
+                Map.Entry<String, float[]> entry = eldest.next();
+                weightBytes -= weigh(entry.getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            weightBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("entries", entries.size());
+            stats.put("weightBytes", weightBytes);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxWeightBytes", maxWeightBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.sum());
+        stats.put("hitRate", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+        return stats;
+    }
+
+    private static long weigh(float[] vector) {
+        return (long) vector.length * Float.BYTES;
+    }
+}
@@ -0,0 +1,456 @@
+package com.example.qaassistant.service.rag;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Segundo nivel de la cache de embeddings: fichero clave-valor append-only que sobrevive a reinicios.
+ *
+ * Cada registro es [longitud][crc32][clave][modelo][dimensión][floats]. La clave es el hash de
+ * modelo + texto y el modelo se guarda aparte, así que al cambiar 'ollama.embedding.model' solo
+ * se indexan los registros del modelo activo. Las lecturas van sobre el fichero mapeado en memoria
+ * y las escrituras se encolan para un hilo de fondo (write-behind): si la cola está llena el
+ * vector se descarta del disco en lugar de bloquear la petición.
+ *
+ * Compactación: al abrir con registros de otros modelos, o cuando una escritura no cabe en
+ * 'max-bytes', el fichero se reescribe solo con los registros vivos del modelo activo. Si aun así
+ * ocupan más de 3/4 del límite se conservan los más recientes hasta la mitad (cache rodante), de
+ * modo que el disco nunca se queda lleno para siempre. Las escrituras descartadas cuentan en las
+ * estadísticas.
+ */
+@Component
+public class EmbeddingDiskCache {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingDiskCache.class);
+    private static final String FILE_NAME = "embeddings.ecache";
+    private static final String COMPACTION_FILE_NAME = FILE_NAME + ".tmp";
+
+    @Value("${ollama.embedding.cache.disk.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ollama.embedding.cache.disk.dir:./data/embedding-cache}")
+    private String directory;
+
+    @Value("${ollama.embedding.cache.disk.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${ollama.embedding.cache.disk.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private String model;
+    private Path file;
+    private FileChannel channel;
+    // Posiciones y fichero mapeado se publican juntos: la compactación cambia ambos a la vez
+    private volatile Index index = new Index(new ConcurrentHashMap<>(), null);
+    private final Map<String, float[]> pending = new ConcurrentHashMap<>();
+    private BlockingQueue<String> writeQueue;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder droppedWrites = new LongAdder();
+    private final LongAdder droppedWritesDiskFull = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder evictedRecords = new LongAdder();
+    private final LongAdder reclaimedBytes = new LongAdder();
+
+    /**
+     * Abre (o crea) el fichero, indexa los registros del modelo indicado y arranca el escritor de fondo.
+     */
+    public synchronized void open(String model) {
+        this.model = model;
+        if (!enabled || channel != null) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(directory);
+            Files.createDirectories(dir);
+            file = dir.resolve(FILE_NAME);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Map<String, Integer> offsets = new ConcurrentHashMap<>();
+            int skipped = readIndex(offsets);
+            index = new Index(offsets, map());
+            if (skipped > 0) {
+                // Registros de otros modelos: ocupan sitio sin poder leerse nunca
+                compact();
+            }
+
+            writeQueue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+            running = true;
+            writer = new Thread(this::drainLoop, "embedding-disk-writer");
+            writer.setDaemon(true);
+            writer.start();
+
+            log.info("💽 EmbeddingDiskCache: {} embeddings de {} en disco ({} de otros modelos descartados)",
+                    index.offsets().size(), model, skipped);
+        } catch (IOException e) {
+            log.error("❌ EmbeddingDiskCache: Error abriendo la cache en disco, se continúa sin ella", e);
+            enabled = false;
+        }
+    }
+
+    public float[] get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        float[] vector = pending.get(key);
+        if (vector == null) {
+            Index current = index;
+            Integer offset = current.offsets().get(key);
+            if (offset != null && current.buffer() != null) {
+                vector = readVector(current.buffer(), offset);
+            }
+        }
+        if (vector != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return vector;
+    }
+
+    /**
+     * Encola el vector para escribirlo en segundo plano. Nunca bloquea.
+     */
+    public void put(String key, float[] vector) {
+        if (!enabled || !running || index.offsets().containsKey(key)) {
+            return;
+        }
+        if (pending.putIfAbsent(key, vector) == null && !writeQueue.offer(key)) {
+            pending.remove(key);
+            droppedWrites.increment();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("directory", directory);
+        Index current = index;
+        stats.put("entries", current.offsets().size());
+        stats.put("pendingWrites", pending.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("writes", writes.sum());
+        // Total de descartes (cola llena o disco lleno tras compactar) y, aparte, los de disco lleno
+        stats.put("droppedWrites", droppedWrites.sum());
+        stats.put("droppedWritesDiskFull", droppedWritesDiskFull.sum());
+        stats.put("compactions", compactions.sum());
+        stats.put("evictedRecords", evictedRecords.sum());
+        stats.put("reclaimedBytes", reclaimedBytes.sum());
+        stats.put("diskBytes", current.buffer() != null ? current.buffer().capacity() : 0);
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        // Sin interrupt: interrumpir una escritura en FileChannel cerraría el canal
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (channel != null && channel.isOpen()) {
+                try {
+                    flush(new ArrayList<>(writeQueue));
+                    channel.force(true);
+                    channel.close();
+                } catch (IOException e) {
+                    log.warn("EmbeddingDiskCache: Error cerrando la cache en disco", e);
+                }
+            }
+        }
+    }
+
+    // Escritor de fondo
+
+    private void drainLoop() {
+        List<String> batch = new ArrayList<>();
+        while (running) {
+            try {
+                String first = writeQueue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                writeQueue.drainTo(batch);
+                synchronized (this) {
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                log.error("❌ EmbeddingDiskCache: Error escribiendo embeddings en disco", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<String> keys) throws IOException {
+        if (keys.isEmpty() || !channel.isOpen()) {
+            return;
+        }
+        long position = channel.size();
+        boolean compacted = false;
+        int dropped = 0;
+        Map<String, Integer> written = new LinkedHashMap<>();
+        for (String key : keys) {
+            float[] vector = pending.get(key);
+            if (vector == null || index.offsets().containsKey(key)) {
+                continue;
+            }
+            byte[] payload = encode(key, vector);
+            long recordBytes = Integer.BYTES * 2L + payload.length;
+            if (position + recordBytes > limit() && recordBytes <= limit() && !compacted) {
+                // Lo escrito hasta ahora se publica antes de reescribir el fichero
+                publish(written);
+                written.clear();
+                compact();
+                compacted = true;
+                position = channel.size();
+            }
+            if (position + recordBytes > limit()) {
+                droppedWrites.increment();
+                droppedWritesDiskFull.increment();
+                dropped++;
+                continue;
+            }
+            position = writeRecord(channel, position, payload);
+            // Se indexa la posición de [dimensión], justo antes de los floats
+            written.put(key, (int) (position - Integer.BYTES - (long) vector.length * Float.BYTES));
+        }
+        publish(written);
+        for (String key : keys) {
+            pending.remove(key);
+        }
+        if (dropped > 0) {
+            log.warn("⚠️ EmbeddingDiskCache: {} embeddings descartados, el disco sigue lleno tras compactar ({} bytes)",
+                    dropped, maxBytes);
+        }
+    }
+
+    private void publish(Map<String, Integer> written) throws IOException {
+        if (written.isEmpty()) {
+            return;
+        }
+        Index current = index;
+        index = new Index(current.offsets(), map());
+        current.offsets().putAll(written);
+        writes.add(written.size());
+    }
+
+    /**
+     * Reescribe el fichero con los registros vivos del modelo activo, en orden de antigüedad. Si ocupan
+     * más de 3/4 del límite solo se conservan los más recientes que quepan en la mitad.
+     * Se llama con el monitor tomado.
+     */
+    private void compact() throws IOException {
+        Index current = index;
+        long sizeBefore = channel.size();
+        List<Map.Entry<String, Integer>> live = new ArrayList<>(current.offsets().entrySet());
+        // La posición en el fichero es el orden de escritura: los primeros son los más antiguos
+        live.sort(Map.Entry.comparingByValue());
+        long[] recordBytes = new long[live.size()];
+        long liveBytes = 0;
+        for (int i = 0; i < live.size(); i++) {
+            int dimension = current.buffer().getInt(live.get(i).getValue());
+            recordBytes[i] = Integer.BYTES * 2L + payloadBytes(live.get(i).getKey(), dimension);
+            liveBytes += recordBytes[i];
+        }
+        long budget = liveBytes > limit() * 3 / 4 ? limit() / 2 : limit();
+        int first = live.size();
+        long keptBytes = 0;
+        while (first > 0 && keptBytes + recordBytes[first - 1] <= budget) {
+            first--;
+            keptBytes += recordBytes[first];
+        }
+
+        Path compacted = file.resolveSibling(COMPACTION_FILE_NAME);
+        Map<String, Integer> offsets = new ConcurrentHashMap<>();
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (int i = first; i < live.size(); i++) {
+                String key = live.get(i).getKey();
+                float[] vector = readVector(current.buffer(), live.get(i).getValue());
+                position = writeRecord(out, position, encode(key, vector));
+                offsets.put(key, (int) (position - Integer.BYTES - (long) vector.length * Float.BYTES));
+            }
+            out.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(compacted);
+            throw e;
+        }
+
+        // El mapeo anterior sigue siendo válido para los lectores en curso aunque se cierre el canal
+        channel.close();
+        try {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            log.error("❌ EmbeddingDiskCache: Error sustituyendo el fichero compactado, se desactiva la cache en disco", e);
+            running = false;
+            enabled = false;
+            throw e;
+        }
+        index = new Index(offsets, map());
+
+        compactions.increment();
+        evictedRecords.add(first);
+        reclaimedBytes.add(Math.max(sizeBefore - channel.size(), 0));
+        log.info("🗜️ EmbeddingDiskCache: Compactado de {} a {} bytes ({} registros vivos, {} antiguos expulsados)",
+                sizeBefore, channel.size(), offsets.size(), first);
+    }
+
+    // Lectura e índice
+
+    private int readIndex(Map<String, Integer> offsets) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return 0;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        long validEnd = 0;
+        int skipped = 0;
+        while (buffer.remaining() >= Integer.BYTES * 2) {
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            if (crc != (int) crc32(payload.duplicate())) {
+                break;
+            }
+            String key = readString(payload);
+            String recordModel = readString(payload);
+            if (recordModel.equals(model)) {
+                offsets.put(key, buffer.position() + payload.position());
+            } else {
+                skipped++;
+            }
+            buffer.position(buffer.position() + length);
+            validEnd = buffer.position();
+        }
+        if (validEnd < size) {
+            // Cola incompleta (escritura interrumpida): se trunca para seguir añadiendo detrás
+            log.warn("⚠️ EmbeddingDiskCache: Fichero truncado en {} de {} bytes", validEnd, size);
+            channel.truncate(validEnd);
+        }
+        return skipped;
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        long size = channel.size();
+        return size > 0 ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+    }
+
+    // null si la posición es posterior al mapeo que tenía el lector (escritura concurrente)
+    private static float[] readVector(MappedByteBuffer buffer, int offset) {
+        if (offset + Integer.BYTES > buffer.capacity()) {
+            return null;
+        }
+        int dimension = buffer.getInt(offset);
+        if (offset + Integer.BYTES + (long) dimension * Float.BYTES > buffer.capacity()) {
+            return null;
+        }
+        float[] vector = new float[dimension];
+        buffer.slice(offset + Integer.BYTES, dimension * Float.BYTES).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private byte[] encode(String key, float[] vector) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96 + vector.length * Float.BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, key);
+        writeString(out, model);
+        out.writeInt(vector.length);
+        for (float value : vector) {
+            out.writeFloat(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Métodos auxiliares
+
+    private long limit() {
+        return Math.min(maxBytes, Integer.MAX_VALUE);
+    }
+
+    private static long writeRecord(FileChannel target, long position, byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc32(ByteBuffer.wrap(payload)));
+        record.put(payload);
+        record.flip();
+        while (record.hasRemaining()) {
+            position += target.write(record, position);
+        }
+        return position;
+    }
+
+    // Mismo tamaño que encode(): clave, modelo, dimensión y floats
+    private long payloadBytes(String key, int dimension) {
+        return Integer.BYTES + key.getBytes(StandardCharsets.UTF_8).length
+                + Integer.BYTES + (model != null ? model : "").getBytes(StandardCharsets.UTF_8).length
+                + Integer.BYTES + (long) dimension * Float.BYTES;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long crc32(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+
+    private record Index(Map<String, Integer> offsets, MappedByteBuffer buffer) {
+    }
+}
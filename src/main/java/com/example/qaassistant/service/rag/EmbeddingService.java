@@ -1,55 +1,118 @@
 package com.example.qaassistant.service.rag;
 
 import com.example.qaassistant.model.rag.KnowledgeDocument;
+import com.example.qaassistant.service.rag.similarity.SimilarityKernels;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class EmbeddingService {
 
     private static final Logger log = LoggerFactory.getLogger(EmbeddingService.class);
 
-    @Value("${ollama.base.url:http://localhost:11434}")
+    // Misma URL lógica que el WebClient compartido, para que el balanceador reparta también los embeddings
+    @Value("${ollama.base.url:${ollama.base-url:http://localhost:11434}}")
     private String ollamaBaseUrl;
 
     @Value("${ollama.embedding.model:all-minilm}")
     private String embeddingModel;
 
-    @Value("${embedding.dimension:384}")
+    @Value("${ollama.embedding.dimension:384}")
     private int embeddingDimension;
 
-    @Value("${embedding.batch.size:10}")
+    @Value("${ollama.embedding.batch.size:10}")
     private int batchSize;
 
-    @Value("${embedding.cache.enabled:true}")
+    @Value("${ollama.embedding.cache.enabled:true}")
     private boolean cacheEnabled;
 
-    private final RestTemplate restTemplate;
-    private final ExecutorService executorService;
-    private final Map<String, List<Float>> embeddingCache;
+    // Peso máximo de la cache en memoria (dimensión × 4 bytes por vector)
+    @Value("${ollama.embedding.cache.max-bytes:67108864}")
+    private long cacheMaxBytes;
+
+    // Latencia objetivo por petición de lote: por encima se reduce el tamaño, muy por debajo se amplía
+    @Value("${ollama.embedding.batch.target-latency-ms:2000}")
+    private long batchTargetLatencyMs;
+
+    // Peticiones a Ollama en vuelo como máximo al embeber un lote de forma reactiva
+    @Value("${ollama.embedding.reactive.max-concurrency:4}")
+    private int maxConcurrency;
+
+    @Value("${ollama.embedding.reactive.timeout-ms:30000}")
+    private long requestTimeoutMs;
+
+    @Value("${ollama.embedding.reactive.max-retries:3}")
+    private int maxRetries;
 
-    public EmbeddingService() {
-        this.restTemplate = new RestTemplate();
-        this.executorService = Executors.newFixedThreadPool(4);
-        this.embeddingCache = new ConcurrentHashMap<>();
+    @Value("${ollama.embedding.reactive.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    @Value("${ollama.keep-alive:30m}")
+    private String keepAlive;
+
+    private final WebClient ollamaWebClient;
+    private WebClient webClient;
+    private EmbeddingCache embeddingCache;
+    private final EmbeddingDiskCache diskCache;
+
+    // Estado del lote adaptativo y métricas de throughput
+    private volatile int adaptiveBatchSize = -1;
+    private volatile boolean batchEndpointAvailable = true;
+    private final AtomicLong batchRequests = new AtomicLong();
+    private final AtomicLong batchFallbacks = new AtomicLong();
+    private final AtomicLong batchEmbeddedTexts = new AtomicLong();
+    private final AtomicLong batchNanos = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public EmbeddingService(EmbeddingDiskCache diskCache, WebClient ollamaWebClient) {
+        this.diskCache = diskCache;
+        this.ollamaWebClient = ollamaWebClient;
+    }
+
+    @PostConstruct
+    public void initClient() {
+        this.embeddingCache = new EmbeddingCache(cacheMaxBytes);
+        if (cacheEnabled) {
+            diskCache.open(embeddingModel);
+        }
+        // mutate() conserva el conector, así que los embeddings comparten el pool de conexiones de Ollama
+        this.webClient = ollamaWebClient.mutate()
+                .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .build();
+    }
+
+    // Resultado de embeber un texto dentro de un lote reactivo
+    public record EmbeddedText(String text, float[] vector) {
     }
 
     // DTO para la solicitud a Ollama
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class OllamaEmbeddingRequest {
         private String model;
         private String prompt;
+        @JsonProperty("keep_alive")
+        private String keepAlive;
 
         public OllamaEmbeddingRequest(String model, String prompt) {
             this.model = model;
@@ -72,6 +135,76 @@ public class EmbeddingService {
         public void setPrompt(String prompt) {
             this.prompt = prompt;
         }
+
+        public String getKeepAlive() {
+            return keepAlive;
+        }
+
+        public void setKeepAlive(String keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    // DTO para la solicitud en lote a /api/embed
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class OllamaEmbedBatchRequest {
+        private String model;
+        private List<String> input;
+        @JsonProperty("keep_alive")
+        private String keepAlive;
+
+        public OllamaEmbedBatchRequest(String model, List<String> input) {
+            this.model = model;
+            this.input = input;
+        }
+
+        // Getters y setters
+        public String getModel() {
+            return model;
+        }
+
+        public void setModel(String model) {
+            this.model = model;
+        }
+
+        public List<String> getInput() {
+            return input;
+        }
+
+        public void setInput(List<String> input) {
+            this.input = input;
+        }
+
+        public String getKeepAlive() {
+            return keepAlive;
+        }
+
+        public void setKeepAlive(String keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    // DTO para la respuesta en lote de /api/embed
+    public static class OllamaEmbedBatchResponse {
+        private String model;
+        private List<List<Float>> embeddings;
+
+        // Getters y setters
+        public String getModel() {
+            return model;
+        }
+
+        public void setModel(String model) {
+            this.model = model;
+        }
+
+        public List<List<Float>> getEmbeddings() {
+            return embeddings;
+        }
+
+        public void setEmbeddings(List<List<Float>> embeddings) {
+            this.embeddings = embeddings;
+        }
     }
 
     // DTO para la respuesta de Ollama
@@ -98,7 +231,10 @@ public class EmbeddingService {
     }
 
     /**
-     * Genera embeddings usando Ollama
+     * Genera embeddings usando Ollama.
+     *
+     * Si Ollama falla devuelve un vector aleatorio que no se cachea: vale para una consulta puntual,
+     * nunca para indexar (el vector store usa embed() y descarta el documento si falla).
      */
     public List<Float> generateEmbedding(String text) {
         if (text == null || text.trim().isEmpty()) {
@@ -106,75 +242,228 @@ public class EmbeddingService {
             return generateRandomEmbedding();
         }
 
+        try {
+            float[] vector = embed(text).block();
+            if (vector != null && vector.length > 0) {
+                log.debug("Embedding generado exitosamente. Dimensión: {}", vector.length);
+                return toList(vector);
+            }
+
+            log.warn("Respuesta inválida de Ollama, generando embedding aleatorio");
+            return generateRandomEmbedding();
+
+        } catch (Exception e) {
+            log.error("Error generando embedding con Ollama: {}", e.getMessage(), e);
+            return generateRandomEmbedding();
+        }
+    }
+
+    /**
+     * Embedding no bloqueante de un texto, con cache, timeout por petición y reintentos con jitter
+     */
+    public Mono<float[]> embed(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return Mono.error(new IllegalArgumentException("Texto vacío para generar embedding"));
+        }
         String cacheKey = generateCacheKey(text);
-        if (cacheEnabled && embeddingCache.containsKey(cacheKey)) {
+        float[] cached = cachedVector(cacheKey);
+        if (cached != null) {
             log.debug("Embedding encontrado en cache para texto: {}", text.substring(0, Math.min(50, text.length())));
-            return new ArrayList<>(embeddingCache.get(cacheKey));
+            return Mono.just(cached);
         }
+        log.debug("Solicitando embedding para texto: {}", text.substring(0, Math.min(100, text.length())));
+        return resilient(requestEmbedding(ollamaBaseUrl, text))
+                .filter(embedding -> !embedding.isEmpty())
+                .map(embedding -> cacheVector(cacheKey, toPrimitive(embedding)));
+    }
 
-        try {
-            String url = ollamaBaseUrl + "/api/embeddings";
+    /**
+     * Embeddings no bloqueantes de un conjunto de textos.
+     *
+     * Los textos que no están en cache se agrupan en lotes para /api/embed, cuyo tamaño se adapta
+     * a la latencia observada, y como mucho 'ollama.embedding.reactive.max-concurrency' peticiones están
+     * en vuelo a la vez. Los textos se leen bajo demanda, así que el suscriptor controla el ritmo
+     * y no se acumula una cola sin límite. Si un lote falla se recurre a llamadas individuales.
+     */
+    public Flux<EmbeddedText> embedAll(Collection<String> texts) {
+        List<String> pending = new ArrayList<>();
+        List<EmbeddedText> hits = new ArrayList<>();
+        for (String text : new LinkedHashSet<>(texts)) {
+            if (text == null || text.trim().isEmpty()) {
+                continue;
+            }
+            float[] cached = cachedVector(generateCacheKey(text));
+            if (cached != null) {
+                hits.add(new EmbeddedText(text, cached));
+            } else {
+                pending.add(text);
+            }
+        }
 
-            OllamaEmbeddingRequest request = new OllamaEmbeddingRequest(embeddingModel, text);
+        AtomicInteger buffered = new AtomicInteger();
+        Flux<EmbeddedText> fetched = Flux.fromIterable(pending)
+                .bufferUntil(text -> {
+                    if (buffered.incrementAndGet() >= currentBatchSize()) {
+                        buffered.set(0);
+                        return true;
+                    }
+                    return false;
+                })
+                .flatMap(this::embedChunk, Math.max(maxConcurrency, 1));
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        return Flux.fromIterable(hits).concatWith(fetched);
+    }
 
-            HttpEntity<OllamaEmbeddingRequest> entity = new HttpEntity<>(request, headers);
+    /**
+     * Genera embeddings en lote para mejor performance.
+     *
+     * Versión bloqueante de {@link #embedAll(Collection)} para llamadores no reactivos.
+     */
+    public Map<String, List<Float>> generateEmbeddingsBatch(List<String> texts) {
+        Map<String, List<Float>> results = new HashMap<>();
+        embedAll(texts)
+                .doOnNext(embedded -> results.put(embedded.text(), toList(embedded.vector())))
+                .blockLast();
+        return results;
+    }
 
-            log.debug("Solicitando embedding para texto: {}", text.substring(0, Math.min(100, text.length())));
+    /**
+     * Envía un lote a /api/embed y ajusta el tamaño de lote según la latencia.
+     * Si el lote falla, sus textos se embeben uno a uno con la misma concurrencia acotada.
+     */
+    private Flux<EmbeddedText> embedChunk(List<String> chunk) {
+        if (!batchEndpointAvailable) {
+            return embedIndividually(chunk);
+        }
+        return Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return resilient(requestEmbedBatch(ollamaBaseUrl, chunk))
+                            .doOnNext(embeddings -> recordBatch(chunk.size(), System.nanoTime() - start));
+                })
+                .flatMapMany(embeddings -> {
+                    if (embeddings.size() != chunk.size()) {
+                        log.warn("Respuesta de /api/embed incompleta ({} de {} embeddings), se usan llamadas individuales",
+                                embeddings.size(), chunk.size());
+                        shrinkBatchSize();
+                        return embedIndividually(chunk);
+                    }
+                    List<EmbeddedText> results = new ArrayList<>(chunk.size());
+                    for (int i = 0; i < chunk.size(); i++) {
+                        float[] vector = cacheVector(generateCacheKey(chunk.get(i)), toPrimitive(embeddings.get(i)));
+                        results.add(new EmbeddedText(chunk.get(i), vector));
+                    }
+                    return Flux.fromIterable(results);
+                })
+                .onErrorResume(e -> {
+                    if (e instanceof WebClientResponseException.NotFound) {
+                        // Versiones antiguas de Ollama solo exponen /api/embeddings
+                        log.warn("Ollama no expone /api/embed, se desactiva el modo lote");
+                        batchEndpointAvailable = false;
+                    } else {
+                        log.warn("Error en lote de embeddings ({} textos): {}", chunk.size(), e.getMessage());
+                        shrinkBatchSize();
+                    }
+                    return embedIndividually(chunk);
+                });
+    }
 
-            ResponseEntity<OllamaEmbeddingResponse> response = restTemplate.postForEntity(
-                    url, entity, OllamaEmbeddingResponse.class);
+    /**
+     * Camino alternativo: una llamada a /api/embeddings por texto, con la concurrencia acotada
+     */
+    private Flux<EmbeddedText> embedIndividually(List<String> texts) {
+        batchFallbacks.incrementAndGet();
+        return Flux.fromIterable(texts)
+                .flatMap(text -> embed(text)
+                        .map(vector -> new EmbeddedText(text, vector))
+                        .onErrorResume(e -> {
+                            log.error("Error procesando embedding en lote: {}", e.getMessage());
+                            return Mono.empty();
+                        }), Math.max(maxConcurrency, 1));
+    }
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                List<Float> embedding = response.getBody().getEmbedding();
+    private void recordBatch(int sent, long elapsedNanos) {
+        batchRequests.incrementAndGet();
+        batchEmbeddedTexts.addAndGet(sent);
+        batchNanos.addAndGet(elapsedNanos);
+        adaptBatchSize(sent, elapsedNanos / 1_000_000);
+    }
 
-                if (embedding != null && !embedding.isEmpty()) {
-                    if (cacheEnabled) {
-                        embeddingCache.put(cacheKey, new ArrayList<>(embedding));
-                    }
+    /**
+     * Ajuste AIMD: se reduce a la mitad si el lote supera la latencia objetivo y se
+     * amplía de uno en uno (hasta 'ollama.embedding.batch.size') si queda por debajo de la mitad.
+     */
+    private void adaptBatchSize(int sent, long elapsedMs) {
+        int current = currentBatchSize();
+        if (elapsedMs > batchTargetLatencyMs) {
+            adaptiveBatchSize = Math.max(1, current / 2);
+        } else if (elapsedMs < batchTargetLatencyMs / 2 && sent >= current) {
+            adaptiveBatchSize = Math.min(Math.max(batchSize, 1), current + 1);
+        }
+    }
 
-                    log.debug("Embedding generado exitosamente. Dimensión: {}", embedding.size());
-                    return embedding;
-                }
-            }
+    private void shrinkBatchSize() {
+        adaptiveBatchSize = Math.max(1, currentBatchSize() / 2);
+    }
 
-            log.warn("Respuesta inválida de Ollama, generando embedding aleatorio");
-            return generateRandomEmbedding();
+    private int currentBatchSize() {
+        int size = adaptiveBatchSize;
+        return size > 0 ? size : Math.max(batchSize, 1);
+    }
 
-        } catch (Exception e) {
-            log.error("Error generando embedding con Ollama: {}", e.getMessage(), e);
-            return generateRandomEmbedding();
+    /**
+     * Aplica a una petición el timeout por intento y los reintentos con backoff exponencial y jitter.
+     * Solo se reintentan errores transitorios (red, timeout, 429 y 5xx).
+     */
+    private <T> Mono<T> resilient(Mono<T> request) {
+        return Mono.defer(() -> {
+                    inFlight.incrementAndGet();
+                    return request.timeout(Duration.ofMillis(requestTimeoutMs))
+                            .doFinally(signal -> inFlight.decrementAndGet());
+                })
+                .retryWhen(Retry.backoff(Math.max(maxRetries, 0), Duration.ofMillis(Math.max(retryBackoffMs, 1)))
+                        .jitter(0.5)
+                        .filter(EmbeddingService::isTransient)
+                        .doBeforeRetry(signal -> retries.incrementAndGet())
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private static boolean isTransient(Throwable e) {
+        if (e instanceof TimeoutException || e instanceof WebClientRequestException) {
+            return true;
         }
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError()
+                    || response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+        }
+        return false;
     }
 
     /**
-     * Genera embeddings en lote para mejor performance
+     * Petición de un único embedding a /api/embeddings
      */
-    public Map<String, List<Float>> generateEmbeddingsBatch(List<String> texts) {
-        Map<String, List<Float>> results = new HashMap<>();
-        List<Future<EmbeddingResult>> futures = new ArrayList<>();
-
-        for (String text : texts) {
-            Future<EmbeddingResult> future = executorService.submit(() -> {
-                List<Float> embedding = generateEmbedding(text);
-                return new EmbeddingResult(text, embedding);
-            });
-            futures.add(future);
-        }
-
-        for (Future<EmbeddingResult> future : futures) {
-            try {
-                EmbeddingResult result = future.get();
-                results.put(result.text, result.embedding);
-            } catch (Exception e) {
-                log.error("Error procesando embedding en lote: {}", e.getMessage());
-            }
-        }
+    Mono<List<Float>> requestEmbedding(String baseUrl, String text) {
+        OllamaEmbeddingRequest request = new OllamaEmbeddingRequest(embeddingModel, text);
+        request.setKeepAlive(keepAlive);
+        return webClient.post()
+                .uri(baseUrl + "/api/embeddings")
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(OllamaEmbeddingResponse.class)
+                .mapNotNull(OllamaEmbeddingResponse::getEmbedding);
+    }
 
-        return results;
+    /**
+     * Petición en lote a /api/embed con el array 'input'
+     */
+    Mono<List<List<Float>>> requestEmbedBatch(String baseUrl, List<String> texts) {
+        OllamaEmbedBatchRequest request = new OllamaEmbedBatchRequest(embeddingModel, new ArrayList<>(texts));
+        request.setKeepAlive(keepAlive);
+        return webClient.post()
+                .uri(baseUrl + "/api/embed")
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(OllamaEmbedBatchResponse.class)
+                .mapNotNull(OllamaEmbedBatchResponse::getEmbeddings);
     }
 
     /**
@@ -188,38 +477,34 @@ public class EmbeddingService {
         }
 
         try {
-            float dotProduct = 0.0f;
-            float norm1 = 0.0f;
-            float norm2 = 0.0f;
-
-            for (int i = 0; i < embedding1.size(); i++) {
-                Float val1 = embedding1.get(i);
-                Float val2 = embedding2.get(i);
-
-                if (val1 == null || val2 == null) {
-                    continue;
-                }
-
-                dotProduct += val1 * val2;
-                norm1 += val1 * val1;
-                norm2 += val2 * val2;
-            }
-
-            if (norm1 <= 0 || norm2 <= 0) {
-                return 0.0f;
-            }
-
-            float similarity = (float) (dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2)));
-
-            // Asegurar que esté en el rango [-1, 1]
-            return Math.max(-1.0f, Math.min(1.0f, similarity));
-
+            // Se desempaqueta una sola vez y el bucle corre sobre arrays primitivos (SIMD si está disponible)
+            return SimilarityKernels.get().cosine(toPrimitive(embedding1), toPrimitive(embedding2));
         } catch (Exception e) {
             log.error("Error calculando similitud: {}", e.getMessage(), e);
             return 0.0f;
         }
     }
 
+    /**
+     * Convierte un embedding en lista a array primitivo (los valores nulos cuentan como 0)
+     */
+    public static float[] toPrimitive(List<Float> embedding) {
+        float[] vector = new float[embedding.size()];
+        int i = 0;
+        for (Float value : embedding) {
+            vector[i++] = value != null ? value : 0f;
+        }
+        return vector;
+    }
+
+    public static List<Float> toList(float[] vector) {
+        List<Float> embedding = new ArrayList<>(vector.length);
+        for (float value : vector) {
+            embedding.add(value);
+        }
+        return embedding;
+    }
+
     /**
      * Encuentra los documentos más similares usando embeddings
      */
@@ -231,7 +516,9 @@ public class EmbeddingService {
         try {
             List<Float> queryEmbedding = generateEmbedding(query);
 
-            List<SimilarityResult> similarities = new ArrayList<>();
+            // Min-heap acotado a topK: solo se crea un SimilarityResult si entra entre los mejores
+            PriorityQueue<SimilarityResult> best = new PriorityQueue<>(topK + 1,
+                    Comparator.comparingDouble((SimilarityResult result) -> result.similarity));
 
             for (KnowledgeDocument doc : documents) {
                 List<Float> docEmbedding;
@@ -246,14 +533,18 @@ public class EmbeddingService {
                 }
 
                 float similarity = calculateSimilarity(queryEmbedding, docEmbedding);
-                similarities.add(new SimilarityResult(doc, similarity));
+                if (best.size() < topK) {
+                    best.add(new SimilarityResult(doc, similarity));
+                } else if (topK > 0 && similarity > best.peek().similarity) {
+                    best.poll();
+                    best.add(new SimilarityResult(doc, similarity));
+                }
             }
 
-            // Ordenar por similitud descendente y tomar topK
-            return similarities.stream()
-                    .sorted((a, b) -> Float.compare(b.similarity, a.similarity))
-                    .limit(topK)
-                    .toList();
+            // Ordenar por similitud descendente los topK retenidos
+            List<SimilarityResult> results = new ArrayList<>(best);
+            results.sort((a, b) -> Float.compare(b.similarity, a.similarity));
+            return results;
 
         } catch (Exception e) {
             log.error("Error buscando documentos similares: {}", e.getMessage(), e);
@@ -271,39 +562,36 @@ public class EmbeddingService {
         }
 
         log.info("📚 Indexando {} documentos usando embeddings...", documents.size());
+        long start = System.currentTimeMillis();
 
-        int batchCount = (int) Math.ceil((double) documents.size() / batchSize);
-
-        for (int i = 0; i < batchCount; i++) {
-            int fromIndex = i * batchSize;
-            int toIndex = Math.min(fromIndex + batchSize, documents.size());
-            List<KnowledgeDocument> batch = documents.subList(fromIndex, toIndex);
-
-            log.info("Procesando lote {}/{} ({} documentos)", i + 1, batchCount, batch.size());
-
-            // Generar embeddings para el lote
-            List<String> contents = batch.stream()
-                    .map(KnowledgeDocument::getContent)
-                    .toList();
+        // embedAll trocea en lotes adaptativos con concurrencia acotada y aprovecha la cache;
+        // solo el hilo que indexa espera, el resto del trabajo es no bloqueante
+        Map<String, List<KnowledgeDocument>> byContent = new HashMap<>();
+        for (KnowledgeDocument doc : documents) {
+            byContent.computeIfAbsent(doc.getContent(), content -> new ArrayList<>()).add(doc);
+        }
 
-            Map<String, List<Float>> embeddings = generateEmbeddingsBatch(contents);
+        embedAll(byContent.keySet())
+                .doOnNext(embedded -> {
+                    // Asignar embeddings a los documentos
+                    for (KnowledgeDocument doc : byContent.get(embedded.text())) {
+                        doc.setEmbedding(toList(embedded.vector()));
+                        log.debug("Documento indexado: {}...",
+                                doc.getContent().substring(0, Math.min(50, doc.getContent().length())));
+                    }
+                })
+                .blockLast();
 
-            // Asignar embeddings a los documentos
-            for (KnowledgeDocument doc : batch) {
-                List<Float> embedding = embeddings.get(doc.getContent());
-                if (embedding != null) {
-                    doc.setEmbedding(embedding);
-                    log.debug("Documento indexado: {}...",
-                            doc.getContent().substring(0, Math.min(50, doc.getContent().length())));
-                }
-            }
-        }
+        log.info("✅ Indexación completada para {} documentos en {} ms (lote actual: {})",
+                documents.size(), System.currentTimeMillis() - start, currentBatchSize());
+    }
 
-        log.info("✅ Indexación completada para {} documentos", documents.size());
+    public String getEmbeddingModel() {
+        return embeddingModel;
     }
 
     /**
-     * Limpia la cache de embeddings
+     * Limpia la cache de embeddings en memoria (la de disco se conserva entre reinicios)
      */
     public void clearCache() {
         embeddingCache.clear();
@@ -317,10 +605,22 @@ public class EmbeddingService {
         Map<String, Object> stats = new HashMap<>();
         stats.put("cacheSize", embeddingCache.size());
         stats.put("cacheEnabled", cacheEnabled);
+        stats.put("cache", embeddingCache.getStats());
+        stats.put("diskCache", diskCache.getStats());
         stats.put("embeddingModel", embeddingModel);
         stats.put("embeddingDimension", embeddingDimension);
         stats.put("batchSize", batchSize);
+        stats.put("adaptiveBatchSize", currentBatchSize());
+        stats.put("batchEndpointAvailable", batchEndpointAvailable);
+        stats.put("batchRequests", batchRequests.get());
+        stats.put("batchFallbacks", batchFallbacks.get());
+        long nanos = batchNanos.get();
+        stats.put("embeddingRetries", retries.get());
+        stats.put("inFlightRequests", inFlight.get());
+        stats.put("maxConcurrency", maxConcurrency);
+        stats.put("batchTextsPerSecond", nanos > 0 ? batchEmbeddedTexts.get() * 1_000_000_000.0 / nanos : 0.0);
         stats.put("ollamaUrl", ollamaBaseUrl);
+        stats.put("similarityKernel", SimilarityKernels.get().getName());
         return stats;
     }
 
@@ -336,21 +636,35 @@ public class EmbeddingService {
         return embedding;
     }
 
+    // SHA-256 de modelo + texto: sin colisiones prácticas y aislado por modelo
     private String generateCacheKey(String text) {
-        return Integer.toHexString(text.hashCode()) + "_" + text.length();
+        return EmbeddingCache.key(embeddingModel, text);
     }
 
-    // Clases auxiliares internas
-    private static class EmbeddingResult {
-        final String text;
-        final List<Float> embedding;
+    // Memoria primero; un acierto en disco se promociona a memoria
+    private float[] cachedVector(String cacheKey) {
+        if (!cacheEnabled) {
+            return null;
+        }
+        float[] vector = embeddingCache.get(cacheKey);
+        if (vector == null) {
+            vector = diskCache.get(cacheKey);
+            if (vector != null) {
+                embeddingCache.put(cacheKey, vector);
+            }
+        }
+        return vector;
+    }
 
-        EmbeddingResult(String text, List<Float> embedding) {
-            this.text = text;
-            this.embedding = embedding;
+    private float[] cacheVector(String cacheKey, float[] vector) {
+        if (cacheEnabled) {
+            embeddingCache.put(cacheKey, vector);
+            diskCache.put(cacheKey, vector);
         }
+        return vector;
     }
 
+    // Clases auxiliares internas
     public static class SimilarityResult {
         public final KnowledgeDocument document;
         public final float similarity;
@@ -0,0 +1,196 @@
+package com.example.qaassistant.service.rag;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mide el throughput de embeddings por lote frente a llamadas individuales contra un
+ * servidor HTTP local que simula Ollama (/api/embed y /api/embeddings).
+ *
+ * El stub cobra un coste fijo por petición más un coste por texto, que es el perfil que
+ * hace rentable el lote: se amortiza el coste fijo (HTTP, cola del modelo) entre varias entradas.
+ */
+@Component
+@ConditionalOnProperty(name = "app.benchmarks.enabled", havingValue = "true")
+public class EmbeddingThroughputBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingThroughputBenchmark.class);
+
+    private final EmbeddingService embeddingService;
+
+    public EmbeddingThroughputBenchmark(EmbeddingService embeddingService) {
+        this.embeddingService = embeddingService;
+    }
+
+    /**
+     * @param texts            textos a embeber en cada configuración
+     * @param batchSizes       tamaños de lote a comparar (1 = llamadas individuales a /api/embeddings)
+     * @param requestOverheadMs coste fijo simulado por petición
+     * @param perTextMicros    coste simulado por texto
+     * @param dimension        dimensión de los vectores devueltos por el stub
+     */
+    public Map<String, Object> run(int texts, List<Integer> batchSizes, long requestOverheadMs,
+                                   long perTextMicros, int dimension) throws IOException {
+        List<String> inputs = new ArrayList<>(texts);
+        for (int i = 0; i < texts; i++) {
+            inputs.add("Texto de prueba " + i + " para medir el throughput de embeddings");
+        }
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        ExecutorService stubExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(stubExecutor);
+        server.createContext("/api/embed", exchange -> respond(exchange, "embeddings",
+                countInputs(exchange), requestOverheadMs, perTextMicros, dimension));
+        server.createContext("/api/embeddings", exchange -> respond(exchange, "embedding",
+                -1, requestOverheadMs, perTextMicros, dimension));
+        server.start();
+
+        String baseUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+        List<Map<String, Object>> results = new ArrayList<>();
+        try {
+            for (int batchSize : batchSizes) {
+                results.add(measure(baseUrl, inputs, Math.max(batchSize, 1)));
+            }
+        } finally {
+            server.stop(0);
+            stubExecutor.shutdownNow();
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("texts", texts);
+        report.put("requestOverheadMs", requestOverheadMs);
+        report.put("perTextMicros", perTextMicros);
+        report.put("dimension", dimension);
+        report.put("results", results);
+        return report;
+    }
+
+    private Map<String, Object> measure(String baseUrl, List<String> inputs, int batchSize) {
+        long start = System.nanoTime();
+        int requests = 0;
+        int embedded = 0;
+        if (batchSize == 1) {
+            for (String text : inputs) {
+                List<Float> embedding = embeddingService.requestEmbedding(baseUrl, text).block();
+                embedded += embedding != null ? 1 : 0;
+                requests++;
+            }
+        } else {
+            for (int from = 0; from < inputs.size(); from += batchSize) {
+                List<String> chunk = inputs.subList(from, Math.min(from + batchSize, inputs.size()));
+                List<List<Float>> embeddings = embeddingService.requestEmbedBatch(baseUrl, chunk).block();
+                embedded += embeddings != null ? embeddings.size() : 0;
+                requests++;
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("batchSize", batchSize);
+        result.put("endpoint", batchSize == 1 ? "/api/embeddings" : "/api/embed");
+        result.put("requests", requests);
+        result.put("embedded", embedded);
+        result.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        result.put("textsPerSecond", embedded * 1_000_000_000.0 / Math.max(elapsedNanos, 1));
+        log.info("Benchmark embeddings: lote={} peticiones={} textos/s={}", batchSize, requests,
+                String.format("%.1f", result.get("textsPerSecond")));
+        return result;
+    }
+
+    // Cuenta las entradas del array 'input' sin depender de un parser JSON en el stub
+    private static int countInputs(HttpExchange exchange) throws IOException {
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        int start = body.indexOf("\"input\"");
+        if (start < 0) {
+            return 1;
+        }
+        int count = 0;
+        boolean inString = false;
+        for (int i = body.indexOf('[', start) + 1; i > 0 && i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '\\' && inString) {
+                i++;
+            } else if (c == '"') {
+                inString = !inString;
+                if (inString) {
+                    count++;
+                }
+            } else if (c == ']' && !inString) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private static void respond(HttpExchange exchange, String field, int inputs, long overheadMs,
+                                long perTextMicros, int dimension) throws IOException {
+        if (inputs < 0) {
+            exchange.getRequestBody().readAllBytes();
+        }
+        int vectors = Math.max(inputs, 1);
+        try {
+            TimeUnit.MICROSECONDS.sleep(overheadMs * 1000 + perTextMicros * vectors);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        StringBuilder json = new StringBuilder("{\"model\":\"stub\",\"").append(field).append("\":");
+        if (inputs >= 0) {
+            json.append('[');
+        }
+        for (int v = 0; v < vectors; v++) {
+            if (v > 0) {
+                json.append(',');
+            }
+            appendVector(json, dimension);
+            if (inputs < 0) {
+                break;
+            }
+        }
+        if (inputs >= 0) {
+            json.append(']');
+        }
+        json.append('}');
+
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void appendVector(StringBuilder json, int dimension) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        json.append('[');
+        for (int i = 0; i < dimension; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(random.nextFloat() * 2 - 1);
+        }
+        json.append(']');
+    }
+}
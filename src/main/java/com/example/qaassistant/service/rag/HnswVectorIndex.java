@@ -0,0 +1,391 @@
+package com.example.qaassistant.service.rag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice aproximado HNSW (Hierarchical Navigable Small World) sobre vectores normalizados.
+ *
+ * Parámetros:
+ * - m: vecinos por nodo en las capas superiores (2·m en la capa 0)
+ * - efConstruction: tamaño de la lista de candidatos al insertar
+ * - efSearch: tamaño de la lista de candidatos al buscar (mayor = más recall, más latencia)
+ *
+ * Los borrados son lógicos (tombstones): el nodo sigue sirviendo de paso en el grafo
+ * pero no aparece en resultados. Cuando hay muchos conviene reconstruir el índice.
+ */
+public class HnswVectorIndex implements VectorIndex {
+
+    private final int m;
+    private final int maxLinksLayer0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelMultiplier;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<String, Integer> nodeIndex = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int deletedCount = 0;
+
+    public HnswVectorIndex(int m, int efConstruction, int efSearch) {
+        if (m < 2) {
+            throw new IllegalArgumentException("El parámetro m de HNSW debe ser >= 2");
+        }
+        this.m = m;
+        this.maxLinksLayer0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = Math.max(efSearch, 1);
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+
+    @Override
+    public int put(String id, float[] vector) {
+        float[] normalized = Arrays.copyOf(vector, vector.length);
+        VectorMatrix.normalizeInPlace(normalized, 0, normalized.length);
+
+        lock.writeLock().lock();
+        try {
+            // Reemplazo: el nodo anterior queda como tombstone y se inserta uno nuevo
+            Integer previous = nodeIndex.remove(id);
+            if (previous != null) {
+                markDeleted(previous);
+            }
+
+            int level = randomLevel();
+            int nodeId = nodes.size();
+            Node node = new Node(id, normalized, level, m, maxLinksLayer0);
+            nodes.add(node);
+            nodeIndex.put(id, nodeId);
+
+            if (entryPoint < 0) {
+                entryPoint = nodeId;
+                maxLevel = level;
+                return nodeId;
+            }
+
+            int current = entryPoint;
+            for (int layer = maxLevel; layer > level; layer--) {
+                current = greedyClosest(normalized, current, layer);
+            }
+
+            for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+                List<Candidate> candidates = searchLayer(normalized, current, efConstruction, layer);
+                int maxLinks = layer == 0 ? maxLinksLayer0 : m;
+                List<Candidate> neighbours = selectNeighbours(candidates, m);
+                for (Candidate neighbour : neighbours) {
+                    node.addLink(layer, neighbour.node);
+                    connectBack(neighbour.node, nodeId, layer, maxLinks);
+                }
+                current = candidates.get(0).node;
+            }
+
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = nodeId;
+            }
+            return nodeId;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer nodeId = nodeIndex.remove(id);
+            if (nodeId == null) {
+                return false;
+            }
+            markDeleted(nodeId);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<VectorMatch> search(float[] query, int k) {
+        return search(query, k, efSearch);
+    }
+
+    /**
+     * Búsqueda con un efSearch concreto, útil para comparar recall/latencia entre configuraciones.
+     */
+    public List<VectorMatch> search(float[] query, int k, int ef) {
+        float[] q = Arrays.copyOf(query, query.length);
+        VectorMatrix.normalizeInPlace(q, 0, q.length);
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0 || q.length != nodes.get(entryPoint).vector.length) {
+                return new ArrayList<>();
+            }
+
+            int current = entryPoint;
+            for (int layer = maxLevel; layer > 0; layer--) {
+                current = greedyClosest(q, current, layer);
+            }
+
+            // Se amplía ef con los tombstones para no devolver menos de k resultados vivos
+            int effectiveEf = Math.max(ef, k) + Math.min(deletedCount, Math.max(ef, k));
+            List<Candidate> candidates = searchLayer(q, current, effectiveEf, 0);
+
+            List<VectorMatch> matches = new ArrayList<>(k);
+            for (Candidate candidate : candidates) {
+                Node node = nodes.get(candidate.node);
+                if (!node.deleted) {
+                    matches.add(new VectorMatch(node.id, candidate.score));
+                    if (matches.size() == k) {
+                        break;
+                    }
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            nodes.clear();
+            nodeIndex.clear();
+            entryPoint = -1;
+            maxLevel = -1;
+            deletedCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeIndex.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "hnsw";
+    }
+
+    public int getDeletedCount() {
+        lock.readLock().lock();
+        try {
+            return deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(efSearch, 1);
+    }
+
+    // Métodos auxiliares del grafo
+
+    private int randomLevel() {
+        double r = ThreadLocalRandom.current().nextDouble();
+        return (int) Math.floor(-Math.log(Math.max(r, Double.MIN_VALUE)) * levelMultiplier);
+    }
+
+    private void markDeleted(int nodeId) {
+        Node node = nodes.get(nodeId);
+        if (!node.deleted) {
+            node.deleted = true;
+            deletedCount++;
+        }
+    }
+
+    private int greedyClosest(float[] query, int start, int layer) {
+        int current = start;
+        float best = similarity(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Node node = nodes.get(current);
+            int[] links = node.links[layer];
+            for (int i = 0; i < node.linkCounts[layer]; i++) {
+                float score = similarity(query, links[i]);
+                if (score > best) {
+                    best = score;
+                    current = links[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Búsqueda en haz dentro de una capa. Devuelve los candidatos ordenados de mayor a menor similitud.
+     */
+    private List<Candidate> searchLayer(float[] query, int start, int ef, int layer) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.score).reversed());
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.score));
+
+        Candidate first = new Candidate(start, similarity(query, start));
+        visited.set(start);
+        toVisit.add(first);
+        best.add(first);
+
+        while (!toVisit.isEmpty()) {
+            Candidate current = toVisit.poll();
+            if (best.size() >= ef && current.score < best.peek().score) {
+                break;
+            }
+            Node node = nodes.get(current.node);
+            if (layer > node.level) {
+                continue;
+            }
+            int[] links = node.links[layer];
+            for (int i = 0; i < node.linkCounts[layer]; i++) {
+                int neighbour = links[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float score = similarity(query, neighbour);
+                if (best.size() < ef || score > best.peek().score) {
+                    Candidate candidate = new Candidate(neighbour, score);
+                    toVisit.add(candidate);
+                    best.add(candidate);
+                    if (best.size() > ef) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> result = new ArrayList<>(best);
+        result.sort(Comparator.comparingDouble((Candidate c) -> c.score).reversed());
+        return result;
+    }
+
+    /**
+     * Heurística de selección de vecinos de HNSW: se prefieren candidatos que no estén ya
+     * "cubiertos" por un vecino elegido, y se completa con los descartados hasta 'max'.
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> candidatesDesc, int max) {
+        if (candidatesDesc.size() <= max) {
+            return candidatesDesc;
+        }
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> discarded = new ArrayList<>();
+        for (Candidate candidate : candidatesDesc) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] vector = nodes.get(candidate.node).vector;
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (similarity(vector, chosen.node) > candidate.score) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                discarded.add(candidate);
+            }
+        }
+        for (int i = 0; i < discarded.size() && selected.size() < max; i++) {
+            selected.add(discarded.get(i));
+        }
+        return selected;
+    }
+
+    private void connectBack(int nodeId, int newNeighbour, int layer, int maxLinks) {
+        Node node = nodes.get(nodeId);
+        if (node.linkCounts[layer] < maxLinks) {
+            node.addLink(layer, newNeighbour);
+            return;
+        }
+
+        // Lista llena: se vuelve a seleccionar el mejor conjunto de vecinos incluyendo el nuevo
+        List<Candidate> candidates = new ArrayList<>(maxLinks + 1);
+        for (int i = 0; i < node.linkCounts[layer]; i++) {
+            int neighbour = node.links[layer][i];
+            candidates.add(new Candidate(neighbour, similarity(node.vector, neighbour)));
+        }
+        candidates.add(new Candidate(newNeighbour, similarity(node.vector, newNeighbour)));
+        candidates.sort(Comparator.comparingDouble((Candidate c) -> c.score).reversed());
+
+        List<Candidate> selected = selectNeighbours(candidates, maxLinks);
+        node.linkCounts[layer] = 0;
+        for (Candidate candidate : selected) {
+            node.addLink(layer, candidate.node);
+        }
+    }
+
+    private float similarity(float[] query, int nodeId) {
+        float[] vector = nodes.get(nodeId).vector;
+        return VectorMatrix.dot(query, vector, 0, vector.length);
+    }
+
+    // Clases auxiliares internas
+    private static class Node {
+        final String id;
+        final float[] vector;
+        final int level;
+        final int[][] links;
+        final int[] linkCounts;
+        boolean deleted;
+
+        Node(String id, float[] vector, int level, int m, int maxLinksLayer0) {
+            this.id = id;
+            this.vector = vector;
+            this.level = level;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int layer = 0; layer <= level; layer++) {
+                links[layer] = new int[layer == 0 ? maxLinksLayer0 : m];
+            }
+        }
+
+        void addLink(int layer, int neighbour) {
+            links[layer][linkCounts[layer]++] = neighbour;
+        }
+    }
+
+    private static class Candidate {
+        final int node;
+        final float score;
+
+        Candidate(int node, float score) {
+            this.node = node;
+            this.score = score;
+        }
+    }
+}
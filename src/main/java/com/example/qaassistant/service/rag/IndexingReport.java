@@ -0,0 +1,17 @@
+package com.example.qaassistant.service.rag;
+
+/**
+ * Resultado de una sincronización incremental de documentos con el vector store.
+ * 'failed' cuenta los documentos que no se pudieron embeber: no se guardan y se reintentan en la
+ * siguiente sincronización.
+ */
+public record IndexingReport(String source, int added, int updated, int unchanged, int deleted,
+                             int embedded, int failed, long elapsedMs) {
+
+    @Override
+    public String toString() {
+        return "origen=" + source + ", añadidos=" + added + ", actualizados=" + updated +
+                ", sin cambios=" + unchanged + ", eliminados=" + deleted +
+                ", embebidos=" + embedded + ", sin embedding=" + failed + ", tiempo=" + elapsedMs + " ms";
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.qaassistant.service.rag;
+
+/**
+ * Representación compacta de los vectores usada para el recorrido de búsqueda.
+ * - NONE: float32 (4 bytes por dimensión)
+ * - INT8: cuantización escalar int8 con escala por vector (1 byte por dimensión)
+ * - BINARY: 1 bit de signo por dimensión, comparado por distancia de Hamming
+ * En INT8 y BINARY los mejores candidatos se reordenan con los vectores float.
+ */
+public enum QuantizationMode {
+    NONE,
+    INT8,
+    BINARY
+}
@@ -6,6 +6,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
 import java.util.*;
 
 @Service
@@ -30,6 +33,19 @@ public class RagService {
         return new RagResponse(question, question, generateSuggestions(question), relevantDocs);
     }
 
+    /**
+     * Variante no bloqueante de processQuestion: el embedding de la pregunta no ocupa ningún hilo
+     * y la búsqueda en memoria se hace en 'searchScheduler'.
+     */
+    public Mono<RagResponse> processQuestionAsync(String question, Scheduler searchScheduler) {
+        log.info("🔍 Procesando pregunta: " + question);
+        return vectorStore.similaritySearchAsync(question, 5, searchScheduler)
+                .map(relevantDocs -> {
+                    log.info("📚 Documentos relevantes encontrados: " + relevantDocs.size());
+                    return new RagResponse(question, question, generateSuggestions(question), relevantDocs);
+                });
+    }
+
     public static List<String> generateSuggestions(String question) {
         return Arrays.asList(
                 "Ver ranking completo",
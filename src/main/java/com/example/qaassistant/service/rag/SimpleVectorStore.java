@@ -1,33 +1,192 @@
 package com.example.qaassistant.service.rag;
 
 import com.example.qaassistant.model.rag.KnowledgeDocument;
+import com.example.qaassistant.service.rag.similarity.SimilarityKernels;
 import org.slf4j.Logger;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 @Component
 public class SimpleVectorStore {
     private static final Logger log = LoggerFactory.getLogger(SimpleVectorStore.class);
     private final Map<String, KnowledgeDocument> documents = new ConcurrentHashMap<>();
-    private final Map<String, float[]> embeddings = new HashMap<>();
+    private VectorMatrix matrix = new VectorMatrix();
+    private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
     private final EmbeddingService embeddingService;
+    private final VectorSegmentStore segmentStore;
+    private final ReentrantLock indexWriteLock = new ReentrantLock();
+    private volatile HnswVectorIndex annIndex;
+
+    @Value("${vector.store.index:exact}")
+    private String indexType;
+
+    @Value("${vector.store.exact.parallel-threshold:50000}")
+    private int parallelThreshold;
+
+    @Value("${vector.store.quantization.mode:none}")
+    private String quantizationMode;
+
+    @Value("${vector.store.quantization.rerank-factor:4}")
+    private int rerankFactor;
+
+    @Value("${vector.store.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${vector.store.hnsw.ef-construction:200}")
+    private int hnswEfConstruction;
+
+    @Value("${vector.store.hnsw.ef-search:64}")
+    private int hnswEfSearch;
 
-    public SimpleVectorStore(EmbeddingService embeddingService) {
+    // Clave de metadatos con el origen de un documento (para detectar borrados al sincronizar)
+    public static final String SOURCE_METADATA_KEY = "origen";
+
+    // Proporción de tombstones a partir de la cual se reconstruye el grafo HNSW
+    private static final double HNSW_REBUILD_RATIO = 0.3;
+
+    // Proporción de registros muertos en disco a partir de la cual se compacta al arrancar
+    private static final double SEGMENT_COMPACTION_RATIO = 0.5;
+
+    // Métricas de búsqueda
+    private final AtomicLong searchCount = new AtomicLong();
+    private final AtomicLong embeddingFailures = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+    private volatile long lastSearchNanos = 0;
+    private volatile IndexingReport lastIndexingReport;
+
+    public SimpleVectorStore(EmbeddingService embeddingService, VectorSegmentStore segmentStore) {
         this.embeddingService = embeddingService;
+        this.segmentStore = segmentStore;
     }
 
-    // Simulación de embeddings (en producción usarías un modelo real)
-    private float[] generateEmbedding(String text) {
-        // Simulación simple - en realidad usarías SentenceTransformers, OpenAI, etc.
-        Random random = new Random(text.hashCode());
-        float[] embedding = new float[384]; // Tamaño típico
-        for (int i = 0; i < embedding.length; i++) {
-            embedding[i] = random.nextFloat();
+    @PostConstruct
+    void initIndex() {
+        QuantizationMode quantization = QuantizationMode.valueOf(quantizationMode.trim().toUpperCase());
+        matrix = new VectorMatrix(quantization, rerankFactor);
+        matrix.setParallelThreshold(parallelThreshold);
+        if (quantization != QuantizationMode.NONE) {
+            log.info("🗜️ SimpleVectorStore: Cuantización {} con reordenado de {}·k candidatos", quantization, rerankFactor);
         }
-        return embedding;
+        if ("hnsw".equalsIgnoreCase(indexType)) {
+            annIndex = new HnswVectorIndex(hnswM, hnswEfConstruction, hnswEfSearch);
+            log.info("🧭 SimpleVectorStore: Índice HNSW activo (M={}, efConstruction={}, efSearch={})",
+                    hnswM, hnswEfConstruction, hnswEfSearch);
+        } else {
+            log.info("🧭 SimpleVectorStore: Búsqueda exacta sobre matriz de vectores (paralela desde {} filas)",
+                    parallelThreshold);
+        }
+        restorePersisted();
+    }
+
+    /**
+     * Recupera documentos y vectores de los segmentos en disco. Los vectores generados con
+     * otro modelo de embeddings se descartan para que se vuelvan a calcular.
+     */
+    private void restorePersisted() {
+        if (!segmentStore.isEnabled()) {
+            return;
+        }
+        String model = embeddingService.getEmbeddingModel();
+        int restored = 0;
+        int stale = 0;
+        for (VectorSegmentStore.StoredDocument stored : segmentStore.load().values()) {
+            if (!model.equals(stored.model())) {
+                stale++;
+                continue;
+            }
+            KnowledgeDocument doc = new KnowledgeDocument(stored.id(), stored.content(), stored.title());
+            doc.setMetadata(stored.metadata());
+            try {
+                indexVector(stored.id(), stored.vector());
+            } catch (IllegalArgumentException e) {
+                stale++;
+                continue;
+            }
+            documents.put(stored.id(), doc);
+            fingerprints.put(stored.id(), new Fingerprint(stored.contentHash(), stored.model()));
+            restored++;
+        }
+        log.info("💽 SimpleVectorStore: Restaurados {} documentos desde disco ({} descartados por cambio de modelo)",
+                restored, stale);
+
+        if (stale > 0 || segmentStore.deadRatio(documents.size()) > SEGMENT_COMPACTION_RATIO) {
+            compact();
+        }
+    }
+
+    /**
+     * Sincroniza incrementalmente los documentos de un origen: solo se embeben los nuevos o con
+     * contenido cambiado, los que solo cambian título/metadatos reutilizan su vector, y los ids del
+     * mismo origen que ya no aparecen se eliminan del store.
+     */
+    public IndexingReport synchronize(String source, List<KnowledgeDocument> docs) {
+        long start = System.currentTimeMillis();
+        int added = 0;
+        int updated = 0;
+        int unchanged = 0;
+
+        Map<String, KnowledgeDocument> incoming = new LinkedHashMap<>();
+        for (KnowledgeDocument doc : docs) {
+            Map<String, Object> metadata = new HashMap<>(doc.getMetadata() != null ? doc.getMetadata() : Map.of());
+            metadata.put(SOURCE_METADATA_KEY, source);
+            doc.setMetadata(metadata);
+            incoming.put(doc.getId(), doc);
+        }
+
+        // Clasificar y embeber en lote solo los que tienen contenido nuevo
+        List<KnowledgeDocument> toEmbed = new ArrayList<>();
+        List<KnowledgeDocument> toStore = new ArrayList<>();
+        String model = embeddingService.getEmbeddingModel();
+        for (KnowledgeDocument doc : incoming.values()) {
+            KnowledgeDocument current = documents.get(doc.getId());
+            boolean sameVector = new Fingerprint(ContentHash.sha256(doc.getContent()), model)
+                    .equals(fingerprints.get(doc.getId()));
+            if (current == null) {
+                added++;
+            } else if (sameVector && documentHash(current).equals(documentHash(doc))) {
+                unchanged++;
+                continue;
+            } else {
+                updated++;
+            }
+            if (!sameVector && (doc.getEmbedding() == null || doc.getEmbedding().isEmpty())) {
+                toEmbed.add(doc);
+            }
+            toStore.add(doc);
+        }
+        embeddingService.indexDocuments(toEmbed);
+        int failed = 0;
+        for (KnowledgeDocument doc : toStore) {
+            if (!addDocument(doc)) {
+                failed++;
+            }
+        }
+
+        // Eliminar documentos del mismo origen que ya no existen
+        int deleted = 0;
+        for (KnowledgeDocument doc : new ArrayList<>(documents.values())) {
+            if (doc.getMetadata() != null && source.equals(doc.getMetadata().get(SOURCE_METADATA_KEY))
+                    && !incoming.containsKey(doc.getId())) {
+                removeDocument(doc.getId());
+                deleted++;
+            }
+        }
+
+        IndexingReport report = new IndexingReport(source, added, updated, unchanged, deleted,
+                toEmbed.size(), failed, System.currentTimeMillis() - start);
+        lastIndexingReport = report;
+        log.info("📚 SimpleVectorStore: Sincronización completada: {}", report);
+        return report;
     }
 
     public void addDocs(List<KnowledgeDocument> docs) {
@@ -37,76 +196,419 @@ public class SimpleVectorStore {
         log.info("✅ SimpleVectorStore: Añadidos " + docs.size() + " documentos");
     }
 
-    public void addDocument(KnowledgeDocument doc) {
-        // Generar embedding si no existe
-        if (doc.getEmbedding() == null || doc.getEmbedding().isEmpty()) {
-            List<Float> embedding = embeddingService.generateEmbedding(doc.getContent());
-            doc.setEmbedding(embedding);
+    /**
+     * Indexa y persiste un documento. Si Ollama no devuelve embedding el documento no se guarda
+     * (nunca se persiste un vector de relleno): al no quedar su huella, la siguiente sincronización
+     * lo vuelve a intentar.
+     *
+     * @return false si el documento no se pudo indexar
+     */
+    public boolean addDocument(KnowledgeDocument doc) {
+        Fingerprint fingerprint = new Fingerprint(ContentHash.sha256(doc.getContent()), embeddingService.getEmbeddingModel());
+        boolean unchangedContent = fingerprint.equals(fingerprints.get(doc.getId()));
+        KnowledgeDocument current = documents.get(doc.getId());
+
+        float[] vector;
+        if (doc.getEmbedding() != null && !doc.getEmbedding().isEmpty()) {
+            vector = EmbeddingService.toPrimitive(doc.getEmbedding());
+        } else if (unchangedContent && matrix.contains(doc.getId())) {
+            // Mismo contenido y modelo: se reutiliza el vector almacenado sin volver a llamar a Ollama
+            if (current != null && Objects.equals(current.getTitle(), doc.getTitle())
+                    && Objects.equals(current.getMetadata(), doc.getMetadata())) {
+                log.debug("⏭️ SimpleVectorStore: Documento sin cambios: {}", doc.getId());
+                return true;
+            }
+            vector = matrix.get(doc.getId());
+        } else {
+            // Generar embedding si no existe; sin fallback aleatorio en el camino de indexación
+            vector = embedForIndexing(doc);
+            if (vector == null) {
+                embeddingFailures.incrementAndGet();
+                return false;
+            }
+            doc.setEmbedding(EmbeddingService.toList(vector));
+        }
+
+        try {
+            indexVector(doc.getId(), vector);
+        } catch (IllegalArgumentException e) {
+            log.warn("⚠️ SimpleVectorStore: Documento {} descartado: {}", doc.getId(), e.getMessage());
+            return false;
         }
         documents.put(doc.getId(), doc);
+        fingerprints.put(doc.getId(), fingerprint);
+        segmentStore.appendPut(new VectorSegmentStore.StoredDocument(doc.getId(), fingerprint.contentHash(),
+                fingerprint.model(), doc.getTitle(), doc.getContent(), doc.getMetadata(), vector));
         log.debug("✅ SimpleVectorStore: Documento almacenado: {} - {}", doc.getId(), doc.getTitle());
+        return true;
+    }
+
+    private float[] embedForIndexing(KnowledgeDocument doc) {
+        try {
+            float[] vector = embeddingService.embed(doc.getContent()).block();
+            if (vector != null && vector.length > 0) {
+                return vector;
+            }
+            log.warn("⚠️ SimpleVectorStore: Ollama no devolvió embedding para {}, no se indexa", doc.getId());
+        } catch (Exception e) {
+            log.warn("⚠️ SimpleVectorStore: Error embebiendo {}, no se indexa: {}", doc.getId(), e.getMessage());
+        }
+        return null;
+    }
+
+    public boolean removeDocument(String id) {
+        boolean removed;
+        indexWriteLock.lock();
+        try {
+            removed = matrix.remove(id);
+            if (annIndex != null) {
+                annIndex.remove(id);
+                rebuildAnnIndexIfNeeded();
+            }
+        } finally {
+            indexWriteLock.unlock();
+        }
+        documents.remove(id);
+        fingerprints.remove(id);
+        if (removed) {
+            segmentStore.appendDelete(id);
+        }
+        return removed;
+    }
+
+    /**
+     * Reescribe los segmentos en disco solo con los documentos vivos.
+     *
+     * @return registros descartados
+     */
+    public long compact() {
+        List<VectorSegmentStore.StoredDocument> live = new ArrayList<>();
+        indexWriteLock.lock();
+        try {
+            for (KnowledgeDocument doc : documents.values()) {
+                float[] vector = matrix.get(doc.getId());
+                Fingerprint fingerprint = fingerprints.get(doc.getId());
+                if (vector != null && fingerprint != null) {
+                    live.add(new VectorSegmentStore.StoredDocument(doc.getId(), fingerprint.contentHash(),
+                            fingerprint.model(), doc.getTitle(), doc.getContent(), doc.getMetadata(), vector));
+                }
+            }
+            return segmentStore.compact(live);
+        } finally {
+            indexWriteLock.unlock();
+        }
+    }
+
+    private void indexVector(String id, float[] vector) {
+        indexWriteLock.lock();
+        try {
+            matrix.put(id, vector);
+            if (annIndex != null) {
+                annIndex.put(id, vector);
+                rebuildAnnIndexIfNeeded();
+            }
+        } finally {
+            indexWriteLock.unlock();
+        }
     }
 
     public List<KnowledgeDocument> similaritySearch(String query) {
         return similaritySearch(query, 5);
     }
 
+    /**
+     * Documentos más parecidos a la consulta. Sin embedding de Ollama devuelve una lista vacía:
+     * con un vector de relleno la respuesta RAG saldría de documentos al azar.
+     */
     public List<KnowledgeDocument> similaritySearch(String query, int k) {
         if (documents.isEmpty()) {
             return new ArrayList<>();
         }
 
-        float[] queryEmbedding = generateEmbedding(query);
+        float[] queryEmbedding;
+        try {
+            queryEmbedding = embeddingService.embed(query).block();
+        } catch (Exception e) {
+            embeddingFailures.incrementAndGet();
+            log.warn("⚠️ SimpleVectorStore: Error embebiendo la consulta, búsqueda sin resultados: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+        if (queryEmbedding == null || queryEmbedding.length == 0) {
+            embeddingFailures.incrementAndGet();
+            log.warn("⚠️ SimpleVectorStore: Ollama no devolvió embedding para la consulta, búsqueda sin resultados");
+            return new ArrayList<>();
+        }
+        return search(queryEmbedding, k);
+    }
+
+    /**
+     * Variante no bloqueante de similaritySearch: el embedding se pide con el Mono de EmbeddingService
+     * y solo la búsqueda en memoria se ejecuta en 'searchScheduler', sin ocupar un hilo durante la
+     * llamada a Ollama.
+     */
+    public Mono<List<KnowledgeDocument>> similaritySearchAsync(String query, int k, Scheduler searchScheduler) {
+        if (documents.isEmpty()) {
+            return Mono.just(new ArrayList<>());
+        }
+        return embeddingService.embed(query)
+                .publishOn(searchScheduler)
+                .map(queryEmbedding -> search(queryEmbedding, k))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    embeddingFailures.incrementAndGet();
+                    log.warn("⚠️ SimpleVectorStore: Ollama no devolvió embedding para la consulta, búsqueda sin resultados");
+                    return new ArrayList<>();
+                }))
+                .onErrorResume(e -> {
+                    embeddingFailures.incrementAndGet();
+                    log.warn("⚠️ SimpleVectorStore: Error embebiendo la consulta, búsqueda sin resultados: {}", e.getMessage());
+                    return Mono.just(new ArrayList<>());
+                });
+    }
+
+    /**
+     * Búsqueda en memoria a partir de un embedding ya calculado.
+     */
+    public List<KnowledgeDocument> search(float[] queryEmbedding, int k) {
+        if (documents.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        List<VectorMatch> matches = activeIndex().search(queryEmbedding, k);
+        recordSearch(System.nanoTime() - start);
+
+        List<KnowledgeDocument> results = new ArrayList<>(matches.size());
+        for (VectorMatch match : matches) {
+            KnowledgeDocument doc = documents.get(match.id());
+            if (doc != null) {
+                results.add(doc);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Compara el índice aproximado con la búsqueda exacta usando como consultas vectores
+     * de documentos ya indexados (excluyendo el propio documento). Devuelve recall@k y
+     * latencia media para cada efSearch indicado, para poder elegir parámetros.
+     */
+    public Map<String, Object> evaluateRecall(int k, int samples, List<Integer> efValues) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("index", activeIndex().getName());
+        report.put("k", k);
+
+        List<String> ids = matrix.ids();
+        Collections.shuffle(ids, new Random(42));
+        List<String> sampleIds = ids.subList(0, Math.min(samples, ids.size()));
+        report.put("samples", sampleIds.size());
+
+        if (annIndex == null || sampleIds.isEmpty()) {
+            report.put("message", "Recall solo aplica con vector.store.index=hnsw y documentos indexados");
+            return report;
+        }
+
+        // Verdad de referencia: recorrido exacto en float, sin cuantización aunque esté activada
+        Map<String, Set<String>> groundTruth = new HashMap<>();
+        long exactNanos = 0;
+        for (String id : sampleIds) {
+            float[] query = matrix.get(id);
+            long start = System.nanoTime();
+            List<VectorMatch> exact = matrix.exactSearch(query, k + 1);
+            exactNanos += System.nanoTime() - start;
+            groundTruth.put(id, topIdsExcluding(exact, id, k));
+        }
+        report.put("exactAvgMs", exactNanos / sampleIds.size() / 1_000_000.0);
+
+        List<Integer> efs = efValues == null || efValues.isEmpty() ? List.of(annIndex.getEfSearch()) : efValues;
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int ef : efs) {
+            long hits = 0;
+            long expected = 0;
+            long annNanos = 0;
+            for (String id : sampleIds) {
+                float[] query = matrix.get(id);
+                long start = System.nanoTime();
+                List<VectorMatch> approx = annIndex.search(query, k + 1, ef);
+                annNanos += System.nanoTime() - start;
+
+                Set<String> truth = groundTruth.get(id);
+                Set<String> found = topIdsExcluding(approx, id, k);
+                found.retainAll(truth);
+                hits += found.size();
+                expected += truth.size();
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("efSearch", ef);
+            row.put("recall", expected > 0 ? Math.round((double) hits / expected * 10000.0) / 10000.0 : 1.0);
+            row.put("avgMs", annNanos / sampleIds.size() / 1_000_000.0);
+            results.add(row);
+        }
+        report.put("results", results);
+        return report;
+    }
+
+    /**
+     * Recall frente a memoria de cada representación (float, int8, binaria) respecto a la
+     * búsqueda exacta en float. Construye matrices temporales a partir de los vectores actuales.
+     */
+    public Map<String, Object> evaluateQuantization(int k, int samples) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("k", k);
+        report.put("rerankFactor", rerankFactor);
+
+        List<String> ids = matrix.ids();
+        Collections.shuffle(ids, new Random(42));
+        List<String> sampleIds = ids.subList(0, Math.min(samples, ids.size()));
+        report.put("samples", sampleIds.size());
+        if (sampleIds.isEmpty()) {
+            return report;
+        }
 
-        // Calcular similitudes
-        List<SearchResult> results = new ArrayList<>();
-        for (KnowledgeDocument doc : documents.values()) {
-            float[] docEmbedding = embeddings.get(doc.getId());
-            float similarity = cosineSimilarity(queryEmbedding, docEmbedding);
-            results.add(new SearchResult(doc, similarity));
+        Map<String, Set<String>> groundTruth = new HashMap<>();
+        for (String id : sampleIds) {
+            groundTruth.put(id, topIdsExcluding(matrix.exactSearch(matrix.get(id), k + 1), id, k));
         }
 
-        // Ordenar por similitud y devolver top K
-        return results.stream()
-                .sorted((a, b) -> Float.compare(b.similarity, a.similarity))
-                .limit(k)
-                .map(result -> result.document)
-                .collect(Collectors.toList());
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (QuantizationMode mode : QuantizationMode.values()) {
+            VectorMatrix candidate = copyMatrix(mode);
+            long hits = 0;
+            long expected = 0;
+            long nanos = 0;
+            for (String id : sampleIds) {
+                float[] query = matrix.get(id);
+                long start = System.nanoTime();
+                List<VectorMatch> found = candidate.search(query, k + 1);
+                nanos += System.nanoTime() - start;
+                Set<String> truth = groundTruth.get(id);
+                Set<String> foundIds = topIdsExcluding(found, id, k);
+                foundIds.retainAll(truth);
+                hits += foundIds.size();
+                expected += truth.size();
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("mode", mode.name());
+            row.put("scanBytesPerVector", candidate.getScanBytesPerVector());
+            row.put("recall", expected > 0 ? Math.round((double) hits / expected * 10000.0) / 10000.0 : 1.0);
+            row.put("avgMs", nanos / sampleIds.size() / 1_000_000.0);
+            results.add(row);
+        }
+        report.put("results", results);
+        return report;
     }
 
-    private float cosineSimilarity(float[] a, float[] b) {
-        float dotProduct = 0;
-        float normA = 0;
-        float normB = 0;
+    private VectorMatrix copyMatrix(QuantizationMode mode) {
+        VectorMatrix copy = new VectorMatrix(mode, rerankFactor);
+        for (String id : matrix.ids()) {
+            float[] vector = matrix.get(id);
+            if (vector != null) {
+                copy.put(id, vector);
+            }
+        }
+        return copy;
+    }
 
-        for (int i = 0; i < a.length; i++) {
-            dotProduct += a[i] * (b == null ? 1 : b[i]);
-            normA += a[i] * a[i];
-            normB += (b == null ? 1 : b[i]) * (b == null ? 1 : b[i]);
+    private static Set<String> topIdsExcluding(List<VectorMatch> matches, String excludedId, int k) {
+        Set<String> ids = new HashSet<>();
+        for (VectorMatch match : matches) {
+            if (!match.id().equals(excludedId) && ids.size() < k) {
+                ids.add(match.id());
+            }
         }
+        return ids;
+    }
 
-        return (float) (dotProduct / (Math.sqrt(normA) * Math.sqrt(normB)));
+    private static String documentHash(KnowledgeDocument doc) {
+        return ContentHash.ofDocument(doc.getTitle(), doc.getContent(), doc.getMetadata());
     }
 
-    private static class SearchResult {
-        KnowledgeDocument document;
-        float similarity;
+    // Contenido y modelo con los que se calculó el vector de un documento
+    private record Fingerprint(String contentHash, String model) {
+    }
+
+    private VectorIndex activeIndex() {
+        return annIndex != null ? annIndex : matrix;
+    }
+
+    private void rebuildAnnIndexIfNeeded() {
+        int deleted = annIndex.getDeletedCount();
+        if (deleted > 0 && deleted > annIndex.size() * HNSW_REBUILD_RATIO) {
+            log.info("🔄 SimpleVectorStore: Reconstruyendo índice HNSW ({} nodos borrados)", deleted);
+            HnswVectorIndex rebuilt = new HnswVectorIndex(hnswM, hnswEfConstruction, annIndex.getEfSearch());
+            for (String id : matrix.ids()) {
+                float[] vector = matrix.get(id);
+                if (vector != null) {
+                    rebuilt.put(id, vector);
+                }
+            }
+            annIndex = rebuilt;
+        }
+    }
 
-        SearchResult(KnowledgeDocument document, float similarity) {
-            this.document = document;
-            this.similarity = similarity;
+    /**
+     * Estadísticas de memoria y latencia de la matriz de vectores
+     */
+    public Map<String, Object> getStats() {
+        int rows = matrix.size();
+        int dimension = Math.max(matrix.getDimension(), 0);
+        long searches = searchCount.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("documents", rows);
+        stats.put("dimension", dimension);
+        stats.put("index", activeIndex().getName());
+        stats.put("similarityKernel", SimilarityKernels.get().getName());
+        if (annIndex != null) {
+            stats.put("hnswM", annIndex.getM());
+            stats.put("hnswEfConstruction", annIndex.getEfConstruction());
+            stats.put("hnswEfSearch", annIndex.getEfSearch());
+            stats.put("hnswDeletedNodes", annIndex.getDeletedCount());
+        }
+        stats.put("matrixBytes", matrix.getMemoryBytes());
+        stats.put("matrixBytesPerVector", (long) dimension * Float.BYTES);
+        stats.put("quantization", matrix.getQuantization().name());
+        stats.put("scanBytesPerVector", matrix.getScanBytesPerVector());
+        // Referencia: List<Float> con boxing (~16 bytes por Float + 4 de referencia + cabeceras de lista)
+        stats.put("boxedListBytesEstimate", (long) rows * (dimension * 20L + 56));
+        stats.put("exactParallelThreshold", matrix.getParallelThreshold());
+        stats.put("exactScannedRows", matrix.getScannedRows());
+        stats.put("exactScannedRowsPerSecond", Math.round(matrix.getScannedRowsPerSecond()));
+        stats.put("searches", searches);
+        stats.put("persistence", segmentStore.getStats());
+        stats.put("embeddingFailures", embeddingFailures.get());
+        if (lastIndexingReport != null) {
+            stats.put("lastIndexing", lastIndexingReport);
         }
+        stats.put("avgSearchMs", searches > 0 ? searchNanos.get() / searches / 1_000_000.0 : 0.0);
+        stats.put("lastSearchMs", lastSearchNanos / 1_000_000.0);
+        return stats;
+    }
+
+    private void recordSearch(long nanos) {
+        searchCount.incrementAndGet();
+        searchNanos.addAndGet(nanos);
+        lastSearchNanos = nanos;
     }
 
     public void deleteAll() {
-        documents.clear();
-        embeddings.clear();
+        indexWriteLock.lock();
+        try {
+            documents.clear();
+            fingerprints.clear();
+            matrix.clear();
+            if (annIndex != null) {
+                annIndex.clear();
+            }
+            segmentStore.compact(List.of());
+        } finally {
+            indexWriteLock.unlock();
+        }
     }
 
     public int size() {
         return documents.size();
     }
 
+    // Indexación no incremental: añade o reemplaza todos los documentos recibidos
     public void indexDocuments(List<KnowledgeDocument> uniqueDocs) {
         log.info("🔄 Indexando con " + uniqueDocs.size() + " documentos ...");
         this.addDocs(uniqueDocs);
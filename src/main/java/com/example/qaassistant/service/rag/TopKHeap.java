@@ -0,0 +1,100 @@
+package com.example.qaassistant.service.rag;
+
+/**
+ * Min-heap de tamaño fijo sobre arrays primitivos (fila, puntuación) para quedarse
+ * con los k mejores resultados de un recorrido sin crear objetos por documento.
+ * La raíz es siempre el peor de los k retenidos.
+ */
+final class TopKHeap {
+
+    private final int[] rows;
+    private final float[] scores;
+    private int size;
+
+    TopKHeap(int capacity) {
+        this.rows = new int[capacity];
+        this.scores = new float[capacity];
+    }
+
+    /**
+     * Ofrece un candidato; solo entra si el heap no está lleno o mejora al peor retenido.
+     */
+    void offer(int row, float score) {
+        if (size < rows.length) {
+            rows[size] = row;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            rows[0] = row;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    void merge(TopKHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.rows[i], other.scores[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Vacía el heap escribiendo filas y puntuaciones ordenadas de mayor a menor.
+     *
+     * @return número de elementos escritos
+     */
+    int drainDescending(int[] outRows, float[] outScores) {
+        int count = size;
+        for (int i = count - 1; i >= 0; i--) {
+            outRows[i] = rows[0];
+            outScores[i] = scores[0];
+            size--;
+            rows[0] = rows[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return count;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                break;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && scores[right] < scores[left]) {
+                smallest = right;
+            }
+            if (scores[index] <= scores[smallest]) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int row = rows[a];
+        rows[a] = rows[b];
+        rows[b] = row;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
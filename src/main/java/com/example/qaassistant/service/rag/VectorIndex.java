@@ -0,0 +1,27 @@
+package com.example.qaassistant.service.rag;
+
+import java.util.List;
+
+/**
+ * Índice de búsqueda por similitud sobre vectores normalizados.
+ * Permite sustituir el recorrido exacto por un índice aproximado (ANN) sin tocar SimpleVectorStore.
+ */
+public interface VectorIndex {
+
+    /**
+     * Inserta o reemplaza el vector de un id.
+     *
+     * @return posición interna asignada al vector
+     */
+    int put(String id, float[] vector);
+
+    boolean remove(String id);
+
+    List<VectorMatch> search(float[] query, int k);
+
+    void clear();
+
+    int size();
+
+    String getName();
+}
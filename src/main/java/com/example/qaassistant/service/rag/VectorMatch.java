@@ -0,0 +1,7 @@
+package com.example.qaassistant.service.rag;
+
+/**
+ * Resultado de una búsqueda vectorial: id del documento y su similitud coseno con la consulta.
+ */
+public record VectorMatch(String id, float score) {
+}
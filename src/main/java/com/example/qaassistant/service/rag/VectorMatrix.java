@@ -0,0 +1,473 @@
+package com.example.qaassistant.service.rag;
+
+import com.example.qaassistant.service.rag.similarity.SimilarityKernel;
+import com.example.qaassistant.service.rag.similarity.SimilarityKernels;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Matriz de embeddings contigua en memoria (row-major sobre un único float[]).
+ *
+ * Cada fila se almacena ya normalizada (norma L2 = 1), así la similitud coseno
+ * con una consulta normalizada es un simple producto escalar, sin boxing ni
+ * recalcular normas en cada búsqueda. La dimensión se fija con el primer vector.
+ *
+ * Opcionalmente mantiene una copia cuantizada (int8 o binaria) de cada fila: el
+ * recorrido se hace sobre los códigos compactos y solo los rerankFactor·k mejores
+ * candidatos se puntúan de nuevo con los vectores float.
+ */
+public class VectorMatrix implements VectorIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MIN_SEGMENT_ROWS = 4096;
+    private static final SimilarityKernel KERNEL = SimilarityKernels.get();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> rowIndex = new HashMap<>();
+    private int dimension = -1;
+    private float[] data = new float[0];
+    private String[] rowIds = new String[0];
+    private int rows = 0;
+
+    // Representación cuantizada paralela a las filas float
+    private final QuantizationMode quantization;
+    private final int rerankFactor;
+    private byte[] int8Codes = new byte[0];
+    private float[] int8Scales = new float[0];
+    private long[] bitCodes = new long[0];
+
+    // Búsqueda exacta en paralelo (ForkJoin) a partir de este número de filas; <= 0 la desactiva
+    private volatile int parallelThreshold = 0;
+
+    // Métricas del recorrido exacto
+    private final AtomicLong scannedRows = new AtomicLong();
+    private final AtomicLong scanNanos = new AtomicLong();
+
+    public VectorMatrix() {
+        this(QuantizationMode.NONE, 1);
+    }
+
+    public VectorMatrix(QuantizationMode quantization, int rerankFactor) {
+        this.quantization = quantization;
+        this.rerankFactor = Math.max(rerankFactor, 1);
+    }
+
+    /**
+     * Inserta o reemplaza el vector de un id. El vector se copia y normaliza.
+     *
+     * @return fila asignada
+     */
+    @Override
+    public int put(String id, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            if (rows == 0 && vector.length != dimension) {
+                // Matriz vacía: se adopta la dimensión del nuevo modelo de embeddings
+                dimension = vector.length;
+                data = new float[0];
+                rowIds = new String[0];
+                int8Codes = new byte[0];
+                int8Scales = new float[0];
+                bitCodes = new long[0];
+            } else if (vector.length != dimension) {
+                throw new IllegalArgumentException("Dimensión " + vector.length +
+                        " distinta de la de la matriz (" + dimension + ")");
+            }
+
+            Integer existing = rowIndex.get(id);
+            int row = existing != null ? existing : appendRow(id);
+            int offset = row * dimension;
+            System.arraycopy(vector, 0, data, offset, dimension);
+            normalizeInPlace(data, offset, dimension);
+            encodeRow(row);
+            return row;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Elimina el vector de un id moviendo la última fila a su hueco para mantener la matriz compacta.
+     */
+    @Override
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rowIndex.remove(id);
+            if (row == null) {
+                return false;
+            }
+            int last = rows - 1;
+            if (row != last) {
+                System.arraycopy(data, last * dimension, data, row * dimension, dimension);
+                moveCodes(last, row);
+                rowIds[row] = rowIds[last];
+                rowIndex.put(rowIds[row], row);
+            }
+            rowIds[last] = null;
+            rows--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return rowIndex.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copia de la fila (normalizada) de un id, o null si no existe.
+     */
+    public float[] get(String id) {
+        lock.readLock().lock();
+        try {
+            Integer row = rowIndex.get(id);
+            if (row == null) {
+                return null;
+            }
+            return Arrays.copyOfRange(data, row * dimension, (row + 1) * dimension);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copia de los ids almacenados, en orden de fila.
+     */
+    public List<String> ids() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(Arrays.asList(rowIds).subList(0, rows));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Búsqueda exacta: producto escalar contra todas las filas pasando por un min-heap de tamaño k.
+     * Con corpus grandes el recorrido se reparte en segmentos ForkJoin y se fusionan los heaps.
+     */
+    @Override
+    public List<VectorMatch> search(float[] query, int k) {
+        lock.readLock().lock();
+        try {
+            if (rows == 0 || k <= 0 || query.length != dimension) {
+                return new ArrayList<>();
+            }
+
+            float[] q = Arrays.copyOf(query, dimension);
+            normalizeInPlace(q, 0, dimension);
+
+            long start = System.nanoTime();
+            int limit = Math.min(k, rows);
+            // Con cuantización se recogen más candidatos para el reordenado con floats
+            int candidates = quantization == QuantizationMode.NONE ? limit : Math.min(rows, limit * rerankFactor);
+            QueryCodes codes = new QueryCodes(q);
+            TopKHeap heap;
+            int threshold = parallelThreshold;
+            if (threshold > 0 && rows >= threshold) {
+                int parallelism = ForkJoinPool.getCommonPoolParallelism();
+                int segmentRows = Math.max(MIN_SEGMENT_ROWS, rows / (parallelism * 4));
+                heap = ForkJoinPool.commonPool().invoke(new ScanTask(codes, 0, rows, candidates, segmentRows));
+            } else {
+                heap = scan(codes, 0, rows, candidates);
+            }
+            if (quantization != QuantizationMode.NONE) {
+                heap = rerank(q, heap, limit);
+            }
+            scanNanos.addAndGet(System.nanoTime() - start);
+            scannedRows.addAndGet(rows);
+
+            int[] topRows = new int[heap.size()];
+            float[] topScores = new float[heap.size()];
+            int count = heap.drainDescending(topRows, topScores);
+
+            List<VectorMatch> matches = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                matches.add(new VectorMatch(rowIds[topRows[i]], topScores[i]));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Búsqueda exacta en float sobre todas las filas, aunque la matriz esté cuantizada: es la verdad
+     * de referencia para medir recall. No cuenta en las métricas del recorrido.
+     */
+    public List<VectorMatch> exactSearch(float[] query, int k) {
+        lock.readLock().lock();
+        try {
+            if (rows == 0 || k <= 0 || query.length != dimension) {
+                return new ArrayList<>();
+            }
+            float[] q = Arrays.copyOf(query, dimension);
+            normalizeInPlace(q, 0, dimension);
+            TopKHeap heap = new TopKHeap(Math.min(k, rows));
+            for (int row = 0; row < rows; row++) {
+                heap.offer(row, dot(q, data, row * dimension, dimension));
+            }
+            int[] topRows = new int[heap.size()];
+            float[] topScores = new float[heap.size()];
+            int count = heap.drainDescending(topRows, topScores);
+            List<VectorMatch> matches = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                matches.add(new VectorMatch(rowIds[topRows[i]], topScores[i]));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TopKHeap scan(QueryCodes codes, int from, int to, int limit) {
+        TopKHeap heap = new TopKHeap(limit);
+        switch (quantization) {
+            case INT8 -> {
+                for (int row = from; row < to; row++) {
+                    int dot = VectorQuantizer.int8Dot(codes.int8, 0, int8Codes, row * dimension, dimension);
+                    heap.offer(row, dot * int8Scales[row]);
+                }
+            }
+            case BINARY -> {
+                int words = VectorQuantizer.wordsPerVector(dimension);
+                for (int row = from; row < to; row++) {
+                    heap.offer(row, -VectorQuantizer.hamming(codes.bits, 0, bitCodes, row * words, words));
+                }
+            }
+            default -> {
+                for (int row = from; row < to; row++) {
+                    heap.offer(row, dot(codes.vector, data, row * dimension, dimension));
+                }
+            }
+        }
+        return heap;
+    }
+
+    // Reordena los candidatos del recorrido cuantizado con el producto escalar en float
+    private TopKHeap rerank(float[] q, TopKHeap candidates, int limit) {
+        int[] candidateRows = new int[candidates.size()];
+        float[] ignored = new float[candidates.size()];
+        int count = candidates.drainDescending(candidateRows, ignored);
+        TopKHeap heap = new TopKHeap(limit);
+        for (int i = 0; i < count; i++) {
+            int row = candidateRows[i];
+            heap.offer(row, dot(q, data, row * dimension, dimension));
+        }
+        return heap;
+    }
+
+    // Tarea ForkJoin que divide el rango de filas hasta segmentos de tamaño 'segmentRows'
+    private class ScanTask extends RecursiveTask<TopKHeap> {
+        private final QueryCodes q;
+        private final int from;
+        private final int to;
+        private final int limit;
+        private final int segmentRows;
+
+        ScanTask(QueryCodes q, int from, int to, int limit, int segmentRows) {
+            this.q = q;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+            this.segmentRows = segmentRows;
+        }
+
+        @Override
+        protected TopKHeap compute() {
+            if (to - from <= segmentRows) {
+                return scan(q, from, to, limit);
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(q, from, mid, limit, segmentRows);
+            left.fork();
+            TopKHeap right = new ScanTask(q, mid, to, limit, segmentRows).compute();
+            TopKHeap merged = left.join();
+            merged.merge(right);
+            return merged;
+        }
+    }
+
+    // Consulta preparada en la misma representación que las filas
+    private class QueryCodes {
+        final float[] vector;
+        final byte[] int8;
+        final long[] bits;
+
+        QueryCodes(float[] vector) {
+            this.vector = vector;
+            if (quantization == QuantizationMode.INT8) {
+                int8 = new byte[dimension];
+                VectorQuantizer.encodeInt8(vector, 0, dimension, int8, 0);
+            } else {
+                int8 = null;
+            }
+            if (quantization == QuantizationMode.BINARY) {
+                bits = new long[VectorQuantizer.wordsPerVector(dimension)];
+                VectorQuantizer.encodeBits(vector, 0, dimension, bits, 0);
+            } else {
+                bits = null;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            rowIndex.clear();
+            data = new float[0];
+            rowIds = new String[0];
+            int8Codes = new byte[0];
+            int8Scales = new float[0];
+            bitCodes = new long[0];
+            rows = 0;
+            dimension = -1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return quantization == QuantizationMode.NONE ? "exact" : "exact-" + quantization.name().toLowerCase();
+    }
+
+    public QuantizationMode getQuantization() {
+        return quantization;
+    }
+
+    public int getRerankFactor() {
+        return rerankFactor;
+    }
+
+    /**
+     * Bytes por vector de la representación que se recorre en la búsqueda.
+     */
+    public long getScanBytesPerVector() {
+        int dim = Math.max(dimension, 0);
+        return switch (quantization) {
+            case INT8 -> dim + Float.BYTES;
+            case BINARY -> (long) VectorQuantizer.wordsPerVector(dim) * Long.BYTES;
+            default -> (long) dim * Float.BYTES;
+        };
+    }
+
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public long getScannedRows() {
+        return scannedRows.get();
+    }
+
+    /**
+     * Filas por segundo del recorrido exacto acumulado (solo el cálculo de similitudes).
+     */
+    public double getScannedRowsPerSecond() {
+        long nanos = scanNanos.get();
+        return nanos > 0 ? scannedRows.get() * 1_000_000_000.0 / nanos : 0.0;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Bytes ocupados por la matriz primitiva (capacidad reservada incluida).
+     */
+    public long getMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) data.length * Float.BYTES
+                    + int8Codes.length
+                    + (long) int8Scales.length * Float.BYTES
+                    + (long) bitCodes.length * Long.BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Métodos auxiliares
+
+    private int appendRow(String id) {
+        if (rows == rowIds.length) {
+            int newCapacity = Math.max(INITIAL_CAPACITY, rowIds.length * 2);
+            rowIds = Arrays.copyOf(rowIds, newCapacity);
+            data = Arrays.copyOf(data, newCapacity * dimension);
+            if (quantization == QuantizationMode.INT8) {
+                int8Codes = Arrays.copyOf(int8Codes, newCapacity * dimension);
+                int8Scales = Arrays.copyOf(int8Scales, newCapacity);
+            } else if (quantization == QuantizationMode.BINARY) {
+                bitCodes = Arrays.copyOf(bitCodes, newCapacity * VectorQuantizer.wordsPerVector(dimension));
+            }
+        }
+        int row = rows++;
+        rowIds[row] = id;
+        rowIndex.put(id, row);
+        return row;
+    }
+
+    private void encodeRow(int row) {
+        if (quantization == QuantizationMode.INT8) {
+            int8Scales[row] = VectorQuantizer.encodeInt8(data, row * dimension, dimension, int8Codes, row * dimension);
+        } else if (quantization == QuantizationMode.BINARY) {
+            int words = VectorQuantizer.wordsPerVector(dimension);
+            VectorQuantizer.encodeBits(data, row * dimension, dimension, bitCodes, row * words);
+        }
+    }
+
+    private void moveCodes(int from, int to) {
+        if (quantization == QuantizationMode.INT8) {
+            System.arraycopy(int8Codes, from * dimension, int8Codes, to * dimension, dimension);
+            int8Scales[to] = int8Scales[from];
+        } else if (quantization == QuantizationMode.BINARY) {
+            int words = VectorQuantizer.wordsPerVector(dimension);
+            System.arraycopy(bitCodes, from * words, bitCodes, to * words, words);
+        }
+    }
+
+    static float dot(float[] query, float[] matrix, int offset, int dimension) {
+        return KERNEL.dot(query, 0, matrix, offset, dimension);
+    }
+
+    static void normalizeInPlace(float[] vector, int offset, int dimension) {
+        float norm = KERNEL.squaredNorm(vector, offset, dimension);
+        if (norm <= 0f) {
+            return;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = offset; i < offset + dimension; i++) {
+            vector[i] *= inv;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.qaassistant.service.rag;
+
+/**
+ * Codificación y puntuación de vectores cuantizados (int8 escalar y binario de signo).
+ */
+final class VectorQuantizer {
+
+    private VectorQuantizer() {
+    }
+
+    /**
+     * Cuantiza a int8 con escala simétrica por vector (max |v| = 127).
+     *
+     * @return escala para reconstruir el valor: v ≈ code · escala
+     */
+    static float encodeInt8(float[] vector, int offset, int dimension, byte[] codes, int codeOffset) {
+        float maxAbs = 0f;
+        for (int i = offset; i < offset + dimension; i++) {
+            maxAbs = Math.max(maxAbs, Math.abs(vector[i]));
+        }
+        float scale = maxAbs > 0 ? maxAbs / 127f : 1f;
+        float inv = 1f / scale;
+        for (int i = 0; i < dimension; i++) {
+            int code = Math.round(vector[offset + i] * inv);
+            codes[codeOffset + i] = (byte) Math.max(-127, Math.min(127, code));
+        }
+        return scale;
+    }
+
+    static int int8Dot(byte[] a, int aOffset, byte[] b, int bOffset, int dimension) {
+        int sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    static int wordsPerVector(int dimension) {
+        return (dimension + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Un bit por dimensión: 1 si el valor es positivo.
+     */
+    static void encodeBits(float[] vector, int offset, int dimension, long[] bits, int wordOffset) {
+        int words = wordsPerVector(dimension);
+        for (int w = 0; w < words; w++) {
+            bits[wordOffset + w] = 0L;
+        }
+        for (int i = 0; i < dimension; i++) {
+            if (vector[offset + i] > 0f) {
+                bits[wordOffset + (i >>> 6)] |= 1L << (i & 63);
+            }
+        }
+    }
+
+    static int hamming(long[] a, int aOffset, long[] b, int bOffset, int words) {
+        int distance = 0;
+        for (int w = 0; w < words; w++) {
+            distance += Long.bitCount(a[aOffset + w] ^ b[bOffset + w]);
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,403 @@
+package com.example.qaassistant.service.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistencia de la base vectorial en ficheros de segmento append-only.
+ *
+ * Cada registro es [longitud][crc32][payload] y puede ser un PUT (documento + vector)
+ * o un DELETE (id). Al arrancar los segmentos se abren con FileChannel.map y se
+ * reproducen en orden: el último registro de cada id gana. La compactación reescribe
+ * solo los documentos vivos en un segmento nuevo y elimina los anteriores.
+ *
+ * Las escrituras hacen E/S de fichero con el cerrojo tomado; se usa ReentrantLock y no synchronized
+ * para no fijar (pinning) el hilo portador cuando las peticiones corren en hilos virtuales.
+ */
+@Component
+public class VectorSegmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(VectorSegmentStore.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".vseg";
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Value("${vector.store.persistence.enabled:true}")
+    private boolean enabled;
+
+    @Value("${vector.store.persistence.dir:./data/vector-store}")
+    private String directory;
+
+    @Value("${vector.store.persistence.max-segment-bytes:67108864}")
+    private long maxSegmentBytes;
+
+    private FileChannel activeChannel;
+    private int activeSegment = 0;
+    private long totalRecords = 0;
+
+    /**
+     * Documento tal y como se guarda en disco.
+     */
+    public record StoredDocument(String id, String contentHash, String model, String title,
+                                 String content, Map<String, Object> metadata, float[] vector) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Lee todos los segmentos y devuelve el estado vivo (último PUT de cada id sin DELETE posterior).
+     */
+    public Map<String, StoredDocument> load() {
+        lock.lock();
+        try {
+            Map<String, StoredDocument> live = new LinkedHashMap<>();
+            if (!enabled) {
+                return live;
+            }
+            totalRecords = 0;
+            try {
+                Path dir = Paths.get(directory);
+                Files.createDirectories(dir);
+                for (Path segment : listSegments(dir)) {
+                    readSegment(segment, live);
+                    activeSegment = Math.max(activeSegment, segmentNumber(segment));
+                }
+                openActiveSegment();
+                log.info("💽 VectorSegmentStore: {} documentos vivos en {} registros ({})",
+                        live.size(), totalRecords, dir.toAbsolutePath());
+            } catch (IOException e) {
+                log.error("❌ VectorSegmentStore: Error leyendo segmentos, se continúa sin persistencia", e);
+                enabled = false;
+            }
+            return live;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void appendPut(StoredDocument doc) {
+        lock.lock();
+        try {
+            if (!enabled) {
+                return;
+            }
+            try {
+                ensureOpen();
+                writeRecord(activeChannel, encodePut(doc));
+                rollIfNeeded();
+            } catch (IOException e) {
+                log.error("❌ VectorSegmentStore: Error persistiendo documento {}", doc.id(), e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void appendDelete(String id) {
+        lock.lock();
+        try {
+            if (!enabled) {
+                return;
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeByte(TYPE_DELETE);
+                writeString(out, id);
+                ensureOpen();
+                writeRecord(activeChannel, bytes.toByteArray());
+            } catch (IOException e) {
+                log.error("❌ VectorSegmentStore: Error persistiendo borrado de {}", id, e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reescribe los documentos vivos en un único segmento nuevo y borra los anteriores.
+     *
+     * @return registros descartados (borrados y versiones sustituidas)
+     */
+    public long compact(Collection<StoredDocument> live) {
+        lock.lock();
+        try {
+            if (!enabled) {
+                return 0;
+            }
+            try {
+                Path dir = Paths.get(directory);
+                List<Path> oldSegments = listSegments(dir);
+                long discarded = totalRecords - live.size();
+
+                if (activeChannel != null) {
+                    activeChannel.close();
+                }
+                activeSegment++;
+                Path target = segmentPath(dir, activeSegment);
+                Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    for (StoredDocument doc : live) {
+                        writeRecord(channel, encodePut(doc));
+                    }
+                    channel.force(true);
+                }
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                for (Path segment : oldSegments) {
+                    Files.deleteIfExists(segment);
+                }
+                totalRecords = live.size();
+                openActiveSegment();
+
+                log.info("🧹 VectorSegmentStore: Compactación completada, {} registros descartados, {} vivos",
+                        discarded, live.size());
+                return discarded;
+            } catch (IOException e) {
+                log.error("❌ VectorSegmentStore: Error compactando segmentos", e);
+                return 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Proporción de registros en disco que ya no están vivos.
+     */
+    public double deadRatio(int liveDocuments) {
+        lock.lock();
+        try {
+            return totalRecords > 0 ? (double) (totalRecords - liveDocuments) / totalRecords : 0.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("persistenceEnabled", enabled);
+            stats.put("directory", directory);
+            stats.put("records", totalRecords);
+            stats.put("activeSegment", activeSegment);
+            if (enabled) {
+                try {
+                    long bytes = 0;
+                    List<Path> segments = listSegments(Paths.get(directory));
+                    for (Path segment : segments) {
+                        bytes += Files.size(segment);
+                    }
+                    stats.put("segments", segments.size());
+                    stats.put("diskBytes", bytes);
+                } catch (IOException e) {
+                    stats.put("diskBytes", -1);
+                }
+            }
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.lock();
+        try {
+            if (activeChannel != null && activeChannel.isOpen()) {
+                try {
+                    activeChannel.force(true);
+                    activeChannel.close();
+                } catch (IOException e) {
+                    log.warn("VectorSegmentStore: Error cerrando segmento activo", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Lectura de segmentos
+
+    private void readSegment(Path segment, Map<String, StoredDocument> live) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long validEnd = 0;
+            while (buffer.remaining() >= Integer.BYTES * 2) {
+                int length = buffer.getInt();
+                int crc = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                if (crc != (int) crc32(payload.duplicate())) {
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                applyRecord(payload, live);
+                totalRecords++;
+                validEnd = buffer.position();
+            }
+            if (validEnd < size) {
+                // Cola incompleta (escritura interrumpida): se trunca para seguir añadiendo detrás
+                log.warn("⚠️ VectorSegmentStore: Segmento {} truncado en {} de {} bytes", segment.getFileName(), validEnd, size);
+                channel.truncate(validEnd);
+            }
+        }
+    }
+
+    private void applyRecord(ByteBuffer payload, Map<String, StoredDocument> live) throws IOException {
+        byte type = payload.get();
+        String id = readString(payload);
+        if (type == TYPE_DELETE) {
+            live.remove(id);
+            return;
+        }
+        String contentHash = readString(payload);
+        String model = readString(payload);
+        String title = readString(payload);
+        String content = readString(payload);
+        String metadataJson = readString(payload);
+        int dimension = payload.getInt();
+        float[] vector = new float[dimension];
+        payload.asFloatBuffer().get(vector);
+
+        Map<String, Object> metadata = metadataJson.isEmpty() ? new HashMap<>()
+                : objectMapper.readValue(metadataJson, new TypeReference<Map<String, Object>>() {});
+        live.remove(id); // conservar el orden de la última escritura
+        live.put(id, new StoredDocument(id, contentHash, model, title, content, metadata, vector));
+    }
+
+    // Escritura de segmentos
+
+    private byte[] encodePut(StoredDocument doc) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + doc.vector().length * Float.BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_PUT);
+        writeString(out, doc.id());
+        writeString(out, doc.contentHash());
+        writeString(out, doc.model());
+        writeString(out, doc.title());
+        writeString(out, doc.content());
+        writeString(out, doc.metadata() == null || doc.metadata().isEmpty() ? ""
+                : objectMapper.writeValueAsString(doc.metadata()));
+        out.writeInt(doc.vector().length);
+        for (float value : doc.vector()) {
+            out.writeFloat(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeRecord(FileChannel channel, byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc32(ByteBuffer.wrap(payload)));
+        record.put(payload);
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        totalRecords++;
+    }
+
+    private void rollIfNeeded() throws IOException {
+        if (activeChannel.size() >= maxSegmentBytes) {
+            activeChannel.force(true);
+            activeChannel.close();
+            activeSegment++;
+            openActiveSegment();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (activeChannel == null || !activeChannel.isOpen()) {
+            Files.createDirectories(Paths.get(directory));
+            openActiveSegment();
+        }
+    }
+
+    private void openActiveSegment() throws IOException {
+        if (activeSegment == 0) {
+            activeSegment = 1;
+        }
+        activeChannel = FileChannel.open(segmentPath(Paths.get(directory), activeSegment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Métodos auxiliares
+
+    private static List<Path> listSegments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingInt(VectorSegmentStore::segmentNumber))
+                    .toList();
+        }
+    }
+
+    private static Path segmentPath(Path dir, int number) {
+        return dir.resolve(SEGMENT_PREFIX + String.format("%06d", number) + SEGMENT_SUFFIX);
+    }
+
+    private static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static long crc32(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
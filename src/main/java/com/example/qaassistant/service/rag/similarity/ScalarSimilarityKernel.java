@@ -0,0 +1,30 @@
+package com.example.qaassistant.service.rag.similarity;
+
+/**
+ * Implementación escalar de referencia, usada cuando la Vector API no está disponible.
+ */
+public class ScalarSimilarityKernel implements SimilarityKernel {
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float squaredNorm(float[] vector, int offset, int length) {
+        float sum = 0f;
+        for (int i = offset; i < offset + length; i++) {
+            sum += vector[i] * vector[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
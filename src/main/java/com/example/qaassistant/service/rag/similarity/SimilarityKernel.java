@@ -0,0 +1,31 @@
+package com.example.qaassistant.service.rag.similarity;
+
+/**
+ * Núcleo de cálculo de similitud sobre vectores primitivos.
+ * Las implementaciones deben ser seguras para uso concurrente (sin estado mutable).
+ */
+public interface SimilarityKernel {
+
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    float squaredNorm(float[] vector, int offset, int length);
+
+    String getName();
+
+    default float dot(float[] a, float[] b) {
+        return dot(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * Similitud coseno acotada a [-1, 1]; 0 si alguno de los vectores es nulo.
+     */
+    default float cosine(float[] a, float[] b) {
+        float normA = squaredNorm(a, 0, a.length);
+        float normB = squaredNorm(b, 0, b.length);
+        if (normA <= 0 || normB <= 0) {
+            return 0.0f;
+        }
+        float similarity = (float) (dot(a, b) / (Math.sqrt(normA) * Math.sqrt(normB)));
+        return Math.max(-1.0f, Math.min(1.0f, similarity));
+    }
+}
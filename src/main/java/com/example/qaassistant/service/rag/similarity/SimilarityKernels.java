@@ -0,0 +1,105 @@
+package com.example.qaassistant.service.rag.similarity;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Selección del núcleo de similitud al arrancar: SIMD si el módulo jdk.incubator.vector
+ * está cargado en la JVM, escalar en caso contrario. Se puede forzar el escalar con
+ * -Dvector.simd.enabled=false.
+ */
+public final class SimilarityKernels {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarityKernels.class);
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final SimilarityKernel SCALAR = new ScalarSimilarityKernel();
+    private static final SimilarityKernel SIMD = loadSimdKernel();
+    private static final SimilarityKernel ACTIVE = SIMD != null ? SIMD : SCALAR;
+
+    private SimilarityKernels() {
+    }
+
+    public static SimilarityKernel get() {
+        return ACTIVE;
+    }
+
+    public static SimilarityKernel scalar() {
+        return SCALAR;
+    }
+
+    public static boolean isSimdAvailable() {
+        return SIMD != null;
+    }
+
+    /**
+     * Micro-benchmark en caliente de las implementaciones disponibles para una dimensión dada
+     * (384 = all-minilm, 768 = nomic-embed-text). Devuelve ns por producto escalar.
+     */
+    public static Map<String, Object> benchmark(int dimension, int iterations) {
+        Random random = new Random(42);
+        float[] a = new float[dimension];
+        float[] b = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            a[i] = random.nextFloat() * 2 - 1;
+            b[i] = random.nextFloat() * 2 - 1;
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("dimension", dimension);
+        report.put("iterations", iterations);
+        report.put("active", ACTIVE.getName());
+        double scalarNs = measure(SCALAR, a, b, iterations);
+        report.put("scalarNsPerOp", scalarNs);
+        if (SIMD != null) {
+            double simdNs = measure(SIMD, a, b, iterations);
+            report.put("simdNsPerOp", simdNs);
+            report.put("speedup", simdNs > 0 ? Math.round(scalarNs / simdNs * 100.0) / 100.0 : 0.0);
+        }
+        return report;
+    }
+
+    private static double measure(SimilarityKernel kernel, float[] a, float[] b, int iterations) {
+        float sink = 0f;
+        // Calentamiento para que el JIT compile el bucle antes de medir
+        for (int i = 0; i < iterations; i++) {
+            sink += kernel.dot(a, b);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += kernel.dot(a, b);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == Float.MIN_VALUE) {
+            log.trace("sink {}", sink);
+        }
+        return Math.round((double) elapsed / iterations * 100.0) / 100.0;
+    }
+
+    private static SimilarityKernel loadSimdKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("vector.simd.enabled", "true"))) {
+            log.info("🧮 Similitud: SIMD desactivado por configuración, usando núcleo escalar");
+            return null;
+        }
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            // java -jar no hereda los argumentos del plugin de Maven: hay que pasar el flag al lanzar el jar
+            log.warn("⚠️ Similitud: módulo {} no cargado, usando núcleo escalar. Arranca la JVM con "
+                    + "--add-modules {} (o JDK_JAVA_OPTIONS=\"--add-modules {}\") para activar SIMD",
+                    VECTOR_MODULE, VECTOR_MODULE, VECTOR_MODULE);
+            return null;
+        }
+        try {
+            SimilarityKernel kernel = new VectorApiSimilarityKernel();
+            kernel.dot(new float[16], new float[16]);
+            log.info("🧮 Similitud: usando núcleo {}", kernel.getName());
+            return kernel;
+        } catch (Throwable e) {
+            log.warn("⚠️ Similitud: Vector API no utilizable ({}), usando núcleo escalar", e.toString());
+            return null;
+        }
+    }
+}
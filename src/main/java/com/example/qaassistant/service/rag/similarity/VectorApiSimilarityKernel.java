@@ -0,0 +1,41 @@
+package com.example.qaassistant.service.rag.similarity;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementación SIMD con jdk.incubator.vector (requiere --add-modules jdk.incubator.vector).
+ * Acumula con FMA sobre el ancho de registro preferido de la CPU y termina la cola en escalar.
+ */
+public class VectorApiSimilarityKernel implements SimilarityKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int upperBound = SPECIES.loopBound(length);
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float squaredNorm(float[] vector, int offset, int length) {
+        return dot(vector, offset, vector, offset, length);
+    }
+
+    @Override
+    public String getName() {
+        return "simd-" + SPECIES.vectorBitSize() + "bit";
+    }
+}
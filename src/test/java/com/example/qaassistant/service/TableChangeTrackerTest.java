@@ -0,0 +1,46 @@
+package com.example.qaassistant.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Registro de escrituras de scripts SQL (data.sql) en TableChangeTracker.
+ */
+class TableChangeTrackerTest {
+
+    @Test
+    void scriptBumpsEachWrittenTableOnce() {
+        TableChangeTracker tracker = new TableChangeTracker();
+        tracker.registerTables(List.of("APLICACION", "EQUIPO", "ITINERARIO"));
+        List<String> notified = new ArrayList<>();
+        tracker.addListener(notified::add);
+
+        Set<String> tables = tracker.recordScript("""
+                -- Datos iniciales
+                INSERT INTO aplicacion (id, nombre) VALUES (1, 'Portal; clientes');
+                INSERT INTO aplicacion (id, nombre) VALUES (2, 'Backoffice');
+                insert into PUBLIC."ITINERARIO" (id) values (1); UPDATE aplicacion SET nombre = 'x' WHERE id = 2;
+                SELECT * FROM equipo;
+                """);
+
+        assertEquals(Set.of("aplicacion", "itinerario"), tables);
+        assertEquals(Map.of("aplicacion", 1L, "itinerario", 1L), tracker.currentVersions());
+        assertEquals(0L, tracker.version("equipo"), "las tablas que el script solo lee no cambian");
+        assertEquals(List.of("aplicacion", "itinerario"), notified);
+    }
+
+    @Test
+    void scriptWithoutWritesChangesNothing() {
+        TableChangeTracker tracker = new TableChangeTracker();
+        tracker.registerTables(List.of("aplicacion"));
+
+        assertEquals(Set.of(), tracker.recordScript("SELECT 1;\n-- sin escrituras\n"));
+        assertEquals(Map.of(), tracker.currentVersions());
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.qaassistant.service;
+
+import com.example.qaassistant.model.rag.KnowledgeDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ida y vuelta de UnifiedQueryResultCodec: cada etiqueta de tipo, listas y cadenas nulas,
+ * cadenas de más de 64 KB y errores de formato.
+ */
+class UnifiedQueryResultCodecTest {
+
+    @Test
+    void everyValueTypeKeepsItsClassAndValue() {
+        Timestamp timestamp = Timestamp.valueOf("2024-03-15 10:20:30.123456789");
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("nulo", null);
+        row.put("texto", "Aplicación QA");
+        row.put("entero", 42);
+        row.put("largo", 9_000_000_000L);
+        row.put("doble", 0.1 + 0.2);
+        row.put("flotante", 1.5f);
+        row.put("booleano", true);
+        row.put("decimal", new BigDecimal("12345678901234567890.000123"));
+        row.put("timestamp", timestamp);
+        row.put("fecha", java.sql.Date.valueOf("2024-02-29"));
+        row.put("localDate", LocalDate.of(1999, 12, 31));
+        row.put("localDateTime", LocalDateTime.of(2024, 1, 2, 3, 4, 5, 6));
+
+        UnifiedQueryResult decoded = roundTrip(resultWithRows(List.of(row)));
+
+        Map<String, Object> decodedRow = decoded.getRawResults().get(0);
+        assertEquals(new ArrayList<>(row.keySet()), new ArrayList<>(decodedRow.keySet()), "orden de columnas");
+        for (Map.Entry<String, Object> column : row.entrySet()) {
+            Object expected = column.getValue();
+            Object actual = decodedRow.get(column.getKey());
+            assertEquals(expected, actual, column.getKey());
+            if (expected != null) {
+                assertEquals(expected.getClass(), actual.getClass(), column.getKey());
+            }
+        }
+        assertEquals(123456789, ((Timestamp) decodedRow.get("timestamp")).getNanos());
+    }
+
+    @Test
+    void otherTypesAreStoredAsTheirText() {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("intent", QuestionIntent.RAG);
+        row.put("corto", (short) 7);
+
+        Map<String, Object> decodedRow = roundTrip(resultWithRows(List.of(row))).getRawResults().get(0);
+
+        assertEquals("RAG", decodedRow.get("intent"));
+        assertEquals("7", decodedRow.get("corto"));
+    }
+
+    @Test
+    void nullListsAndStringsStayNull() {
+        UnifiedQueryResult result = new UnifiedQueryResult();
+        result.setSuccess(false);
+
+        UnifiedQueryResult decoded = roundTrip(result);
+
+        assertNull(decoded.getOriginalQuestion());
+        assertNull(decoded.getIntent());
+        assertNull(decoded.getAnswer());
+        assertNull(decoded.getGeneratedSQL());
+        assertNull(decoded.getErrorMessage());
+        assertNull(decoded.getSuggestions());
+        assertNull(decoded.getRawResults());
+        assertNull(decoded.getSources());
+        assertFalse(decoded.isSuccess());
+    }
+
+    @Test
+    void emptyListsAndNullElementsAreKept() {
+        UnifiedQueryResult result = new UnifiedQueryResult();
+        result.setSuggestions(Arrays.asList("primera", null, ""));
+        result.setRawResults(new ArrayList<>());
+        result.setSources(new ArrayList<>());
+
+        UnifiedQueryResult decoded = roundTrip(result);
+
+        assertEquals(Arrays.asList("primera", null, ""), decoded.getSuggestions());
+        assertEquals(List.of(), decoded.getRawResults());
+        assertEquals(List.of(), decoded.getSources());
+    }
+
+    @Test
+    void stringsLongerThan64KbRoundTrip() {
+        // Caracteres de 1, 2, 3 y 4 bytes en UTF-8: más de 64 KB tanto en caracteres como en bytes
+        String answer = "a ñ € 😀 ".repeat(20_000);
+        assertTrue(answer.getBytes(StandardCharsets.UTF_8).length > 65_535);
+        UnifiedQueryResult result = new UnifiedQueryResult();
+        result.setAnswer(answer);
+        result.setRawResults(List.of(new LinkedHashMap<>(Map.of("texto", answer))));
+
+        UnifiedQueryResult decoded = roundTrip(result);
+
+        assertEquals(answer, decoded.getAnswer());
+        assertEquals(answer, decoded.getRawResults().get(0).get("texto"));
+    }
+
+    @Test
+    void scalarFieldsAndSourcesRoundTrip() {
+        KnowledgeDocument doc = new KnowledgeDocument("doc-1", "Contenido de la guía", "Guía");
+        doc.addMetadata("tipo", "manual");
+        doc.addMetadata("version", 3);
+        doc.setEmbedding(List.of(0.1f, 0.2f));
+        KnowledgeDocument withoutMetadata = new KnowledgeDocument("doc-2", "Otro", "Sin metadatos");
+        withoutMetadata.setMetadata(null);
+
+        UnifiedQueryResult result = new UnifiedQueryResult();
+        result.setOriginalQuestion("¿Cuántas aplicaciones hay?");
+        result.setIntent("SQL");
+        result.setAnswer("Hay 3");
+        result.setGeneratedSQL("SELECT COUNT(*) FROM APLICACION");
+        result.setErrorMessage("ninguno");
+        result.setSuccess(true);
+        result.setSources(List.of(doc, withoutMetadata));
+
+        UnifiedQueryResult decoded = roundTrip(result);
+
+        assertEquals(result.getOriginalQuestion(), decoded.getOriginalQuestion());
+        assertEquals(result.getIntent(), decoded.getIntent());
+        assertEquals(result.getAnswer(), decoded.getAnswer());
+        assertEquals(result.getGeneratedSQL(), decoded.getGeneratedSQL());
+        assertEquals(result.getErrorMessage(), decoded.getErrorMessage());
+        assertTrue(decoded.isSuccess());
+
+        KnowledgeDocument decodedDoc = decoded.getSources().get(0);
+        assertEquals("doc-1", decodedDoc.getId());
+        assertEquals("Guía", decodedDoc.getTitle());
+        assertEquals("Contenido de la guía", decodedDoc.getContent());
+        assertEquals(Map.of("tipo", "manual", "version", 3), decodedDoc.getMetadata());
+        assertNull(decodedDoc.getEmbedding(), "los embeddings no se guardan");
+        // Metadatos nulos vuelven como mapa vacío para que addMetadata siga funcionando
+        assertEquals(Map.of(), decoded.getSources().get(1).getMetadata());
+    }
+
+    @Test
+    void unsupportedVersionIsRejected() {
+        byte[] data = UnifiedQueryResultCodec.encode(new UnifiedQueryResult());
+        data[0] = 99;
+
+        assertThrows(IllegalArgumentException.class, () -> UnifiedQueryResultCodec.decode(data));
+    }
+
+    @Test
+    void unknownValueTypeIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(1);                   // versión
+        for (int i = 0; i < 5; i++) {
+            out.writeBoolean(false);        // pregunta, intent, respuesta, SQL, error
+        }
+        out.writeBoolean(true);             // success
+        out.writeInt(-1);                   // suggestions
+        out.writeInt(1);                    // una fila...
+        out.writeInt(1);                    // ...con una columna
+        out.writeBoolean(true);
+        out.writeInt(1);
+        out.write('x');
+        out.writeByte(127);                 // etiqueta de tipo desconocida
+
+        assertThrows(UncheckedIOException.class, () -> UnifiedQueryResultCodec.decode(bytes.toByteArray()));
+    }
+
+    // Métodos auxiliares
+
+    private static UnifiedQueryResult roundTrip(UnifiedQueryResult result) {
+        return UnifiedQueryResultCodec.decode(UnifiedQueryResultCodec.encode(result));
+    }
+
+    private static UnifiedQueryResult resultWithRows(List<Map<String, Object>> rows) {
+        UnifiedQueryResult result = new UnifiedQueryResult();
+        result.setRawResults(rows);
+        return result;
+    }
+}
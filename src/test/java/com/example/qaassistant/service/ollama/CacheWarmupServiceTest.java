@@ -0,0 +1,60 @@
+package com.example.qaassistant.service.ollama;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * El pre-calentamiento de arranque espera a la aplicación lista y a la carga de data.sql registrada.
+ */
+class CacheWarmupServiceTest {
+
+    @Test
+    void startupWarmUpWaitsForSchemaInitialization() {
+        CountingWarmupService service = new CountingWarmupService();
+
+        service.onApplicationReady();
+        assertEquals(0, service.startupWarmUps, "sin SchemaInitializedEvent todavía");
+
+        service.onSchemaInitialized();
+        assertEquals(1, service.startupWarmUps);
+    }
+
+    @Test
+    void startupWarmUpWaitsForApplicationReady() {
+        CountingWarmupService service = new CountingWarmupService();
+
+        service.onSchemaInitialized();
+        assertEquals(0, service.startupWarmUps, "DataInitializer aún no cargó la base de conocimiento");
+
+        service.onApplicationReady();
+        assertEquals(1, service.startupWarmUps);
+    }
+
+    @Test
+    void startupWarmUpRunsOnce() {
+        CountingWarmupService service = new CountingWarmupService();
+
+        service.onSchemaInitialized();
+        service.onApplicationReady();
+        // Una señal repetida no relanza el pre-calentamiento de arranque
+        service.onApplicationReady();
+
+        assertEquals(1, service.startupWarmUps);
+    }
+
+    // Stubs
+
+    private static final class CountingWarmupService extends CacheWarmupService {
+        private int startupWarmUps;
+
+        CountingWarmupService() {
+            super(null, null, null);
+        }
+
+        @Override
+        void warmUpOnStartup() {
+            startupWarmUps++;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.qaassistant.service.ollama;
+
+import com.example.qaassistant.model.rag.KnowledgeDocument;
+import com.example.qaassistant.service.*;
+import com.example.qaassistant.service.metrics.QaMetrics;
+import com.example.qaassistant.service.rag.EmbeddingService;
+import com.example.qaassistant.service.rag.RagService;
+import com.example.qaassistant.service.rag.SimpleVectorStore;
+import com.example.qaassistant.service.rag.VectorSegmentStore;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Carga concurrente sobre processQuestionAsync con un scheduler de pocos hilos.
+ *
+ * El embedding de la pregunta lo sirve un stub con retardo no bloqueante (como una llamada a Ollama
+ * por WebClient). Con N preguntas distintas y M < N hilos en el scheduler, las N esperas deben
+ * solaparse: si un hilo del scheduler esperase a Ollama, el tiempo total sería del orden de N/M retardos.
+ */
+class CachedUnifiedQAServiceConcurrencyTest {
+
+    private static final int REQUESTS = 32;
+    private static final int SCHEDULER_THREADS = 2;
+    private static final Duration EMBEDDING_DELAY = Duration.ofMillis(300);
+
+    private Scheduler jdbcScheduler;
+    private DelayedEmbeddingService embeddingService;
+    private CachedUnifiedQAService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbcScheduler = Schedulers.newBoundedElastic(SCHEDULER_THREADS, 10_000, "test-jdbc");
+        embeddingService = new DelayedEmbeddingService(EMBEDDING_DELAY);
+
+        SimpleVectorStore vectorStore = new SimpleVectorStore(embeddingService, new VectorSegmentStore());
+        KnowledgeDocument doc = new KnowledgeDocument("doc-1", "Guía de calidad", "Calidad");
+        doc.setEmbedding(EmbeddingService.toList(new float[]{1f, 0f, 0f, 0f}));
+        assertTrue(vectorStore.addDocument(doc));
+
+        QuestionNormalizer normalizer = new QuestionNormalizer();
+        TableChangeTracker tableChanges = new TableChangeTracker();
+        service = new CachedUnifiedQAService(new QAService(), new RagService(vectorStore), new RagOnlyClassifier(),
+                new NoOpQueryCache(), new SemanticQueryCache(embeddingService, tableChanges, normalizer),
+                new QaMetrics(new CompositeMeterRegistry()), normalizer, new NoOpLearningService(),
+                tableChanges, jdbcScheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcScheduler.dispose();
+    }
+
+    @Test
+    void concurrentRagQuestionsDoNotHoldSchedulerThreadsWhileEmbedding() {
+        long start = System.nanoTime();
+        List<UnifiedQueryResult> results = Flux.range(0, REQUESTS)
+                .flatMap(i -> service.processQuestionAsync("explica el proceso de calidad número " + i), REQUESTS)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertNotNull(results);
+        assertEquals(REQUESTS, results.size());
+        assertTrue(results.stream().allMatch(UnifiedQueryResult::isSuccess), "todas las respuestas RAG con fuentes");
+        // Las N llamadas a Ollama estuvieron en vuelo a la vez con solo M hilos en el scheduler
+        assertEquals(REQUESTS, embeddingService.maxInFlight.get(), "embeddings en vuelo simultáneamente");
+        long serializedMs = EMBEDDING_DELAY.toMillis() * REQUESTS / SCHEDULER_THREADS;
+        assertTrue(elapsedMs < serializedMs / 2,
+                () -> "tiempo total " + elapsedMs + " ms, con hilos bloqueados serían ~" + serializedMs + " ms");
+    }
+
+    // Stubs
+
+    // Embedding con retardo en un temporizador: no ocupa ningún hilo mientras "espera a Ollama"
+    private static final class DelayedEmbeddingService extends EmbeddingService {
+        private final Duration delay;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        DelayedEmbeddingService(Duration delay) {
+            super(null, null);
+            this.delay = delay;
+        }
+
+        @Override
+        public Mono<float[]> embed(String text) {
+            return Mono.defer(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                return Mono.delay(delay)
+                        .map(tick -> new float[]{1f, 0f, 0f, 0f})
+                        .doFinally(signal -> inFlight.decrementAndGet());
+            });
+        }
+
+        @Override
+        public String getEmbeddingModel() {
+            return "stub";
+        }
+    }
+
+    private static final class RagOnlyClassifier extends IntentClassifier {
+        @Override
+        public QuestionIntent classify(String question) {
+            return QuestionIntent.RAG;
+        }
+    }
+
+    private static final class NoOpLearningService extends LearningService {
+        NoOpLearningService() {
+            super(null, null, null);
+        }
+
+        @Override
+        public void recordSuccessfulQuery(String question, String generatedSQL, String intent, Integer resultCount,
+                                          Double executionTime) {
+        }
+    }
+
+    private static final class NoOpQueryCache implements IQueryCacheService {
+        @Override
+        public Optional<UnifiedQueryResult> getCachedResult(String question) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void cacheResult(String question, UnifiedQueryResult result) {
+        }
+
+        @Override
+        public void cacheResult(String question, UnifiedQueryResult result, Map<String, Long> dataVersions) {
+        }
+
+        @Override
+        public void incrementQueryFrequency(String question) {
+        }
+
+        @Override
+        public List<String> getFrequentQueries(int limit) {
+            return List.of();
+        }
+
+        @Override
+        public Map<String, Integer> getQueryFrequencyStats(int limit) {
+            return Map.of();
+        }
+
+        @Override
+        public Map<String, Object> getCacheStats() {
+            return Map.of();
+        }
+
+        @Override
+        public void clearCache() {
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.qaassistant.service.ollama;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OllamaLoadBalancer como filtro de un WebClient real, con un servidor HTTP local por endpoint.
+ */
+class OllamaLoadBalancerTest {
+
+    private static final String LOGICAL_BASE_URL = "http://ollama-balanced.local";
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final WebClient WARM_UP_CLIENT = WebClient.create();
+
+    private final List<Stub> stubs = new ArrayList<>();
+    private final ExecutorService stubExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ollama-stub");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @AfterEach
+    void tearDown() {
+        stubs.forEach(Stub::stop);
+        stubExecutor.shutdownNow();
+    }
+
+    @Test
+    void leastOutstandingSendsEachRequestToTheLeastBusyEndpoint() throws Exception {
+        Stub first = stub();
+        Stub second = stub();
+        CountDownLatch gate = new CountDownLatch(1);
+        first.gate = gate;
+        second.gate = gate;
+        OllamaLoadBalancer balancer = balancer(settings(OllamaLoadBalancer.Strategy.LEAST_OUTSTANDING, 3,
+                Duration.ofSeconds(10)), first, second);
+        WebClient client = client(balancer);
+
+        List<CompletableFuture<Integer>> pending = new ArrayList<>();
+        try {
+            for (int i = 1; i <= 4; i++) {
+                pending.add(status(client, LOGICAL_BASE_URL + "/api/generate").toFuture());
+                int inFlight = i;
+                waitUntil(() -> first.received.get() + second.received.get() == inFlight);
+                // Nunca más de una petición de diferencia entre endpoints mientras todas siguen en vuelo
+                assertTrue(Math.abs(first.received.get() - second.received.get()) <= 1,
+                        () -> "reparto " + first.received.get() + "/" + second.received.get());
+            }
+            assertEquals(2, first.received.get());
+            assertEquals(2, second.received.get());
+            assertEquals(2, endpointStats(balancer, first).get("outstanding"));
+        } finally {
+            gate.countDown();
+        }
+        for (CompletableFuture<Integer> response : pending) {
+            assertEquals(Integer.valueOf(200), response.get(TIMEOUT.toSeconds(), TimeUnit.SECONDS));
+        }
+        assertEquals(0, endpointStats(balancer, first).get("outstanding"));
+    }
+
+    @Test
+    void leastOutstandingBreaksTiesWithTheLowerEwma() {
+        Stub slow = stub();
+        Stub fast = stub();
+        slow.delayMs = 300;
+        OllamaLoadBalancer balancer = balancer(settings(OllamaLoadBalancer.Strategy.LEAST_OUTSTANDING, 3,
+                Duration.ofSeconds(10)), slow, fast);
+        WebClient client = client(balancer);
+
+        // Un endpoint sin muestras gana el desempate: las dos primeras peticiones miden uno y otro
+        sequential(client, 2);
+        assertEquals(1, slow.received.get());
+        assertEquals(1, fast.received.get());
+
+        sequential(client, 10);
+        assertEquals(1, slow.received.get(), "sin carga, todo al endpoint de menor latencia");
+        assertEquals(11, fast.received.get());
+    }
+
+    @Test
+    void ewmaSendsTrafficToTheLowerLatencyEndpoint() {
+        Stub slow = stub();
+        Stub fast = stub();
+        slow.delayMs = 300;
+        OllamaLoadBalancer balancer = balancer(settings(OllamaLoadBalancer.Strategy.EWMA, 3,
+                Duration.ofSeconds(10)), slow, fast);
+        WebClient client = client(balancer);
+
+        sequential(client, 2);
+        assertEquals(1, slow.received.get());
+
+        // Coste (en vuelo + 1) × EWMA: 6 en paralelo al rápido siguen costando menos que 1 al lento
+        List<Integer> statuses = Flux.range(0, 6)
+                .flatMap(i -> status(client, LOGICAL_BASE_URL + "/api/generate"), 6)
+                .collectList()
+                .block(TIMEOUT);
+        assertEquals(Collections.nCopies(6, 200), statuses);
+        assertEquals(1, slow.received.get());
+        assertEquals(7, fast.received.get());
+        double slowEwma = (double) endpointStats(balancer, slow).get("ewmaMs");
+        double fastEwma = (double) endpointStats(balancer, fast).get("ewmaMs");
+        assertTrue(slowEwma > fastEwma, () -> "EWMA lento " + slowEwma + " ms, rápido " + fastEwma + " ms");
+    }
+
+    @Test
+    void endpointIsEjectedAfterFailureThresholdServerErrors() {
+        Stub failing = stub();
+        Stub healthy = stub();
+        failing.status = 503;
+        OllamaLoadBalancer balancer = balancer(settings(OllamaLoadBalancer.Strategy.LEAST_OUTSTANDING, 3,
+                Duration.ofSeconds(30)), failing, healthy);
+        WebClient client = client(balancer);
+
+        // Los 5xx no actualizan la EWMA: el endpoint que falla sigue ganando el desempate hasta su expulsión
+        List<Integer> statuses = sequential(client, 20);
+
+        assertEquals(3, failing.received.get(), "expulsado tras 'failure-threshold' 5xx seguidos");
+        assertEquals(3, Collections.frequency(statuses, 503));
+        Map<String, Object> failingStats = endpointStats(balancer, failing);
+        assertEquals("OPEN", failingStats.get("state"));
+        assertEquals(1L, failingStats.get("ejections"));
+        assertEquals(3L, failingStats.get("failures"));
+        assertEquals("CLOSED", endpointStats(balancer, healthy).get("state"));
+        assertEquals(0L, balancer.getStats().get("panicSelections"));
+    }
+
+    @Test
+    void halfOpenAdmitsOneTrialAndDoublesTheEjectionWhenItFails() throws Exception {
+        Stub failing = stub();
+        Stub healthy = stub();
+        failing.status = 503;
+        failing.delayMs = 300;
+        Duration ejectionTime = Duration.ofMillis(400);
+        OllamaLoadBalancer balancer = balancer(settings(OllamaLoadBalancer.Strategy.LEAST_OUTSTANDING, 1,
+                ejectionTime), failing, healthy);
+        WebClient client = client(balancer);
+
+        sequential(client, 2);
+        assertEquals(1, failing.received.get());
+        assertEquals(1L, endpointStats(balancer, failing).get("ejections"));
+
+        // Cumplida la expulsión, de 5 peticiones simultáneas solo una es la prueba; el resto va al sano
+        Thread.sleep(ejectionTime.toMillis() + 50);
+        List<Integer> statuses = Flux.range(0, 5)
+                .flatMap(i -> status(client, LOGICAL_BASE_URL + "/api/generate"), 5)
+                .collectList()
+                .block(TIMEOUT);
+        assertEquals(2, failing.received.get(), "una sola petición de prueba en HALF_OPEN");
+        assertEquals(1, Collections.frequency(statuses, 503));
+        assertEquals(2L, endpointStats(balancer, failing).get("ejections"));
+
+        // La segunda expulsión dura el doble: pasado el tiempo original sigue fuera
+        Thread.sleep(ejectionTime.toMillis() + 150);
+        assertEquals("OPEN", endpointStats(balancer, failing).get("state"));
+        sequential(client, 3);
+        assertEquals(2, failing.received.get(), "sigue expulsado con el tiempo duplicado");
+
+        Thread.sleep(ejectionTime.toMillis());
+        sequential(client, 1);
+        assertEquals(3, failing.received.get(), "cumplido el doble admite otra prueba");
+    }
+
+    @Test
+    void healthCheckEjectsAndReinstatesEndpoints() throws Exception {
+        Stub flaky = stub();
+        Stub healthy = stub();
+        Duration ejectionTime = Duration.ofMillis(300);
+        OllamaLoadBalancer balancer = balancer(settings(OllamaLoadBalancer.Strategy.LEAST_OUTSTANDING, 3,
+                ejectionTime), flaky, healthy);
+        WebClient client = client(balancer);
+
+        flaky.status = 503;
+        balancer.checkHealth(url -> probe(client, url));
+        assertEquals("OPEN", endpointStats(balancer, flaky).get("state"));
+        assertEquals(false, endpointStats(balancer, flaky).get("healthy"));
+        assertEquals("CLOSED", endpointStats(balancer, healthy).get("state"));
+
+        // Recuperado pero sin cumplir la expulsión: el health check no lo readmite todavía
+        flaky.status = 200;
+        balancer.checkHealth(url -> probe(client, url));
+        assertEquals("OPEN", endpointStats(balancer, flaky).get("state"));
+
+        Thread.sleep(ejectionTime.toMillis() + 50);
+        balancer.checkHealth(url -> probe(client, url));
+        assertEquals("CLOSED", endpointStats(balancer, flaky).get("state"));
+        assertEquals(true, endpointStats(balancer, flaky).get("healthy"));
+        // Las comprobaciones van fijadas a cada endpoint y no cuentan como tráfico balanceado
+        assertEquals(0L, endpointStats(balancer, flaky).get("requests"));
+        assertEquals(3, flaky.received.get());
+    }
+
+    @Test
+    void refusedConnectionIsRetriedOnAnotherEndpoint() throws Exception {
+        Stub healthy = stub();
+        String refused = "http://127.0.0.1:" + freePort();
+        OllamaLoadBalancer balancer = new OllamaLoadBalancer(LOGICAL_BASE_URL, List.of(refused, healthy.url()),
+                settings(OllamaLoadBalancer.Strategy.LEAST_OUTSTANDING, 3, Duration.ofSeconds(30)));
+        WebClient client = client(balancer);
+
+        List<Integer> statuses = sequential(client, 6);
+
+        assertEquals(Collections.nCopies(6, 200), statuses, "el cliente no ve los rechazos de conexión");
+        assertEquals(6, healthy.received.get());
+        // Sin muestras, el endpoint caído gana el desempate hasta acumular 'failure-threshold' rechazos
+        assertEquals(3L, balancer.getStats().get("connectRetries"));
+        assertEquals("OPEN", endpointStats(balancer, refused).get("state"));
+    }
+
+    @Test
+    void logicalBasePathIsReplacedByTheEndpointBasePath() {
+        Stub stub = stub();
+        OllamaLoadBalancer balancer = new OllamaLoadBalancer(LOGICAL_BASE_URL + "/ollama/",
+                List.of(stub.url() + "/gateway/v1"),
+                settings(OllamaLoadBalancer.Strategy.LEAST_OUTSTANDING, 3, Duration.ofSeconds(30)));
+        WebClient client = client(balancer);
+
+        assertEquals(Integer.valueOf(200), status(client, LOGICAL_BASE_URL + "/ollama/api/generate?keep_alive=5m").block(TIMEOUT));
+        assertEquals(Integer.valueOf(200), status(client, LOGICAL_BASE_URL + "/ollama/api/show%20model").block(TIMEOUT));
+        // Fuera de la URL lógica (otro host) la petición pasa sin reescribir
+        assertEquals(Integer.valueOf(200), status(client, stub.url() + "/api/tags").block(TIMEOUT));
+
+        assertEquals(List.of("/gateway/v1/api/generate?keep_alive=5m", "/gateway/v1/api/show%20model", "/api/tags"),
+                new ArrayList<>(stub.paths));
+        assertEquals(2L, endpointStats(balancer, stub.url() + "/gateway/v1").get("requests"));
+    }
+
+    // Métodos auxiliares
+
+    private Stub stub() {
+        try {
+            Stub stub = new Stub(stubExecutor);
+            stubs.add(stub);
+            // La primera conexión (y la carga de clases de Reactor Netty) fuera de las medidas de latencia:
+            // la EWMA arranca con la primera muestra y una conexión en frío la falsearía
+            status(WARM_UP_CLIENT, stub.url() + "/warm-up").block(TIMEOUT);
+            stub.received.set(0);
+            stub.paths.clear();
+            return stub;
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo arrancar el stub", e);
+        }
+    }
+
+    private static OllamaLoadBalancer.Settings settings(OllamaLoadBalancer.Strategy strategy, int failureThreshold,
+                                                        Duration ejectionTime) {
+        return new OllamaLoadBalancer.Settings(strategy, failureThreshold, ejectionTime, Duration.ofSeconds(30),
+                Duration.ofSeconds(10));
+    }
+
+    private static OllamaLoadBalancer balancer(OllamaLoadBalancer.Settings settings, Stub... endpoints) {
+        return new OllamaLoadBalancer(LOGICAL_BASE_URL, Arrays.stream(endpoints).map(Stub::url).toList(), settings);
+    }
+
+    private static WebClient client(OllamaLoadBalancer balancer) {
+        return WebClient.builder().filter(balancer).build();
+    }
+
+    // Código de estado tras consumir el cuerpo: es entonces cuando el balanceador cierra la petición
+    private static Mono<Integer> status(WebClient client, String url) {
+        // URI ya codificada: WebClient no debe volver a codificar el '%' de las rutas
+        return client.post()
+                .uri(URI.create(url))
+                .bodyValue("{\"model\":\"stub\",\"prompt\":\"hola\",\"stream\":false}")
+                .exchangeToMono(response -> response.bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .map(body -> response.statusCode().value()));
+    }
+
+    private static List<Integer> sequential(WebClient client, int requests) {
+        List<Integer> statuses = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            statuses.add(status(client, LOGICAL_BASE_URL + "/api/generate").block(TIMEOUT));
+        }
+        return statuses;
+    }
+
+    // Mismo health check que OllamaBalancerSimulation: GET /api/tags fijado al endpoint
+    private static boolean probe(WebClient client, String url) {
+        try {
+            client.get()
+                    .uri(url + "/api/tags")
+                    .attribute(OllamaLoadBalancer.PINNED_ENDPOINT, url)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block(TIMEOUT);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static Map<String, Object> endpointStats(OllamaLoadBalancer balancer, Stub stub) {
+        return endpointStats(balancer, stub.url());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> endpointStats(OllamaLoadBalancer balancer, String url) {
+        for (Object endpoint : (List<?>) balancer.getStats().get("endpoints")) {
+            Map<String, Object> stats = (Map<String, Object>) endpoint;
+            if (url.equals(stats.get("url"))) {
+                return stats;
+            }
+        }
+        throw new AssertionError("Endpoint no encontrado: " + url);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("La condición no se cumplió en " + TIMEOUT.toSeconds() + " s");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    // Servidor que simula Ollama: cualquier ruta, con estado y retardo configurables
+    private static final class Stub {
+        private static final byte[] RESPONSE =
+                "{\"model\":\"stub\",\"response\":\"SELECT 1\",\"done\":true}".getBytes(StandardCharsets.UTF_8);
+
+        private final HttpServer server;
+        private final AtomicInteger received = new AtomicInteger();
+        private final Queue<String> paths = new ConcurrentLinkedQueue<>();
+        private volatile int status = 200;
+        private volatile long delayMs;
+        private volatile CountDownLatch gate;
+
+        private Stub(ExecutorService executor) throws IOException {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 100);
+            server.setExecutor(executor);
+            server.createContext("/", this::handle);
+            server.start();
+        }
+
+        String url() {
+            return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            exchange.getRequestBody().readAllBytes();
+            paths.add(exchange.getRequestURI().toString());
+            received.incrementAndGet();
+            try {
+                CountDownLatch currentGate = gate;
+                if (currentGate != null) {
+                    currentGate.await(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+                }
+                if (delayMs > 0) {
+                    Thread.sleep(delayMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, RESPONSE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(RESPONSE);
+            }
+        }
+    }
+}
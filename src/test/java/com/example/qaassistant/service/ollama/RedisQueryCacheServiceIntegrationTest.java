@@ -0,0 +1,173 @@
+package com.example.qaassistant.service.ollama;
+
+import com.example.qaassistant.configuration.RedisConfig;
+import com.example.qaassistant.service.QuestionNormalizer;
+import com.example.qaassistant.service.TableChangeTracker;
+import com.example.qaassistant.service.UnifiedQueryResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RedisQueryCacheService contra un Redis real, con dos réplicas que comparten servidor:
+ * aciertos en L2, expulsión de la near-cache por pub/sub e invalidación por tabla.
+ *
+ * Se omite si no hay Docker disponible.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RedisQueryCacheServiceIntegrationTest {
+
+    private static final String QUESTION = "¿Cuántas aplicaciones hay?";
+    private static final Duration PUBSUB_TIMEOUT = Duration.ofSeconds(5);
+
+    @Container
+    private static final GenericContainer<?> redis =
+            new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+
+    private LettuceConnectionFactory connectionFactory;
+    private final List<RedisMessageListenerContainer> listenerContainers = new ArrayList<>();
+    private final QuestionNormalizer normalizer = new QuestionNormalizer();
+    private TableChangeTracker trackerA;
+    private RedisQueryCacheService replicaA;
+    private RedisQueryCacheService replicaB;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        connectionFactory.getConnection().serverCommands().flushAll();
+
+        trackerA = new TableChangeTracker();
+        replicaA = newReplica(trackerA);
+        replicaB = newReplica(new TableChangeTracker());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (RedisMessageListenerContainer listenerContainer : listenerContainers) {
+            listenerContainer.destroy();
+        }
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void otherReplicaHitsRedisThenItsNearCache() {
+        replicaA.cacheResult(QUESTION, result("Hay 3", "SELECT COUNT(*) FROM aplicacion"));
+
+        assertEquals("Hay 3", replicaB.getCachedResult(QUESTION).map(UnifiedQueryResult::getAnswer).orElseThrow());
+        assertEquals("Hay 3", replicaB.getCachedResult(QUESTION).map(UnifiedQueryResult::getAnswer).orElseThrow());
+
+        Map<String, Object> stats = replicaB.getCacheStats();
+        assertEquals(1L, stats.get("redisHits"), "primera lectura desde Redis");
+        assertEquals(1L, stats.get("nearHits"), "segunda lectura desde la near-cache");
+        assertEquals(0L, stats.get("misses"));
+        assertEquals(0L, stats.get("redisErrors"));
+    }
+
+    @Test
+    void writeOnOneReplicaEvictsTheOtherNearCache() {
+        replicaA.cacheResult(QUESTION, result("Hay 3", "SELECT COUNT(*) FROM aplicacion"));
+        awaitInvalidations(replicaB, 1);
+        replicaB.getCachedResult(QUESTION); // queda en la L1 de B
+
+        replicaA.cacheResult(QUESTION, result("Hay 4", "SELECT COUNT(*) FROM aplicacion"));
+
+        awaitInvalidations(replicaB, 2);
+        assertEquals("Hay 4", replicaB.getCachedResult(QUESTION).map(UnifiedQueryResult::getAnswer).orElseThrow());
+        assertEquals(2L, replicaB.getCacheStats().get("redisHits"), "la respuesta nueva se leyó de Redis");
+    }
+
+    @Test
+    void tableWriteInvalidatesDependentEntriesOnEveryReplica() {
+        String otherQuestion = "¿Cuántos equipos hay?";
+        replicaA.cacheResult(QUESTION, result("Hay 3", "SELECT COUNT(*) FROM aplicacion"));
+        replicaA.cacheResult(otherQuestion, result("Hay 2", "SELECT COUNT(*) FROM equipo"));
+        awaitInvalidations(replicaB, 2);
+        replicaB.getCachedResult(QUESTION);
+        replicaB.getCachedResult(otherQuestion);
+
+        trackerA.recordWrite("APLICACION");
+
+        // Fuera de Redis y de la L1 de A de inmediato; de la L1 de B al llegar el aviso
+        assertTrue(replicaA.getCachedResult(QUESTION).isEmpty());
+        awaitInvalidations(replicaB, 3);
+        assertTrue(replicaB.getCachedResult(QUESTION).isEmpty());
+        assertEquals(1L, replicaA.getCacheStats().get("tableInvalidations"));
+
+        // Las entradas de otras tablas siguen en cache, y el set de la tabla se borró
+        Optional<UnifiedQueryResult> untouched = replicaB.getCachedResult(otherQuestion);
+        assertEquals("Hay 2", untouched.map(UnifiedQueryResult::getAnswer).orElseThrow());
+        assertFalse(new StringRedisTemplate(connectionFactory).hasKey("qa:cache:table:aplicacion"));
+    }
+
+    // Métodos auxiliares
+
+    private RedisQueryCacheService newReplica(TableChangeTracker tracker) {
+        RedisMessageListenerContainer listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.afterPropertiesSet();
+        listenerContainers.add(listenerContainer);
+
+        StringRedisTemplate stringTemplate = new StringRedisTemplate(connectionFactory);
+        RedisQueryCacheService replica = new RedisQueryCacheService(
+                new RedisConfig().binaryRedisTemplate(connectionFactory), stringTemplate, listenerContainer,
+                normalizer, tracker);
+        ReflectionTestUtils.setField(replica, "ttl", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(replica, "nearCacheSize", 100);
+        ReflectionTestUtils.setField(replica, "nearCacheTtl", Duration.ofMinutes(1));
+        replica.subscribe();
+        listenerContainer.start();
+        awaitSubscription(stringTemplate);
+        return replica;
+    }
+
+    // Cada escritura de A publica un aviso; esperar a que B los haya procesado todos
+    private static void awaitInvalidations(RedisQueryCacheService replica, long expected) {
+        await().atMost(PUBSUB_TIMEOUT).until(() ->
+                (long) replica.getCacheStats().get("invalidationsReceived") >= expected);
+    }
+
+    // La suscripción de RedisMessageListenerContainer es asíncrona: esperar a que el canal tenga suscriptor
+    private void awaitSubscription(StringRedisTemplate template) {
+        int expected = listenerContainers.size();
+        await().atMost(PUBSUB_TIMEOUT).until(() -> {
+            Long subscribers = template.execute((RedisCallback<Long>) connection -> {
+                List<?> reply = (List<?>) connection.execute("PUBSUB",
+                        "NUMSUB".getBytes(), "qa:cache:invalidate".getBytes());
+                return reply != null && reply.size() == 2 ? (Long) reply.get(1) : 0L;
+            }, true);
+            return subscribers != null && subscribers >= expected;
+        });
+    }
+
+    private static UnifiedQueryResult result(String answer, String sql) {
+        UnifiedQueryResult result = new UnifiedQueryResult();
+        result.setOriginalQuestion(QUESTION);
+        result.setIntent("SQL");
+        result.setAnswer(answer);
+        result.setGeneratedSQL(sql);
+        result.setSuccess(true);
+        return result;
+    }
+}
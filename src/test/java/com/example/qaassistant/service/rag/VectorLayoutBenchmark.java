@@ -0,0 +1,167 @@
+package com.example.qaassistant.service.rag;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * JMH: búsqueda top-k con los embeddings como List&lt;Float&gt; por documento (coseno con normas en cada
+ * consulta, un objeto por resultado y ordenación completa, como hacía SimpleVectorStore) frente a
+ * VectorMatrix (float[] contiguo con filas normalizadas y top-k acotado).
+ *
+ * main() imprime además la memoria retenida por cada representación antes de lanzar JMH.
+ *
+ * Ejecución (ver README):
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *   -Dexec.args="--add-modules jdk.incubator.vector -cp %classpath
+ *   com.example.qaassistant.service.rag.VectorLayoutBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class VectorLayoutBenchmark {
+
+    private static final int K = 5;
+
+    @Param({"384", "768"})
+    private int dimension;
+
+    @Param({"1000", "10000"})
+    private int documents;
+
+    private BoxedLayout boxed;
+    private VectorMatrix matrix;
+    private float[] query;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        boxed = boxedLayout(random, documents, dimension);
+        matrix = primitiveLayout(boxed);
+        query = randomVector(random, dimension);
+    }
+
+    @Benchmark
+    public List<String> boxedSearch() {
+        return boxed.search(query, K);
+    }
+
+    @Benchmark
+    public List<VectorMatch> primitiveSearch() {
+        return matrix.search(query, K);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        // Una construcción previa para que la carga de clases no cuente en la primera medida
+        primitiveLayout(boxedLayout(new Random(1), 100, 384));
+        for (int dimension : new int[]{384, 768}) {
+            for (int documents : new int[]{1000, 10000}) {
+                BoxedLayout[] boxed = new BoxedLayout[1];
+                long boxedBytes = retainedBytes(() -> boxed[0] = boxedLayout(new Random(42), documents, dimension));
+                long primitiveBytes = retainedBytes(() -> primitiveLayout(boxed[0]));
+                System.out.printf("%d docs x %d dims: List<Float> %,d bytes, VectorMatrix %,d bytes (x%.1f)%n",
+                        documents, dimension, boxedBytes, primitiveBytes, (double) boxedBytes / primitiveBytes);
+            }
+        }
+        Options options = new OptionsBuilder()
+                .include(VectorLayoutBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    // Métodos auxiliares
+
+    private static BoxedLayout boxedLayout(Random random, int documents, int dimension) {
+        BoxedLayout layout = new BoxedLayout();
+        for (int i = 0; i < documents; i++) {
+            float[] vector = randomVector(random, dimension);
+            layout.embeddings.put("doc-" + i, EmbeddingService.toList(vector));
+        }
+        return layout;
+    }
+
+    private static VectorMatrix primitiveLayout(BoxedLayout boxed) {
+        VectorMatrix matrix = new VectorMatrix();
+        boxed.embeddings.forEach((id, embedding) -> matrix.put(id, toPrimitive(embedding)));
+        return matrix;
+    }
+
+    // Memoria ocupada tras un GC por lo que construye 'factory' (que sigue alcanzable durante la medida)
+    private static long retainedBytes(Supplier<Object> factory) {
+        long before = usedHeapAfterGc();
+        Object retained = factory.get();
+        long after = usedHeapAfterGc();
+        java.lang.ref.Reference.reachabilityFence(retained);
+        return after - before;
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static float[] toPrimitive(List<Float> embedding) {
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.get(i);
+        }
+        return vector;
+    }
+
+    private static float[] randomVector(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    // Representación anterior: List<Float> por documento y coseno completo en cada consulta
+    private static final class BoxedLayout {
+        private final Map<String, List<Float>> embeddings = new LinkedHashMap<>();
+
+        List<String> search(float[] query, int k) {
+            List<SearchResult> results = new ArrayList<>(embeddings.size());
+            for (Map.Entry<String, List<Float>> entry : embeddings.entrySet()) {
+                results.add(new SearchResult(entry.getKey(), cosineSimilarity(query, entry.getValue())));
+            }
+            return results.stream()
+                    .sorted((a, b) -> Float.compare(b.similarity(), a.similarity()))
+                    .limit(k)
+                    .map(SearchResult::id)
+                    .toList();
+        }
+
+        private static float cosineSimilarity(float[] query, List<Float> embedding) {
+            float dotProduct = 0;
+            float normA = 0;
+            float normB = 0;
+            for (int i = 0; i < query.length; i++) {
+                float value = embedding.get(i);
+                dotProduct += query[i] * value;
+                normA += query[i] * query[i];
+                normB += value * value;
+            }
+            return (float) (dotProduct / (Math.sqrt(normA) * Math.sqrt(normB)));
+        }
+    }
+
+    private record SearchResult(String id, float similarity) {
+    }
+}
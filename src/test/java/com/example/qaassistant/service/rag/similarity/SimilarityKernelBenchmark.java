@@ -0,0 +1,85 @@
+package com.example.qaassistant.service.rag.similarity;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH: producto escalar y recorrido de una matriz con el núcleo escalar frente al SIMD (Vector API),
+ * a 384 (all-minilm) y 768 (nomic-embed-text) dimensiones.
+ *
+ * Ejecución (ver README):
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *   -Dexec.args="--add-modules jdk.incubator.vector -cp %classpath
+ *   com.example.qaassistant.service.rag.similarity.SimilarityKernelBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SimilarityKernelBenchmark {
+
+    // Filas de la matriz en el benchmark de recorrido: un corpus pequeño que cabe en caché L2/L3
+    private static final int ROWS = 1024;
+
+    @Param({"384", "768"})
+    private int dimension;
+
+    @Param({"scalar", "simd"})
+    private String kernelName;
+
+    private SimilarityKernel kernel;
+    private float[] query;
+    private float[] matrix;
+
+    @Setup
+    public void setUp() {
+        if ("simd".equals(kernelName)) {
+            if (!SimilarityKernels.isSimdAvailable()) {
+                throw new IllegalStateException("Vector API no disponible: falta --add-modules jdk.incubator.vector");
+            }
+            kernel = SimilarityKernels.get();
+        } else {
+            kernel = SimilarityKernels.scalar();
+        }
+        Random random = new Random(42);
+        query = randomVector(random, dimension);
+        matrix = randomVector(random, dimension * ROWS);
+    }
+
+    @Benchmark
+    public float dot() {
+        return kernel.dot(query, 0, matrix, 0, dimension);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void scanMatrix(Blackhole blackhole) {
+        for (int row = 0; row < ROWS; row++) {
+            blackhole.consume(kernel.dot(query, 0, matrix, row * dimension, dimension));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SimilarityKernelBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    private static float[] randomVector(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+}